@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AsyncClientHttpRequest;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.web.client.AsyncRestTemplate;
+
+/**
+ * The non-blocking counterpart of {@link BasicAuthRestTemplate}, backed by the NIO based Apache HttpAsyncClient.
+ * Requests are multiplexed over a small number of I/O threads, so that many requests can be in flight without
+ * a thread waiting for each of them. If the URL contains credentials, they are sent preemptively with basic auth
+ * in an Authorization header which is computed once.
+ *
+ * @since 18/10/2026
+ */
+public class BasicAuthAsyncRestTemplate extends AsyncRestTemplate implements DisposableBean {
+
+    private final HttpComponentsAsyncClientHttpRequestFactory requestFactory;
+
+    private ConnectionPoolSupport.IdleConnectionEvictor connectionEvictor;
+
+    public BasicAuthAsyncRestTemplate() {
+        this((String) null);
+    }
+
+    public BasicAuthAsyncRestTemplate(String defaultDatabaseUrl) {
+        this(defaultDatabaseUrl, new ConnectionSettings());
+    }
+
+    public BasicAuthAsyncRestTemplate(String defaultDatabaseUrl, int maxConnections) {
+        this(defaultDatabaseUrl, createConnectionSettings(maxConnections));
+    }
+
+    public BasicAuthAsyncRestTemplate(ConnectionSettings connectionSettings) {
+        this(null, connectionSettings);
+    }
+
+    public BasicAuthAsyncRestTemplate(String defaultDatabaseUrl, ConnectionSettings connectionSettings) {
+        this(createConnectionManager(connectionSettings), defaultDatabaseUrl, connectionSettings);
+    }
+
+    private BasicAuthAsyncRestTemplate(final PoolingNHttpClientConnectionManager connectionManager,
+                                       String defaultDatabaseUrl, ConnectionSettings connectionSettings) {
+        this(createRequestFactory(connectionManager, defaultDatabaseUrl, connectionSettings));
+        if (connectionSettings.getIdleConnectionTimeout() > 0) {
+            connectionEvictor = new ConnectionPoolSupport.IdleConnectionEvictor(connectionSettings.getIdleConnectionTimeout()) {
+                @Override
+                protected void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(idleTime, timeUnit);
+                }
+            };
+            connectionEvictor.start();
+        }
+    }
+
+    private BasicAuthAsyncRestTemplate(HttpComponentsAsyncClientHttpRequestFactory requestFactory) {
+        super(requestFactory);
+        this.requestFactory = requestFactory;
+    }
+
+    /**
+     * Stops the eviction of idle connections and closes the underlying HTTP clients.
+     */
+    public void destroy() throws Exception {
+        if (connectionEvictor != null) {
+            connectionEvictor.shutdown();
+        }
+        requestFactory.destroy();
+    }
+
+    private static PoolingNHttpClientConnectionManager createConnectionManager(ConnectionSettings connectionSettings) {
+        assertSupported(connectionSettings);
+        PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("failed to create the I/O reactor of the HTTP client", e);
+        }
+        connectionManager.setMaxTotal(connectionSettings.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(connectionSettings.getMaxConnectionsPerRoute());
+        return connectionManager;
+    }
+
+    /**
+     * Session authentication, retries, the circuit breaker and clusters are only implemented for blocking requests.
+     * Rejecting them here is better than silently sending every request once to a single node.
+     */
+    private static void assertSupported(ConnectionSettings connectionSettings) {
+        if (connectionSettings.isSessionAuthentication() || connectionSettings.getMaxAttempts() > 1 ||
+                connectionSettings.getCircuitBreakerThreshold() > 0 ||
+                connectionSettings.getClusterNodes().length > 0) {
+            throw new IllegalArgumentException("session authentication, retries, the circuit breaker and " +
+                    "cluster nodes are not supported for asynchronous requests");
+        }
+    }
+
+    private static ConnectionSettings createConnectionSettings(int maxConnections) {
+        ConnectionSettings connectionSettings = new ConnectionSettings();
+        connectionSettings.setMaxConnections(maxConnections);
+        connectionSettings.setMaxConnectionsPerRoute(maxConnections);
+        return connectionSettings;
+    }
+
+    private static HttpComponentsAsyncClientHttpRequestFactory createRequestFactory(
+            PoolingNHttpClientConnectionManager connectionManager, String url, ConnectionSettings connectionSettings) {
+        HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(ConnectionPoolSupport.createRequestConfig(connectionSettings))
+                .setKeepAliveStrategy(ConnectionPoolSupport.createKeepAliveStrategy(connectionSettings));
+        URL targetUrl = null;
+        String[] credentials = {};
+        if (url != null) {
+            try {
+                targetUrl = new URL(url);
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("URL for CouchDB is malformed: " + url);
+            }
+            credentials = CouchDbUtils.extractUsernamePassword(URI.create(url));
+        }
+        if (credentials.length < 2) {
+            return new HttpComponentsAsyncClientHttpRequestFactory(builder.build());
+        }
+        return new PreemptiveBasicAuthRequestFactory(builder.build(),
+                new HttpHost(targetUrl.getHost(), targetUrl.getPort(), targetUrl.getProtocol()),
+                CouchDbUtils.createBasicAuthorization(credentials[0], credentials[1]));
+    }
+
+    /**
+     * Sends the credentials with every request to the host instead of waiting for a challenge. The Authorization
+     * header is computed once.
+     */
+    private static class PreemptiveBasicAuthRequestFactory extends HttpComponentsAsyncClientHttpRequestFactory {
+
+        private final HttpHost host;
+
+        private final String authorization;
+
+        PreemptiveBasicAuthRequestFactory(CloseableHttpAsyncClient httpAsyncClient, HttpHost host,
+                                          String authorization) {
+            super(httpAsyncClient);
+            this.host = host;
+            this.authorization = authorization;
+        }
+
+        @Override
+        public AsyncClientHttpRequest createAsyncRequest(URI uri, HttpMethod httpMethod) throws IOException {
+            AsyncClientHttpRequest request = super.createAsyncRequest(uri, httpMethod);
+            if (BasicAuthRequestFactory.isHost(host, uri)) {
+                request.getHeaders().set(HttpHeaders.AUTHORIZATION, authorization);
+            }
+            return request;
+        }
+    }
+}
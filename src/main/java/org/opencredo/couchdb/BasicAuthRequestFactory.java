@@ -2,51 +2,76 @@ package org.opencredo.couchdb;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.AuthCache;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.protocol.ClientContext;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.AbstractHttpClient;
-import org.apache.http.impl.client.BasicAuthCache;
-import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.HttpContext;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 
+/**
+ * A request factory which sends basic auth credentials preemptively to a single host, or to the nodes of a cluster.
+ * The Authorization header is computed once, so that requests neither carry a per-request auth context nor wait for a
+ * 401 challenge. Requests to other hosts are sent without credentials.
+ */
 public class BasicAuthRequestFactory extends HttpComponentsClientHttpRequestFactory {
 
-    HttpHost host;
+    final List<HttpHost> hosts;
 
-    public BasicAuthRequestFactory(HttpClient httpClient, HttpHost host) {
-        super(httpClient);
-        this.host = host;
-    }
+    private final String authorization;
 
-    protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
-        return createHttpContext();
+    public BasicAuthRequestFactory(HttpClient httpClient, HttpHost host, String username, String password) {
+        this(httpClient, Collections.singletonList(host), username, password);
     }
 
-    private HttpContext createHttpContext() {
-        // Create AuthCache instance
-        AuthCache authCache = new BasicAuthCache();
-        // Generate BASIC scheme object and add it to the local auth cache
-        BasicScheme basicAuth = new BasicScheme();
-        authCache.put(host, basicAuth);
-
-        // Add AuthCache to the execution context
-        BasicHttpContext localcontext = new BasicHttpContext();
-        localcontext.setAttribute(ClientContext.AUTH_CACHE, authCache);
-        return localcontext;
+    public BasicAuthRequestFactory(HttpClient httpClient, Collection<HttpHost> hosts, String username,
+                                   String password) {
+        super(httpClient);
+        this.hosts = new ArrayList<HttpHost>(hosts);
+        this.authorization = CouchDbUtils.createBasicAuthorization(username, password);
     }
-    
+
     @Override
     public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
-        ClientHttpRequest result = super.createRequest(uri, httpMethod);
-        return result;
+        ClientHttpRequest request = super.createRequest(uri, httpMethod);
+        if (isHost(hosts, uri)) {
+            request.getHeaders().set(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        return request;
+    }
+
+    /**
+     * Tells whether a URI points to any of the given hosts.
+     */
+    static boolean isHost(Collection<HttpHost> hosts, URI uri) {
+        for (HttpHost host : hosts) {
+            if (isHost(host, uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether a URI points to a host, taking the default port of its scheme into account.
+     */
+    static boolean isHost(HttpHost host, URI uri) {
+        if (uri.getHost() == null || !uri.getHost().equalsIgnoreCase(host.getHostName())) {
+            return false;
+        }
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        int hostPort = host.getPort();
+        if (hostPort == -1) {
+            hostPort = "https".equalsIgnoreCase(host.getSchemeName()) ? 443 : 80;
+        }
+        return port == hostPort;
     }
 }
@@ -4,58 +4,128 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.Assert;
 import org.springframework.web.client.RestTemplate;
 
 /**
  * A drop-in replacement for RestTemplate which <em>can</em> add basic auth credentials to the request: call
  * the constructor<b>with username and password</b> to perform basic auth</b> or <b>the default constructor
  * to create a {@link RestTemplate} without authentication</b>.
+ * <p/>
+ * Credentials are sent preemptively in an Authorization header which is computed once, see
+ * {@link BasicAuthRequestFactory}, or, if the ConnectionSettings ask for session authentication, used to log in to
+ * a {@link CouchDbSession} whose cookie authenticates the requests.
+ * <p/>
+ * The connections are pooled by a {@link CouchDbConnectionFactory}, which is either created for this template alone
+ * or shared with other templates.
  * 
  * @author darabi@m-creations.net
  *
  */
-public class BasicAuthRestTemplate extends RestTemplate {
+public class BasicAuthRestTemplate extends RestTemplate implements DisposableBean {
 
-    private CloseableHttpClient httpClient;
+    private final CouchDbConnectionFactory connectionFactory;
+
+    /**
+     * Whether the connection factory has been created by this template, which then closes it when destroyed.
+     */
+    private final boolean ownsConnectionFactory;
 
     public BasicAuthRestTemplate() {
-        this(100);
+        this(ConnectionSettings.DEFAULT_MAX_CONNECTIONS);
     }
 
     public BasicAuthRestTemplate(int maxConnections) {
+        this(createConnectionSettings(maxConnections));
+    }
+
+    public BasicAuthRestTemplate(ConnectionSettings connectionSettings) {
         super();
-        PoolingHttpClientConnectionManager conMan = createConnectionManager(maxConnections);
-        httpClient = HttpClients.custom().setConnectionManager(conMan).build();
-        setRequestFactory(new HttpComponentsClientHttpRequestFactory(httpClient));
+        connectionFactory = new CouchDbConnectionFactory(connectionSettings);
+        ownsConnectionFactory = true;
+        setRequestFactory(new HttpComponentsClientHttpRequestFactory(connectionFactory.getHttpClient()));
+        configureRequests();
     }
 
     public BasicAuthRestTemplate(String username, String password, String url) {
-        this(username, password, url, 100);
+        this(username, password, url, ConnectionSettings.DEFAULT_MAX_CONNECTIONS);
     }
 
     public BasicAuthRestTemplate(String username, String password, String url, int maxConnections) {
-        PoolingHttpClientConnectionManager conMan = createConnectionManager(maxConnections);
-        CredentialsProvider provider = createCredentialsProvider(username, password, url);
-        httpClient = HttpClients.custom().setConnectionManager(conMan).setDefaultCredentialsProvider(provider).build();
-        createRequestFactory(url, httpClient);
+        this(username, password, url, createConnectionSettings(maxConnections));
+    }
+
+    public BasicAuthRestTemplate(String username, String password, String url, ConnectionSettings connectionSettings) {
+        connectionFactory = new CouchDbConnectionFactory(connectionSettings);
+        ownsConnectionFactory = true;
+        createRequestFactory(url, connectionFactory.getHttpClient(), username, password, connectionSettings);
+        configureRequests();
     }
 
     public BasicAuthRestTemplate(String defaultDatabaseUrl) {
+        this(defaultDatabaseUrl, new ConnectionSettings());
+    }
+
+    public BasicAuthRestTemplate(String defaultDatabaseUrl, ConnectionSettings connectionSettings) {
+        connectionFactory = new CouchDbConnectionFactory(connectionSettings);
+        ownsConnectionFactory = true;
+        createRequestFactory(defaultDatabaseUrl);
+        configureRequests();
+    }
+
+    /**
+     * Creates an instance which uses the pool of a shared connection factory. The pool is left open when this
+     * template is destroyed.
+     */
+    public BasicAuthRestTemplate(String defaultDatabaseUrl, CouchDbConnectionFactory connectionFactory) {
+        Assert.notNull(connectionFactory, "connectionFactory cannot be null");
+        this.connectionFactory = connectionFactory;
+        ownsConnectionFactory = false;
+        createRequestFactory(defaultDatabaseUrl);
+        configureRequests();
+    }
+
+    /**
+     * Stops the eviction of idle connections and closes the HTTP client, unless it belongs to a shared
+     * connection factory.
+     */
+    public void destroy() throws Exception {
+        if (ownsConnectionFactory) {
+            connectionFactory.destroy();
+        }
+    }
+
+    /**
+     * Spreads requests across the cluster nodes, retries failed requests and applies the circuit breaker, if the
+     * connection settings ask for them. Each retry is sent through the cluster, so that it may go to another node.
+     * Both buffer the request body to be able to send it again, at the cost of a copy of it.
+     */
+    private void configureRequests() {
+        ConnectionSettings connectionSettings = connectionFactory.getConnectionSettings();
+        CouchDbCluster cluster = connectionFactory.getCluster();
+        if (cluster != null) {
+            setRequestFactory(new ClusterRequestFactory(getRequestFactory(), cluster,
+                    connectionSettings.isRetryNonIdempotent()));
+        }
+        CircuitBreaker circuitBreaker = connectionFactory.getCircuitBreaker();
+        if (connectionSettings.getMaxAttempts() > 1 || circuitBreaker != null) {
+            setInterceptors(Collections.<ClientHttpRequestInterceptor>singletonList(
+                    new RetryInterceptor(connectionSettings, circuitBreaker)));
+        }
+    }
+
+    private void createRequestFactory(String defaultDatabaseUrl) {
         String userInfo = null;
         try {
             URL url = new URL(defaultDatabaseUrl);
@@ -63,25 +133,23 @@ public class BasicAuthRestTemplate extends RestTemplate {
         } catch (MalformedURLException e) {
             new IllegalArgumentException("URL for CouchDB is malformed: " + defaultDatabaseUrl);
         }
-        PoolingHttpClientConnectionManager conMan = createConnectionManager(100);
-        HttpClientBuilder builder = HttpClients.custom().setConnectionManager(conMan);
+        HttpClient httpClient = connectionFactory.getHttpClient();
         if (userInfo != null) {
             String[] creds = userInfo.split(":");
             if (creds.length < 2) {
                 logger.warn("CouchDB URL contains a user name but no password");
+                setRequestFactory(new HttpComponentsClientHttpRequestFactory(httpClient));
             } else {
-                CredentialsProvider provider = createCredentialsProvider(creds[0], creds[1], defaultDatabaseUrl);
-                builder.setDefaultCredentialsProvider(provider);
-                httpClient = builder.build();
-                createRequestFactory(defaultDatabaseUrl, httpClient);
+                createRequestFactory(defaultDatabaseUrl, httpClient, creds[0], creds[1],
+                        connectionFactory.getConnectionSettings());
             }
         } else {
-            httpClient = builder.build();
             setRequestFactory(new HttpComponentsClientHttpRequestFactory(httpClient));
         }
     }
 
-    private void createRequestFactory(String url, HttpClient httpClient) {
+    private void createRequestFactory(String url, HttpClient httpClient, String username, String password,
+                                      ConnectionSettings connectionSettings) {
         URL uri;
         try {
             uri = new URL(url);
@@ -89,7 +157,16 @@ public class BasicAuthRestTemplate extends RestTemplate {
             throw new IllegalArgumentException("URL for CouchDB is malformed: " + url);
         }
         HttpHost host = createHttpHost(uri);
-        setRequestFactory(new BasicAuthRequestFactory(httpClient, host));
+        // the credentials are sent to every node of a cluster which the URL belongs to
+        CouchDbCluster cluster = connectionFactory.getCluster();
+        List<HttpHost> hosts = cluster != null && cluster.isMember(host) ?
+                cluster.getHosts() : Collections.singletonList(host);
+        if (connectionSettings.isSessionAuthentication()) {
+            CouchDbSession session = connectionFactory.getSession(host, username, password);
+            setRequestFactory(new SessionAuthRequestFactory(httpClient, session, hosts));
+        } else {
+            setRequestFactory(new BasicAuthRequestFactory(httpClient, hosts, username, password));
+        }
     }
 
     private HttpHost createHttpHost(URL uri) {
@@ -104,27 +181,15 @@ public class BasicAuthRestTemplate extends RestTemplate {
             else
                 throw new IllegalArgumentException("CouchDB URL has unknown protocol " + protocol);            
         }
-        host = new HttpHost(uri.getHost(), port);
+        host = new HttpHost(uri.getHost(), port, uri.getProtocol());
         return host;
     }
 
-    private PoolingHttpClientConnectionManager createConnectionManager(int maxConnections) {
-        PoolingHttpClientConnectionManager conMan = new PoolingHttpClientConnectionManager();
-        conMan.setMaxTotal(maxConnections);
-        return conMan;
-    }
-
-    CredentialsProvider createCredentialsProvider(String username, String password, String url) {
-        URL targetUrl;
-        try {
-            targetUrl = new URL(url);
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException("URL for CouchDB is malformed: " + url);
-        }
-        CredentialsProvider credsProvider = new BasicCredentialsProvider();
-        credsProvider.setCredentials(new AuthScope(targetUrl.getHost(), targetUrl.getPort()), new UsernamePasswordCredentials(username,
-                password));
-        return credsProvider;
+    private static ConnectionSettings createConnectionSettings(int maxConnections) {
+        ConnectionSettings connectionSettings = new ConnectionSettings();
+        connectionSettings.setMaxConnections(maxConnections);
+        connectionSettings.setMaxConnectionsPerRoute(maxConnections);
+        return connectionSettings;
     }
 
     /**
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.util.Assert;
+
+/**
+ * Stops requests to a CouchDB server which keeps failing. After failureThreshold consecutive failures the circuit
+ * opens, and requests fail with a CircuitOpenException without being sent. Once the open interval has passed, a
+ * single request is let through; the circuit closes if it succeeds and opens again if it fails.
+ *
+ * @since 18/10/2026
+ */
+public class CircuitBreaker {
+
+    private final int failureThreshold;
+
+    private final long openInterval;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * The time until which the circuit is open, or 0 if it is closed.
+     */
+    private volatile long openUntil = 0L;
+
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    /**
+     * @param failureThreshold the number of consecutive failures after which the circuit opens
+     * @param openInterval the time in milliseconds during which an open circuit rejects all requests
+     */
+    public CircuitBreaker(int failureThreshold, long openInterval) {
+        Assert.isTrue(failureThreshold > 0, "failureThreshold must be greater than zero");
+        Assert.isTrue(openInterval >= 0, "openInterval must not be negative");
+        this.failureThreshold = failureThreshold;
+        this.openInterval = openInterval;
+    }
+
+    /**
+     * Lets a request through, or throws a CircuitOpenException if the circuit is open.
+     * @return true if the request probes an open circuit, in which case its outcome must be recorded or the probe
+     * released
+     */
+    public boolean acquire() throws CircuitOpenException {
+        long until = openUntil;
+        if (until == 0L) {
+            return false;
+        }
+        long remaining = until - System.currentTimeMillis();
+        if (remaining > 0) {
+            throw new CircuitOpenException("circuit to CouchDB is open after " + consecutiveFailures.get() +
+                    " consecutive failures", remaining);
+        }
+        if (!probing.compareAndSet(false, true)) {
+            throw new CircuitOpenException("circuit to CouchDB is open, waiting for the outcome of a probe", 0L);
+        }
+        return true;
+    }
+
+    /**
+     * Ends a probe whose outcome is unknown, e.g. because it failed with an unexpected exception, so that the next
+     * request probes the circuit instead.
+     */
+    public void releaseProbe() {
+        probing.set(false);
+    }
+
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+        openUntil = 0L;
+        probing.set(false);
+    }
+
+    public void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openInterval;
+            probing.set(false);
+        }
+    }
+
+    public boolean isOpen() {
+        return openUntil != 0L;
+    }
+}
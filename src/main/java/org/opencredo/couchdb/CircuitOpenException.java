@@ -0,0 +1,42 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the CircuitBreaker of a CouchDB server is open. Being an IOException,
+ * it reaches the caller of a RestTemplate wrapped in a ResourceAccessException, like a refused connection.
+ *
+ * @since 18/10/2026
+ */
+public class CircuitOpenException extends IOException {
+
+    private final long retryAfter;
+
+    public CircuitOpenException(String message, long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns the time in milliseconds after which a request may be sent again to probe the server.
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.AbstractClientHttpRequestFactoryWrapper;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+/**
+ * A request factory which sends requests to any node of a CouchDbCluster to the node chosen by the cluster. If a
+ * node cannot be reached, the request fails over to the next one. Requests which are not idempotent only fail over
+ * if the connection was refused or timed out before it was established, unless retryNonIdempotent is set, since a
+ * POST may have been processed before its connection failed. Sessions log in through the cluster as well.
+ * </p>
+ * The requests are created by the underlying factory, so each node receives the credentials of the template. A request
+ * counts as outstanding until its response is closed.
+ *
+ * @since 18/10/2026
+ */
+public class ClusterRequestFactory extends AbstractClientHttpRequestFactoryWrapper {
+
+    private final CouchDbCluster cluster;
+
+    private final boolean retryNonIdempotent;
+
+    public ClusterRequestFactory(ClientHttpRequestFactory requestFactory, CouchDbCluster cluster,
+                                 boolean retryNonIdempotent) {
+        super(requestFactory);
+        Assert.notNull(cluster, "cluster cannot be null");
+        this.cluster = cluster;
+        this.retryNonIdempotent = retryNonIdempotent;
+    }
+
+    @Override
+    protected ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod, ClientHttpRequestFactory requestFactory)
+            throws IOException {
+        if (!cluster.isMember(uri)) {
+            return requestFactory.createRequest(uri, httpMethod);
+        }
+        return new ClusterRequest(uri, httpMethod, requestFactory);
+    }
+
+    /**
+     * Buffers the body of a request, so that it can be sent again to another node.
+     */
+    private class ClusterRequest extends AbstractClientHttpRequest {
+
+        private final URI uri;
+
+        private final HttpMethod method;
+
+        private final ClientHttpRequestFactory requestFactory;
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        ClusterRequest(URI uri, HttpMethod method, ClientHttpRequestFactory requestFactory) {
+            this.uri = uri;
+            this.method = method;
+            this.requestFactory = requestFactory;
+        }
+
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) throws IOException {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            boolean failover = retryNonIdempotent || RetryInterceptor.isIdempotent(method);
+            byte[] bytes = body.toByteArray();
+            IOException failure = null;
+            for (CouchDbCluster.Node node : cluster.selectNodes()) {
+                ClientHttpRequest request = requestFactory.createRequest(node.rewrite(uri), method);
+                request.getHeaders().putAll(headers);
+                node.requestStarted();
+                ClientHttpResponse response;
+                try {
+                    if (bytes.length > 0) {
+                        StreamUtils.copy(bytes, request.getBody());
+                    }
+                    response = request.execute();
+                } catch (IOException e) {
+                    node.requestCompleted();
+                    node.markUnavailable(e.toString());
+                    if (!failover && !(e instanceof ConnectException || e instanceof ConnectTimeoutException)) {
+                        throw e;
+                    }
+                    failure = e;
+                    continue;
+                }
+                node.markAvailable();
+                return new NodeResponse(response, node);
+            }
+            throw failure;
+        }
+    }
+
+    /**
+     * Completes the request on its node when closed.
+     */
+    private static class NodeResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+
+        private final CouchDbCluster.Node node;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        NodeResponse(ClientHttpResponse response, CouchDbCluster.Node node) {
+            this.response = response;
+            this.node = node;
+        }
+
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        public InputStream getBody() throws IOException {
+            return response.getBody();
+        }
+
+        public void close() {
+            try {
+                response.close();
+            } finally {
+                if (closed.compareAndSet(false, true)) {
+                    node.requestCompleted();
+                }
+            }
+        }
+    }
+}
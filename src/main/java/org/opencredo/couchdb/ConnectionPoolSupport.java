@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Applies ConnectionSettings to the Apache HTTP clients used by the rest templates.
+ *
+ * @since 18/10/2026
+ */
+final class ConnectionPoolSupport {
+
+    private ConnectionPoolSupport() {
+    }
+
+    static RequestConfig createRequestConfig(ConnectionSettings settings) {
+        return RequestConfig.custom()
+                .setConnectTimeout(settings.getConnectTimeout())
+                .setSocketTimeout(settings.getSocketTimeout())
+                .setConnectionRequestTimeout(settings.getConnectionRequestTimeout())
+                .build();
+    }
+
+    static ConnectionKeepAliveStrategy createKeepAliveStrategy(final ConnectionSettings settings) {
+        return new ConnectionKeepAliveStrategy() {
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : settings.getKeepAlive();
+            }
+        };
+    }
+
+    /**
+     * A daemon thread which periodically closes the expired and idle connections of a pool.
+     */
+    abstract static class IdleConnectionEvictor extends Thread {
+
+        private final long idleTimeout;
+
+        private volatile boolean running = true;
+
+        IdleConnectionEvictor(long idleTimeout) {
+            super("couchdb-connection-evictor");
+            this.idleTimeout = idleTimeout;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    Thread.sleep(idleTimeout);
+                    closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void shutdown() {
+            running = false;
+            interrupt();
+        }
+
+        /**
+         * Closes the expired connections and those which have been idle longer than the given time.
+         */
+        protected abstract void closeIdleConnections(long idleTime, TimeUnit timeUnit);
+    }
+}
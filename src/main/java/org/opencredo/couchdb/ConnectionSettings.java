@@ -0,0 +1,342 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb;
+
+import org.springframework.util.Assert;
+
+/**
+ * Settings of the HTTP connection pool used to communicate with CouchDB. Most deployments talk to a single
+ * CouchDB host, so by default a single route may use all the connections of the pool.
+ * </p>
+ * Timeouts are in milliseconds; a negative value leaves the default of the HTTP client in place, zero means
+ * no timeout. Note that the socket timeout must be longer than the heartbeat when following the continuous
+ * changes feed.
+ * </p>
+ * With session authentication, the credentials in the database URL are used to log in to CouchDB once, and requests
+ * are authenticated with the AuthSession cookie instead of basic auth, see CouchDbSession.
+ * </p>
+ * Requests which fail with an I/O error or a retryable status code are retried up to maxAttempts times, see
+ * RetryInterceptor, and with a circuitBreakerThreshold a CircuitBreaker stops requests to a server which keeps
+ * failing. Both are off by default.
+ * </p>
+ * With clusterNodes, requests to any of the nodes are spread across all of them and fail over to the next node when
+ * one cannot be reached, see CouchDbCluster.
+ *
+ * @since 18/10/2026
+ */
+public class ConnectionSettings {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 100;
+
+    public static final long DEFAULT_SESSION_TIMEOUT = 600000L;
+
+    public static final int[] DEFAULT_RETRYABLE_STATUS_CODES = {502, 503, 504};
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS;
+
+    private int connectTimeout = -1;
+
+    private int socketTimeout = -1;
+
+    private int connectionRequestTimeout = -1;
+
+    private long idleConnectionTimeout = 0L;
+
+    private long keepAlive = -1L;
+
+    private boolean sessionAuthentication = false;
+
+    private long sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+
+    private int maxAttempts = 1;
+
+    private long initialBackoff = 100L;
+
+    private long maxBackoff = 10000L;
+
+    private double backoffMultiplier = 2.0;
+
+    private double backoffJitter = 0.5;
+
+    private int[] retryableStatusCodes = DEFAULT_RETRYABLE_STATUS_CODES;
+
+    private boolean retryNonIdempotent = false;
+
+    private int circuitBreakerThreshold = 0;
+
+    private long circuitBreakerOpenInterval = 30000L;
+
+    private String[] clusterNodes = new String[0];
+
+    private CouchDbCluster.LoadBalancing loadBalancing = CouchDbCluster.LoadBalancing.ROUND_ROBIN;
+
+    private long healthCheckInterval = 10000L;
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of connections in the pool. Default is 100.
+     */
+    public void setMaxConnections(int maxConnections) {
+        Assert.isTrue(maxConnections > 0, "maxConnections must be greater than zero");
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Sets the maximum number of connections to a single host. Default is 100.
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        Assert.isTrue(maxConnectionsPerRoute > 0, "maxConnectionsPerRoute must be greater than zero");
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the time to wait for a connection to be established.
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+     * Sets the maximum time to wait for data on an established connection.
+     */
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * Sets the time to wait for a connection from the pool when all connections are in use.
+     */
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public long getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    /**
+     * Sets the time after which idle connections are closed by a background thread, along with expired ones.
+     * Default is 0, which keeps idle connections open.
+     */
+    public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+        Assert.isTrue(idleConnectionTimeout >= 0, "idleConnectionTimeout must not be negative");
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Sets how long a connection may be reused when CouchDB does not send a Keep-Alive header. A timeout
+     * sent by the server always takes precedence. Default is -1, which keeps connections alive indefinitely.
+     */
+    public void setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public boolean isSessionAuthentication() {
+        return sessionAuthentication;
+    }
+
+    /**
+     * Sets whether requests are authenticated with a CouchDB cookie session instead of basic auth. Default is false.
+     */
+    public void setSessionAuthentication(boolean sessionAuthentication) {
+        this.sessionAuthentication = sessionAuthentication;
+    }
+
+    public long getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Sets the session timeout configured on the CouchDB server, after which the session is renewed by logging in
+     * again. Default is 600000, the default of CouchDB.
+     */
+    public void setSessionTimeout(long sessionTimeout) {
+        Assert.isTrue(sessionTimeout > 0, "sessionTimeout must be greater than zero");
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the number of times a request is sent before its failure is passed on. Default is 1, which disables
+     * retries.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        Assert.isTrue(maxAttempts > 0, "maxAttempts must be greater than zero");
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * Sets the time to wait before the first retry. Default is 100.
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        Assert.isTrue(initialBackoff >= 0, "initialBackoff must not be negative");
+        this.initialBackoff = initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * Sets the maximum time to wait between two attempts. Default is 10000.
+     */
+    public void setMaxBackoff(long maxBackoff) {
+        Assert.isTrue(maxBackoff >= 0, "maxBackoff must not be negative");
+        this.maxBackoff = maxBackoff;
+    }
+
+    public double getBackoffMultiplier() {
+        return backoffMultiplier;
+    }
+
+    /**
+     * Sets the factor by which the backoff grows with every retry. Default is 2.
+     */
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        Assert.isTrue(backoffMultiplier >= 1.0, "backoffMultiplier must not be less than 1");
+        this.backoffMultiplier = backoffMultiplier;
+    }
+
+    public double getBackoffJitter() {
+        return backoffJitter;
+    }
+
+    /**
+     * Sets the fraction of the backoff which is randomly taken off, from 0 for none to 1 for a backoff anywhere
+     * between zero and its full length. Default is 0.5.
+     */
+    public void setBackoffJitter(double backoffJitter) {
+        Assert.isTrue(backoffJitter >= 0.0 && backoffJitter <= 1.0, "backoffJitter must be between 0 and 1");
+        this.backoffJitter = backoffJitter;
+    }
+
+    public int[] getRetryableStatusCodes() {
+        return retryableStatusCodes;
+    }
+
+    /**
+     * Sets the status codes of the responses which are retried. Default is 502, 503 and 504.
+     */
+    public void setRetryableStatusCodes(int[] retryableStatusCodes) {
+        Assert.notNull(retryableStatusCodes, "retryableStatusCodes cannot be null");
+        this.retryableStatusCodes = retryableStatusCodes;
+    }
+
+    public boolean isRetryNonIdempotent() {
+        return retryNonIdempotent;
+    }
+
+    /**
+     * Sets whether POST requests are retried as well, which may write a document twice. Default is false.
+     */
+    public void setRetryNonIdempotent(boolean retryNonIdempotent) {
+        this.retryNonIdempotent = retryNonIdempotent;
+    }
+
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    /**
+     * Sets the number of consecutive failed attempts after which requests to the server fail fast for the
+     * circuitBreakerOpenInterval. Default is 0, which disables the circuit breaker.
+     */
+    public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+        Assert.isTrue(circuitBreakerThreshold >= 0, "circuitBreakerThreshold must not be negative");
+        this.circuitBreakerThreshold = circuitBreakerThreshold;
+    }
+
+    public long getCircuitBreakerOpenInterval() {
+        return circuitBreakerOpenInterval;
+    }
+
+    /**
+     * Sets the time during which requests fail fast once the circuit breaker has opened. Default is 30000.
+     */
+    public void setCircuitBreakerOpenInterval(long circuitBreakerOpenInterval) {
+        Assert.isTrue(circuitBreakerOpenInterval >= 0, "circuitBreakerOpenInterval must not be negative");
+        this.circuitBreakerOpenInterval = circuitBreakerOpenInterval;
+    }
+
+    public String[] getClusterNodes() {
+        return clusterNodes;
+    }
+
+    /**
+     * Sets the URLs of the nodes of a CouchDB cluster, such as http://127.0.0.1:5984. The database URLs of the
+     * templates name one of them. Default is none.
+     */
+    public void setClusterNodes(String... clusterNodes) {
+        Assert.notNull(clusterNodes, "clusterNodes cannot be null");
+        this.clusterNodes = clusterNodes;
+    }
+
+    public CouchDbCluster.LoadBalancing getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    /**
+     * Sets how requests are spread across the cluster nodes. Default is ROUND_ROBIN.
+     */
+    public void setLoadBalancing(CouchDbCluster.LoadBalancing loadBalancing) {
+        Assert.notNull(loadBalancing, "loadBalancing cannot be null");
+        this.loadBalancing = loadBalancing;
+    }
+
+    public long getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * Sets the time between two health checks of the cluster nodes. Default is 10000, 0 disables the health checks.
+     */
+    public void setHealthCheckInterval(long healthCheckInterval) {
+        Assert.isTrue(healthCheckInterval >= 0, "healthCheckInterval must not be negative");
+        this.healthCheckInterval = healthCheckInterval;
+    }
+}
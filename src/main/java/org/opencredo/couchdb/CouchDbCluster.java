@@ -0,0 +1,287 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.springframework.util.Assert;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * The nodes of a CouchDB cluster, across which requests are spread. Each request goes to the available node which is
+ * next in turn, or which has the fewest outstanding requests, depending on the LoadBalancing. Nodes which fail are
+ * marked unavailable and only tried once all available nodes have failed as well.
+ * </p>
+ * A daemon thread checks the health of all nodes in the background by reading their welcome page, and makes nodes
+ * available again as soon as they answer.
+ *
+ * @since 18/10/2026
+ */
+public class CouchDbCluster {
+
+    public enum LoadBalancing {
+        ROUND_ROBIN,
+        LEAST_OUTSTANDING_REQUESTS
+    }
+
+    private static final Log logger = LogFactory.getLog(CouchDbCluster.class);
+
+    private final List<Node> nodes;
+
+    private final LoadBalancing loadBalancing;
+
+    private final AtomicInteger nextNode = new AtomicInteger();
+
+    private HealthChecker healthChecker;
+
+    /**
+     * @param nodeUrls the URLs of the nodes, such as http://127.0.0.1:5984
+     * @param loadBalancing how requests are spread across the nodes
+     */
+    public CouchDbCluster(Collection<String> nodeUrls, LoadBalancing loadBalancing) {
+        Assert.notEmpty(nodeUrls, "nodeUrls cannot be empty");
+        Assert.notNull(loadBalancing, "loadBalancing cannot be null");
+        List<Node> nodes = new ArrayList<Node>(nodeUrls.size());
+        for (String nodeUrl : nodeUrls) {
+            URI uri = URI.create(nodeUrl.trim());
+            Assert.hasText(uri.getHost(), "URL of CouchDB node has no host: " + nodeUrl);
+            nodes.add(new Node(new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme())));
+        }
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.loadBalancing = loadBalancing;
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public List<HttpHost> getHosts() {
+        List<HttpHost> hosts = new ArrayList<HttpHost>(nodes.size());
+        for (Node node : nodes) {
+            hosts.add(node.getHost());
+        }
+        return hosts;
+    }
+
+    /**
+     * Tells whether a URI points to one of the nodes, so that its request may be sent to any of them.
+     */
+    public boolean isMember(URI uri) {
+        return getNode(uri) != null;
+    }
+
+    /**
+     * Tells whether a host is one of the nodes.
+     */
+    public boolean isMember(HttpHost host) {
+        return isMember(URI.create(host.toURI()));
+    }
+
+    private Node getNode(URI uri) {
+        for (Node node : nodes) {
+            if (BasicAuthRequestFactory.isHost(node.getHost(), uri)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all nodes in the order in which a request tries them: the available nodes as chosen by the
+     * LoadBalancing, followed by the unavailable ones.
+     */
+    List<Node> selectNodes() {
+        int size = nodes.size();
+        int offset = (nextNode.getAndIncrement() & Integer.MAX_VALUE) % size;
+        List<Node> available = new ArrayList<Node>(size);
+        List<Node> unavailable = new ArrayList<Node>(size);
+        for (int i = 0; i < size; i++) {
+            Node node = nodes.get((offset + i) % size);
+            (node.isAvailable() ? available : unavailable).add(node);
+        }
+        if (loadBalancing == LoadBalancing.LEAST_OUTSTANDING_REQUESTS) {
+            // the sort is stable, so that nodes with as many outstanding requests take turns
+            Collections.sort(available, new Comparator<Node>() {
+                public int compare(Node node1, Node node2) {
+                    int outstanding1 = node1.getOutstandingRequests();
+                    int outstanding2 = node2.getOutstandingRequests();
+                    return outstanding1 < outstanding2 ? -1 : (outstanding1 == outstanding2 ? 0 : 1);
+                }
+            });
+        }
+        available.addAll(unavailable);
+        return available;
+    }
+
+    /**
+     * Starts checking the health of the nodes in the background, unless the interval is 0.
+     */
+    public synchronized void startHealthChecks(HttpClient httpClient, long interval) {
+        Assert.isTrue(interval >= 0, "interval must not be negative");
+        if (healthChecker == null && interval > 0) {
+            healthChecker = new HealthChecker(httpClient, interval);
+            healthChecker.start();
+        }
+    }
+
+    public synchronized void stopHealthChecks() {
+        if (healthChecker != null) {
+            healthChecker.shutdown();
+            healthChecker = null;
+        }
+    }
+
+    /**
+     * Checks the health of every node once, waiting at most the given time for each of them to answer.
+     */
+    void checkHealth(HttpClient httpClient, int timeout) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .build();
+        for (Node node : nodes) {
+            HttpGet request = new HttpGet(node.getHost().toURI() + "/");
+            request.setConfig(requestConfig);
+            try {
+                HttpResponse response = httpClient.execute(request);
+                EntityUtils.consume(response.getEntity());
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode >= 200 && statusCode < 300) {
+                    node.markAvailable();
+                } else {
+                    node.markUnavailable("health check answered with status " + statusCode);
+                }
+            } catch (IOException e) {
+                node.markUnavailable("health check failed with " + e);
+            }
+        }
+    }
+
+    /**
+     * A node of the cluster along with its state.
+     */
+    public static class Node {
+
+        private final HttpHost host;
+
+        private final AtomicInteger outstandingRequests = new AtomicInteger();
+
+        private volatile boolean available = true;
+
+        Node(HttpHost host) {
+            this.host = host;
+        }
+
+        public HttpHost getHost() {
+            return host;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+
+        public int getOutstandingRequests() {
+            return outstandingRequests.get();
+        }
+
+        /**
+         * Returns the given URI with the scheme, host and port of this node.
+         */
+        URI rewrite(URI uri) {
+            return UriComponentsBuilder.fromUri(uri)
+                    .scheme(host.getSchemeName())
+                    .host(host.getHostName())
+                    .port(host.getPort())
+                    .build(true)
+                    .toUri();
+        }
+
+        void requestStarted() {
+            outstandingRequests.incrementAndGet();
+        }
+
+        void requestCompleted() {
+            outstandingRequests.decrementAndGet();
+        }
+
+        void markAvailable() {
+            if (!available) {
+                available = true;
+                logger.info("CouchDB node " + host.toURI() + " is available again");
+            }
+        }
+
+        void markUnavailable(String cause) {
+            if (available) {
+                available = false;
+                logger.warn("CouchDB node " + host.toURI() + " is unavailable: " + cause);
+            }
+        }
+    }
+
+    /**
+     * A daemon thread which periodically checks the health of the nodes.
+     */
+    private class HealthChecker extends Thread {
+
+        private final HttpClient httpClient;
+
+        private final long interval;
+
+        private volatile boolean running = true;
+
+        HealthChecker(HttpClient httpClient, long interval) {
+            super("couchdb-health-check");
+            this.httpClient = httpClient;
+            this.interval = interval;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    Thread.sleep(interval);
+                    checkHealth(httpClient, (int) Math.min(interval, Integer.MAX_VALUE));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void shutdown() {
+            running = false;
+            interrupt();
+        }
+    }
+}
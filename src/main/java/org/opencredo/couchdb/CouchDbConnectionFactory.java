@@ -0,0 +1,169 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestOperations;
+
+/**
+ * Holds an HTTP client with a pool of connections to CouchDB, configured by ConnectionSettings. Templates created
+ * with a connection factory share its pool instead of opening their own, so that keep-alive connections are reused
+ * across all of them. Each template still authenticates with the credentials of its own database URL.
+ * </p>
+ * The templates also share the CircuitBreaker of the connection factory, if the ConnectionSettings enable one, the
+ * CouchDbCluster, whose nodes are health-checked until the connection factory is destroyed, and the CouchDbSession
+ * of each server and user if the ConnectionSettings ask for session authentication.
+ * </p>
+ * The pool is closed when the connection factory is destroyed, not when the templates using it are.
+ *
+ * @since 18/10/2026
+ */
+public class CouchDbConnectionFactory implements DisposableBean {
+
+    private final ConnectionSettings connectionSettings;
+
+    private final CloseableHttpClient httpClient;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final CouchDbCluster cluster;
+
+    private final ConcurrentMap<String, CouchDbSession> sessions = new ConcurrentHashMap<String, CouchDbSession>();
+
+    private ConnectionPoolSupport.IdleConnectionEvictor connectionEvictor;
+
+    public CouchDbConnectionFactory() {
+        this(new ConnectionSettings());
+    }
+
+    public CouchDbConnectionFactory(ConnectionSettings connectionSettings) {
+        Assert.notNull(connectionSettings, "connectionSettings cannot be null");
+        this.connectionSettings = connectionSettings;
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(connectionSettings.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(connectionSettings.getMaxConnectionsPerRoute());
+        if (connectionSettings.getIdleConnectionTimeout() > 0) {
+            connectionEvictor = new ConnectionPoolSupport.IdleConnectionEvictor(connectionSettings.getIdleConnectionTimeout()) {
+                @Override
+                protected void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(idleTime, timeUnit);
+                }
+            };
+            connectionEvictor.start();
+        }
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(ConnectionPoolSupport.createRequestConfig(connectionSettings))
+                .setKeepAliveStrategy(ConnectionPoolSupport.createKeepAliveStrategy(connectionSettings))
+                .build();
+        if (connectionSettings.getCircuitBreakerThreshold() > 0) {
+            this.circuitBreaker = new CircuitBreaker(connectionSettings.getCircuitBreakerThreshold(),
+                    connectionSettings.getCircuitBreakerOpenInterval());
+        } else {
+            this.circuitBreaker = null;
+        }
+        if (connectionSettings.getClusterNodes().length > 0) {
+            this.cluster = new CouchDbCluster(Arrays.asList(connectionSettings.getClusterNodes()),
+                    connectionSettings.getLoadBalancing());
+            cluster.startHealthChecks(httpClient, connectionSettings.getHealthCheckInterval());
+        } else {
+            this.cluster = null;
+        }
+    }
+
+    /**
+     * Creates a RestOperations which uses the pool of this connection factory, authenticated with the
+     * credentials of the given URL if it contains any.
+     */
+    public RestOperations createRestOperations(String databaseUrl) {
+        return new BasicAuthRestTemplate(databaseUrl, this);
+    }
+
+    public ConnectionSettings getConnectionSettings() {
+        return connectionSettings;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the circuit breaker shared by the templates using this connection factory, or null if disabled.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the cluster across which the templates using this connection factory spread their requests, or null.
+     */
+    public CouchDbCluster getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Returns the session of a user on a server, creating it on first use. If the server is a node of the cluster,
+     * the session logs in through the cluster. A template whose password differs from
+     * the one of the shared session gets a session of its own.
+     */
+    public CouchDbSession getSession(HttpHost host, String username, String password) {
+        String key = host.toURI() + " " + username;
+        CouchDbSession session = sessions.get(key);
+        if (session == null) {
+            CouchDbSession created = new CouchDbSession(host, username, password,
+                    connectionSettings.getSessionTimeout(), getCluster(host));
+            session = sessions.putIfAbsent(key, created);
+            if (session == null) {
+                session = created;
+            }
+        }
+        if (!session.hasPassword(password)) {
+            return new CouchDbSession(host, username, password, connectionSettings.getSessionTimeout(),
+                    getCluster(host));
+        }
+        return session;
+    }
+
+    private CouchDbCluster getCluster(HttpHost host) {
+        return cluster != null && cluster.isMember(host) ? cluster : null;
+    }
+
+    /**
+     * Stops the eviction of idle connections and the health checks, and closes the HTTP client along with its pool.
+     */
+    public void destroy() throws IOException {
+        if (cluster != null) {
+            cluster.stopHealthChecks();
+        }
+        if (connectionEvictor != null) {
+            connectionEvictor.shutdown();
+        }
+        httpClient.close();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb;
+
+/**
+ * Names of the message headers set by the CouchDB inbound adapters.
+ *
+ * @since 18/10/2026
+ */
+public abstract class CouchDbHeaders {
+
+    private static final String PREFIX = "couchdb-";
+
+    /**
+     * The URI of the changed document, or of the database or view the document was read from.
+     */
+    public static final String URI = PREFIX + "uri";
+
+    /**
+     * The sequence number of the change.
+     */
+    public static final String SEQUENCE = PREFIX + "sequence";
+
+    /**
+     * The nature of the change, one of the names of ChangedDocument.Status.
+     */
+    public static final String STATUS = PREFIX + "status";
+
+    /**
+     * The number of documents retrieved so far by the all-documents source.
+     */
+    public static final String SKIP = PREFIX + "skip";
+
+    /**
+     * The page size of the all-documents source.
+     */
+    public static final String LIMIT = PREFIX + "limit";
+
+    private CouchDbHeaders() {
+    }
+}
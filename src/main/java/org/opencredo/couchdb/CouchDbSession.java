@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.springframework.util.Assert;
+
+/**
+ * A CouchDB cookie session, obtained by posting the credentials to the _session resource of a server. Unlike basic
+ * auth, which makes CouchDB hash the password on every request, the AuthSession cookie is only checked against the
+ * server secret.
+ * </p>
+ * Sessions are held by a CouchDbConnectionFactory and shared by the templates using it to connect to the same server
+ * as the same user. The cookie is renewed when CouchDB sends a new one along with a response, and otherwise by logging
+ * in again once 90% of the session timeout have passed. A cookie which CouchDB rejects is discarded, so that the next
+ * request logs in again.
+ * </p>
+ * If the server is a node of a CouchDbCluster, the session logs in to the node chosen by the cluster and fails over to
+ * the next one if a node cannot be reached, like any other request.
+ *
+ * @since 18/10/2026
+ */
+public class CouchDbSession {
+
+    public static final String COOKIE_NAME = "AuthSession";
+
+    private final HttpHost host;
+
+    private final String username;
+
+    private final String password;
+
+    private final long timeout;
+
+    private final CouchDbCluster cluster;
+
+    private volatile SessionCookie cookie;
+
+    CouchDbSession(HttpHost host, String username, String password, long timeout) {
+        this(host, username, password, timeout, null);
+    }
+
+    /**
+     * @param cluster the cluster to which the host belongs, or null
+     */
+    CouchDbSession(HttpHost host, String username, String password, long timeout, CouchDbCluster cluster) {
+        Assert.notNull(host, "host cannot be null");
+        Assert.hasText(username, "username cannot be empty");
+        Assert.isTrue(timeout > 0, "timeout must be greater than zero");
+        this.host = host;
+        this.username = username;
+        this.password = password;
+        this.timeout = timeout;
+        this.cluster = cluster;
+    }
+
+    public HttpHost getHost() {
+        return host;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    boolean hasPassword(String password) {
+        return this.password == null ? password == null : this.password.equals(password);
+    }
+
+    /**
+     * Returns the value of the AuthSession cookie, logging in first if there is no cookie or it is about to expire.
+     * @param httpClient the client with which to log in
+     */
+    public String getCookie(HttpClient httpClient) throws IOException {
+        SessionCookie current = cookie;
+        if (current == null || current.isDue()) {
+            synchronized (this) {
+                current = cookie;
+                if (current == null || current.isDue()) {
+                    current = login(httpClient);
+                    cookie = current;
+                }
+            }
+        }
+        return current.value;
+    }
+
+    /**
+     * Takes over a renewed AuthSession cookie sent by CouchDB along with a response.
+     * @param setCookieHeaders the Set-Cookie headers of the response, may be null
+     */
+    public void update(List<String> setCookieHeaders) {
+        if (setCookieHeaders == null) {
+            return;
+        }
+        for (String setCookie : setCookieHeaders) {
+            String value = parseCookie(setCookie);
+            if (value != null) {
+                cookie = new SessionCookie(value, System.currentTimeMillis() + timeout * 9 / 10);
+            }
+        }
+    }
+
+    /**
+     * Discards a cookie which has been rejected, unless it has been renewed in the meantime.
+     */
+    public synchronized void invalidate(String value) {
+        if (cookie != null && cookie.value.equals(value)) {
+            cookie = null;
+        }
+    }
+
+    private SessionCookie login(HttpClient httpClient) throws IOException {
+        long now = System.currentTimeMillis();
+        if (cluster == null) {
+            return readCookie(host, post(httpClient, host), now);
+        }
+        IOException failure = null;
+        for (CouchDbCluster.Node node : cluster.selectNodes()) {
+            HttpResponse response;
+            try {
+                response = post(httpClient, node.getHost());
+            } catch (IOException e) {
+                node.markUnavailable(e.toString());
+                failure = e;
+                continue;
+            }
+            node.markAvailable();
+            return readCookie(node.getHost(), response, now);
+        }
+        throw failure;
+    }
+
+    private HttpResponse post(HttpClient httpClient, HttpHost target) throws IOException {
+        HttpPost post = new HttpPost(target.toURI() + "/_session");
+        List<NameValuePair> form = Arrays.<NameValuePair>asList(
+                new BasicNameValuePair("name", username), new BasicNameValuePair("password", password));
+        post.setEntity(new UrlEncodedFormEntity(form, "UTF-8"));
+        return httpClient.execute(post);
+    }
+
+    private SessionCookie readCookie(HttpHost target, HttpResponse response, long now) throws IOException {
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (status != 200) {
+                throw new IOException("failed to log in to " + target.toURI() + " as " + username + ", status " + status);
+            }
+            for (Header header : response.getHeaders("Set-Cookie")) {
+                String value = parseCookie(header.getValue());
+                if (value != null) {
+                    return new SessionCookie(value, now + timeout * 9 / 10);
+                }
+            }
+            throw new IOException("CouchDB at " + target.toURI() + " did not send an " + COOKIE_NAME + " cookie");
+        } finally {
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+
+    /**
+     * Returns the value of the AuthSession cookie set by a Set-Cookie header, or null if it sets another cookie.
+     */
+    static String parseCookie(String setCookie) {
+        if (setCookie == null || !setCookie.startsWith(COOKIE_NAME + "=")) {
+            return null;
+        }
+        int end = setCookie.indexOf(';');
+        String value = setCookie.substring(COOKIE_NAME.length() + 1, end == -1 ? setCookie.length() : end).trim();
+        return value.length() == 0 ? null : value;
+    }
+
+    private static final class SessionCookie {
+
+        private final String value;
+
+        private final long renewAt;
+
+        SessionCookie(String value, long renewAt) {
+            this.value = value;
+            this.renewAt = renewAt;
+        }
+
+        boolean isDue() {
+            return System.currentTimeMillis() >= renewAt;
+        }
+    }
+}
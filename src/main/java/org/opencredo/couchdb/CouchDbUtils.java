@@ -16,9 +16,13 @@
 
 package org.opencredo.couchdb;
 
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
+
+import org.springframework.util.Base64Utils;
 
 /**
  * Utility class with operations to manipulate CouchDB URLS
@@ -50,6 +54,64 @@ public class CouchDbUtils {
         return ensureTrailingSlash(url) + "_changes?since={seq}";
     }
 
+    /**
+     * Adds 'changes since' and 'limit' variables to a URL
+     * @param url the URL of the database
+     * @return the URL of a page of changes
+     */
+    public static String addChangesSinceWithLimit(String url) {
+        return addChangesSince(url) + "&limit={limit}";
+    }
+
+    /**
+     * Adds the continuous changes feed, with heartbeat and 'changes since' variables, to a URL
+     * @param url the URL of the database
+     * @return the URL of the continuous changes feed
+     */
+    public static String addContinuousChangesSince(String url) {
+        return ensureTrailingSlash(url) + "_changes?feed=continuous&heartbeat={heartbeat}&since={seq}";
+    }
+
+    /**
+     * Adds the all documents API path, including the documents themselves, to a database URL
+     * @param url the URL of the database
+     * @return the URL of the _all_docs resource with include_docs=true
+     */
+    public static String addAllDocumentsIncludeDocs(String url) {
+        return ensureTrailingSlash(url) + "_all_docs?include_docs=true";
+    }
+
+    /**
+     * Adds a local document id variable to a database URL
+     * @param url the URL of the database
+     * @return the URL of a _local document
+     */
+    public static String addLocalId(String url) {
+        return ensureTrailingSlash(url) + "_local/{id}";
+    }
+
+    /**
+     * Adds the bulk documents API path to a database URL
+     * @param url the URL of the database
+     * @return the URL of the _bulk_docs resource
+     */
+    public static String addBulkDocs(String url) {
+        return ensureTrailingSlash(url) + "_bulk_docs";
+    }
+
+    /**
+     * Encodes a document id, or a key, for use in a URL path or query, e.g. {@code a b} becomes {@code a%20b}
+     * @param id the id to encode
+     * @return the encoded id
+     */
+    public static String encodeId(String id) {
+        try {
+            return URLEncoder.encode(id, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Ensures that a URL ends with a slash.
      * @param url the URL to modify
@@ -83,4 +145,15 @@ public class CouchDbUtils {
       return userinfo.split(":");
    }
 
+    /**
+     * Creates the value of an Authorization header for basic auth
+     * @param username the user name
+     * @param password the password
+     * @return the Authorization header value, e.g. {@code Basic YWRtaW46c2VjcmV0}
+     */
+    public static String createBasicAuthorization(String username, String password) {
+        byte[] credentials = (username + ":" + password).getBytes(Charset.forName("UTF-8"));
+        return "Basic " + Base64Utils.encodeToString(credentials);
+    }
+
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+
+/**
+ * Retries requests which fail with an I/O error or a retryable status code, such as the 503 CouchDB answers with
+ * while it is overloaded. Attempts are separated by an exponential backoff with jitter, so that clients which failed
+ * together do not retry together. Only idempotent requests are retried unless retryNonIdempotent is set, since a
+ * POST may have been processed before its connection failed.
+ * </p>
+ * If a CircuitBreaker is given, every attempt is recorded with it, and no request is sent while it is open. A probe
+ * which fails with an unexpected exception is released, so that the circuit does not stay open for good.
+ * </p>
+ * Request bodies are buffered by the RestTemplate once interceptors are set, so that they can be sent again. A raw
+ * document is therefore copied into memory before it is sent, even when it is not retried.
+ *
+ * @since 18/10/2026
+ */
+public class RetryInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final Log logger = LogFactory.getLog(RetryInterceptor.class);
+
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS = EnumSet.of(
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.OPTIONS);
+
+    private static final Random random = new Random();
+
+    private final ConnectionSettings settings;
+
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * @param settings the retry settings
+     * @param circuitBreaker the circuit breaker of the server, may be null
+     */
+    public RetryInterceptor(ConnectionSettings settings, CircuitBreaker circuitBreaker) {
+        Assert.notNull(settings, "settings cannot be null");
+        this.settings = settings;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        boolean retryable = settings.isRetryNonIdempotent() || isIdempotent(request.getMethod());
+        int maxAttempts = retryable ? settings.getMaxAttempts() : 1;
+        for (int attempt = 1; ; attempt++) {
+            boolean probe = circuitBreaker != null && circuitBreaker.acquire();
+            boolean recorded = false;
+            try {
+                ClientHttpResponse response;
+                try {
+                    response = execution.execute(request, body);
+                } catch (IOException e) {
+                    recordFailure();
+                    recorded = true;
+                    if (attempt >= maxAttempts) {
+                        throw e;
+                    }
+                    logRetry(request, attempt, e.toString());
+                    backOff(attempt);
+                    continue;
+                }
+                if (!isRetryable(response.getRawStatusCode())) {
+                    if (circuitBreaker != null) {
+                        circuitBreaker.recordSuccess();
+                    }
+                    recorded = true;
+                    return response;
+                }
+                recordFailure();
+                recorded = true;
+                if (attempt >= maxAttempts) {
+                    return response;
+                }
+                logRetry(request, attempt, "status " + response.getRawStatusCode());
+                response.close();
+                backOff(attempt);
+            } finally {
+                if (probe && !recorded) {
+                    // the outcome is unknown, e.g. after a RuntimeException, so another request probes instead
+                    circuitBreaker.releaseProbe();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells whether sending a request of the given method twice has the same effect as sending it once.
+     */
+    static boolean isIdempotent(HttpMethod method) {
+        return IDEMPOTENT_METHODS.contains(method);
+    }
+
+    private boolean isRetryable(int statusCode) {
+        for (int retryableStatusCode : settings.getRetryableStatusCodes()) {
+            if (statusCode == retryableStatusCode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recordFailure() {
+        if (circuitBreaker != null) {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    private void logRetry(HttpRequest request, int attempt, String cause) {
+        if (logger.isWarnEnabled()) {
+            logger.warn("attempt " + attempt + " of " + request.getMethod() + " " + request.getURI() +
+                    " failed with " + cause + ", retrying");
+        }
+    }
+
+    /**
+     * Waits before the attempt following the given one.
+     */
+    private void backOff(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(getBackoff(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to retry");
+        }
+    }
+
+    long getBackoff(int attempt) {
+        double backoff = settings.getInitialBackoff() * Math.pow(settings.getBackoffMultiplier(), attempt - 1);
+        backoff = Math.min(backoff, settings.getMaxBackoff());
+        // takes up to the jitter fraction off the backoff
+        return (long) (backoff * (1.0 - settings.getBackoffJitter() * random.nextDouble()));
+    }
+}
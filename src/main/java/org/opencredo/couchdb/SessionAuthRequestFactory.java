@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+/**
+ * A request factory which authenticates requests to the host of a CouchDbSession with its AuthSession cookie.
+ * Cookies renewed by CouchDB are taken over from the responses. If CouchDB rejects a cookie, e.g. because the server
+ * restarted with a new secret, the cookie is discarded, and the request logs in again and is sent once more; its body
+ * is buffered for that. Requests to other hosts are sent without the cookie.
+ * </p>
+ * The nodes of a CouchDB cluster share the secret from which cookies are made, so the cookie of a session may also be
+ * sent to the other nodes.
+ *
+ * @since 18/10/2026
+ */
+public class SessionAuthRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private final CouchDbSession session;
+
+    private final List<HttpHost> hosts;
+
+    public SessionAuthRequestFactory(HttpClient httpClient, CouchDbSession session) {
+        this(httpClient, session, Collections.<HttpHost>emptyList());
+    }
+
+    /**
+     * @param nodes further hosts to which the cookie is sent, such as the other nodes of a cluster
+     */
+    public SessionAuthRequestFactory(HttpClient httpClient, CouchDbSession session, Collection<HttpHost> nodes) {
+        super(httpClient);
+        Assert.notNull(session, "session cannot be null");
+        this.session = session;
+        this.hosts = new ArrayList<HttpHost>(nodes);
+        this.hosts.add(session.getHost());
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        if (!BasicAuthRequestFactory.isHost(hosts, uri)) {
+            return super.createRequest(uri, httpMethod);
+        }
+        return new SessionRequest(uri, httpMethod, session.getCookie(getHttpClient()));
+    }
+
+    private ClientHttpRequest createHttpRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return super.createRequest(uri, httpMethod);
+    }
+
+    /**
+     * Sends a request with the cookie of the session, and once more with a new cookie if it is rejected.
+     */
+    private class SessionRequest extends AbstractClientHttpRequest {
+
+        private final URI uri;
+
+        private final HttpMethod method;
+
+        private final String cookie;
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        SessionRequest(URI uri, HttpMethod method, String cookie) {
+            this.uri = uri;
+            this.method = method;
+            this.cookie = cookie;
+            getHeaders().set(HttpHeaders.COOKIE, CouchDbSession.COOKIE_NAME + "=" + cookie);
+        }
+
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) throws IOException {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            byte[] bytes = body.toByteArray();
+            ClientHttpResponse response = send(headers, bytes, cookie);
+            if (response.getRawStatusCode() == HttpStatus.UNAUTHORIZED.value()) {
+                response.close();
+                response = send(headers, bytes, session.getCookie(getHttpClient()));
+            }
+            return response;
+        }
+
+        private ClientHttpResponse send(HttpHeaders headers, byte[] bytes, String value) throws IOException {
+            ClientHttpRequest request = createHttpRequest(uri, method);
+            request.getHeaders().putAll(headers);
+            request.getHeaders().set(HttpHeaders.COOKIE, CouchDbSession.COOKIE_NAME + "=" + value);
+            if (bytes.length > 0) {
+                StreamUtils.copy(bytes, request.getBody());
+            }
+            ClientHttpResponse response = request.execute();
+            if (response.getRawStatusCode() == HttpStatus.UNAUTHORIZED.value()) {
+                session.invalidate(value);
+            } else {
+                session.update(response.getHeaders().get(HttpHeaders.SET_COOKIE));
+            }
+            return response;
+        }
+    }
+}
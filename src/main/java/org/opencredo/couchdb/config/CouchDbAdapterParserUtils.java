@@ -16,6 +16,11 @@
 
 package org.opencredo.couchdb.config;
 
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.ParserContext;
+import org.springframework.util.StringUtils;
+import org.w3c.dom.Element;
+
 /**
  * Utility class for the CouchDB namespace support.
  * @author Tareq Abedrabbo (tareq.abedrabbo@opencredo.com)
@@ -32,9 +37,125 @@ public class CouchDbAdapterParserUtils {
     static final String COUCHDB_CHANGES_OPERATIONS_ATTRIBUTE = "changes-operations";
     static final String COUCHDB_ALL_DOCUMENTS_ATTRIBUTE = "all-documents";
     static final String COUCHDB_ALL_DOCUMENTS_LIMIT_ATTRIBUTE = "all-documents-limit";
+    static final String COUCHDB_CHANGES_PAGE_SIZE_ATTRIBUTE = "changes-page-size";
+    static final String COUCHDB_INCLUDE_DOCS_ATTRIBUTE = "include-docs";
+    static final String COUCHDB_PARTITIONS_ATTRIBUTE = "partitions";
+    static final String COUCHDB_SPLIT_KEYS_ATTRIBUTE = "split-keys";
 
     static final String COUCHDB_DOCUMENT_ID_EXPRESSION_PROPERTY = "documentIdExpression";
     
     static final String COUCHDB_EXCEPTIONS_COUNTER = "exceptions-counter";
 
+    static final String COUCHDB_BATCH_SIZE_ATTRIBUTE = "batch-size";
+    static final String COUCHDB_BATCH_TIMEOUT_ATTRIBUTE = "batch-timeout";
+    static final String COUCHDB_FAILURE_CHANNEL_ATTRIBUTE = "failure-channel";
+    static final String COUCHDB_ASYNC_ATTRIBUTE = "async";
+    static final String COUCHDB_ASYNC_DOCUMENT_OPERATIONS_ATTRIBUTE = "async-document-operations";
+    static final String COUCHDB_WRITE_METRICS_ATTRIBUTE = "write-metrics";
+    static final String COUCHDB_CONFLICT_STRATEGY_ATTRIBUTE = "conflict-strategy";
+    static final String COUCHDB_CONFLICT_RESOLVER_ATTRIBUTE = "conflict-resolver";
+    static final String COUCHDB_CONFLICT_RETRIES_ATTRIBUTE = "conflict-retries";
+
+    static final String COUCHDB_HEARTBEAT_ATTRIBUTE = "heartbeat";
+    static final String COUCHDB_RECOVERY_INTERVAL_ATTRIBUTE = "recovery-interval";
+    static final String COUCHDB_TASK_EXECUTOR_ATTRIBUTE = "task-executor";
+    static final String COUCHDB_PREFETCH_THRESHOLD_ATTRIBUTE = "prefetch-threshold";
+
+    static final String COUCHDB_CONNECTION_SETTINGS_ATTRIBUTE = "connection-settings";
+    static final String COUCHDB_CONNECTION_FACTORY_ATTRIBUTE = "connection-factory";
+    static final String COUCHDB_REVISION_CACHE_ATTRIBUTE = "revision-cache";
+    static final String COUCHDB_ETAG_CACHE_SIZE_ATTRIBUTE = "etag-cache-size";
+    static final String COUCHDB_RAW_ATTRIBUTE = "raw";
+
+    static final String COUCHDB_CHECKPOINT_STORE_ATTRIBUTE = "checkpoint-store";
+    static final String COUCHDB_CHECKPOINT_INTERVAL_ATTRIBUTE = "checkpoint-interval";
+
+    /**
+     * Sets the checkpoint store and interval of a changes consumer from the checkpoint attributes of an element.
+     */
+    static void setCheckpointProperties(BeanDefinitionBuilder builder, Element element, ParserContext parserContext) {
+        String checkpointStore = element.getAttribute(COUCHDB_CHECKPOINT_STORE_ATTRIBUTE);
+        String checkpointInterval = element.getAttribute(COUCHDB_CHECKPOINT_INTERVAL_ATTRIBUTE);
+        if (StringUtils.hasText(checkpointStore)) {
+            builder.addPropertyReference("checkpointStore", checkpointStore);
+            if (StringUtils.hasText(checkpointInterval)) {
+                builder.addPropertyValue("checkpointInterval", checkpointInterval);
+            }
+        } else if (StringUtils.hasText(checkpointInterval)) {
+            parserContext.getReaderContext().error(
+                    "'" + COUCHDB_CHECKPOINT_INTERVAL_ATTRIBUTE + "' is only allowed with '" +
+                            COUCHDB_CHECKPOINT_STORE_ATTRIBUTE + "'.", element);
+        }
+    }
+
+    /**
+     * Creates the definition of a template connected to the given database. If the element refers to connection
+     * settings or to a shared connection factory, they are passed to the template as well.
+     */
+    static BeanDefinitionBuilder createTemplateBuilder(Class<?> templateClass, String databaseUrl, Element element,
+                                                       ParserContext parserContext) {
+        BeanDefinitionBuilder template = BeanDefinitionBuilder.genericBeanDefinition(templateClass);
+        template.addConstructorArgValue(databaseUrl);
+        String connectionSettings = element.getAttribute(COUCHDB_CONNECTION_SETTINGS_ATTRIBUTE);
+        String connectionFactory = element.getAttribute(COUCHDB_CONNECTION_FACTORY_ATTRIBUTE);
+        if (StringUtils.hasText(connectionSettings) && StringUtils.hasText(connectionFactory)) {
+            parserContext.getReaderContext().error(
+                    "At most one of '" + COUCHDB_CONNECTION_SETTINGS_ATTRIBUTE + "' and '" +
+                            COUCHDB_CONNECTION_FACTORY_ATTRIBUTE + "' may be provided.", element);
+        }
+        if (StringUtils.hasText(connectionSettings)) {
+            template.addConstructorArgReference(connectionSettings);
+        } else if (StringUtils.hasText(connectionFactory)) {
+            template.addConstructorArgReference(connectionFactory);
+        }
+        return template;
+    }
+
+    /**
+     * Returns true if the element refers to connection settings or to a connection factory, which are only allowed
+     * along with a database URL.
+     */
+    static boolean hasConnectionSettings(Element element, ParserContext parserContext) {
+        for (String attribute : new String[] {COUCHDB_CONNECTION_SETTINGS_ATTRIBUTE,
+                COUCHDB_CONNECTION_FACTORY_ATTRIBUTE}) {
+            if (StringUtils.hasText(element.getAttribute(attribute))) {
+                if (!StringUtils.hasText(element.getAttribute(COUCHDB_DATABASE_URL_ATTRIBUTE))) {
+                    parserContext.getReaderContext().error(
+                            "'" + attribute + "' is only allowed with '" + COUCHDB_DATABASE_URL_ATTRIBUTE + "'.",
+                            element);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the revision cache the element refers to, if any, on a template created for its database URL.
+     */
+    static void setRevisionCache(BeanDefinitionBuilder template, Element element) {
+        String revisionCache = element.getAttribute(COUCHDB_REVISION_CACHE_ATTRIBUTE);
+        if (StringUtils.hasText(revisionCache)) {
+            template.addPropertyReference("revisionCache", revisionCache);
+        }
+    }
+
+    /**
+     * Adds the document type of a transformer, which reads documents as byte[] in raw mode.
+     */
+    static void setDocumentType(BeanDefinitionBuilder builder, Element element, ParserContext parserContext) {
+        String documentType = element.getAttribute(COUCHDB_DOCUMENT_TYPE_ATTRIBUTE);
+        if ("true".equals(element.getAttribute(COUCHDB_RAW_ATTRIBUTE))) {
+            if (StringUtils.hasText(documentType)) {
+                parserContext.getReaderContext().error("At most one of '" + COUCHDB_DOCUMENT_TYPE_ATTRIBUTE +
+                        "' and '" + COUCHDB_RAW_ATTRIBUTE + "' may be provided.", element);
+            }
+            builder.addConstructorArgValue(byte[].class);
+        } else if (!StringUtils.hasText(documentType)) {
+            parserContext.getReaderContext().error("The '" + COUCHDB_DOCUMENT_TYPE_ATTRIBUTE +
+                    "' is mandatory.", parserContext.extractSource(element));
+        } else {
+            builder.addConstructorArgValue(documentType);
+        }
+    }
 }
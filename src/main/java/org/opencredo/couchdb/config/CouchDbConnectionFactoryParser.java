@@ -0,0 +1,46 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.config;
+
+import org.opencredo.couchdb.CouchDbConnectionFactory;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
+import org.springframework.util.StringUtils;
+import org.w3c.dom.Element;
+
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CONNECTION_SETTINGS_ATTRIBUTE;
+
+/**
+ * BeanDefinitionParser for the connection-factory element, which defines a CouchDbConnectionFactory whose
+ * connection pool is shared by the adapters and transformers referring to it.
+ * @since 18/10/2026
+ */
+public class CouchDbConnectionFactoryParser extends AbstractSingleBeanDefinitionParser {
+
+    @Override
+    protected Class<?> getBeanClass(Element element) {
+        return CouchDbConnectionFactory.class;
+    }
+
+    @Override
+    protected void doParse(Element element, BeanDefinitionBuilder builder) {
+        String connectionSettings = element.getAttribute(COUCHDB_CONNECTION_SETTINGS_ATTRIBUTE);
+        if (StringUtils.hasText(connectionSettings)) {
+            builder.addConstructorArgReference(connectionSettings);
+        }
+    }
+}
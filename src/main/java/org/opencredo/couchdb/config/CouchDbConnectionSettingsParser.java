@@ -0,0 +1,33 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.config;
+
+import org.opencredo.couchdb.ConnectionSettings;
+import org.springframework.beans.factory.xml.AbstractSimpleBeanDefinitionParser;
+import org.w3c.dom.Element;
+
+/**
+ * BeanDefinitionParser for the connection-settings element. Its attributes map to the properties of
+ * ConnectionSettings.
+ * @since 18/10/2026
+ */
+public class CouchDbConnectionSettingsParser extends AbstractSimpleBeanDefinitionParser {
+
+    @Override
+    protected Class<?> getBeanClass(Element element) {
+        return ConnectionSettings.class;
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.opencredo.couchdb.config;
 
+import org.opencredo.couchdb.core.CouchDbDocumentTemplate;
 import org.opencredo.couchdb.transformer.CouchDbIdToDocumentTransformer;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
@@ -25,7 +26,7 @@ import org.w3c.dom.Element;
 
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DATABASE_URL_ATTRIBUTE;
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DOCUMENT_OPERATIONS_ATTRIBUTE;
-import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DOCUMENT_TYPE_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_ETAG_CACHE_SIZE_ATTRIBUTE;
 
 /**
  * BeanDefinitionParser for the id-to-document-transformer element.
@@ -41,25 +42,33 @@ public class CouchDbIdToDocumentTransformerParser extends AbstractTransformerPar
     @Override
     protected void parseTransformer(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
         String databaseUrl = element.getAttribute(COUCHDB_DATABASE_URL_ATTRIBUTE);
-        String documentType = element.getAttribute(COUCHDB_DOCUMENT_TYPE_ATTRIBUTE);
         String documentOperations = element.getAttribute(COUCHDB_DOCUMENT_OPERATIONS_ATTRIBUTE);
+        String eTagCacheSize = element.getAttribute(COUCHDB_ETAG_CACHE_SIZE_ATTRIBUTE);
 
-        if (!StringUtils.hasText(documentType)) {
-            parserContext.getReaderContext().error("The '" + COUCHDB_DOCUMENT_TYPE_ATTRIBUTE +
-                    "' is mandatory.", parserContext.extractSource(element));
-        } else {
-            builder.addConstructorArgValue(documentType);
-        }
+        CouchDbAdapterParserUtils.setDocumentType(builder, element, parserContext);
 
         if (StringUtils.hasText(databaseUrl)) {
             if (StringUtils.hasText(documentOperations)) {
                 parserContext.getReaderContext().error(
                         "At most one of '" + COUCHDB_DATABASE_URL_ATTRIBUTE + "' and '" +
                                 COUCHDB_DOCUMENT_OPERATIONS_ATTRIBUTE + "' may be provided.", element);
+            } else if (CouchDbAdapterParserUtils.hasConnectionSettings(element, parserContext) ||
+                    StringUtils.hasText(eTagCacheSize)) {
+                BeanDefinitionBuilder template = CouchDbAdapterParserUtils.createTemplateBuilder(
+                        CouchDbDocumentTemplate.class, databaseUrl, element, parserContext);
+                if (StringUtils.hasText(eTagCacheSize)) {
+                    template.addPropertyValue("eTagCacheSize", eTagCacheSize);
+                }
+                builder.addConstructorArgValue(template.getBeanDefinition());
             } else {
                 builder.addConstructorArgValue(databaseUrl);
             }
         } else if (StringUtils.hasText(documentOperations)) {
+            CouchDbAdapterParserUtils.hasConnectionSettings(element, parserContext);
+            if (StringUtils.hasText(eTagCacheSize)) {
+                parserContext.getReaderContext().error("'" + COUCHDB_ETAG_CACHE_SIZE_ATTRIBUTE +
+                        "' is only allowed with '" + COUCHDB_DATABASE_URL_ATTRIBUTE + "'.", element);
+            }
             builder.addConstructorArgReference(documentOperations);
         } else {
             parserContext.getReaderContext().error(
@@ -16,6 +16,8 @@
 
 package org.opencredo.couchdb.config;
 
+import org.opencredo.couchdb.core.CouchDbChangesTemplate;
+import org.opencredo.couchdb.core.CouchDbDocumentTemplate;
 import org.opencredo.couchdb.inbound.CouchDbAllDocumentsMessageSource;
 import org.opencredo.couchdb.inbound.CouchDbChangesPollingMessageSource;
 import org.springframework.beans.BeanMetadataElement;
@@ -24,13 +26,21 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.integration.config.xml.AbstractPollingInboundChannelAdapterParser;
+import org.springframework.integration.config.xml.IntegrationNamespaceUtils;
 import org.springframework.util.StringUtils;
 import org.w3c.dom.Element;
 
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_ALL_DOCUMENTS_ATTRIBUTE;
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_ALL_DOCUMENTS_LIMIT_ATTRIBUTE;
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CHANGES_OPERATIONS_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CHANGES_PAGE_SIZE_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CHECKPOINT_STORE_ATTRIBUTE;
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DATABASE_URL_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DOCUMENT_TYPE_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_INCLUDE_DOCS_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_PREFETCH_THRESHOLD_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_REVISION_CACHE_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_TASK_EXECUTOR_ATTRIBUTE;
 
 /**
  * BeanDefinitionParser for the inbound-channel-adapter element.
@@ -45,6 +55,30 @@ public class CouchDbInboundChannelAdapterParser extends AbstractPollingInboundCh
         String changesOperations = element.getAttribute(COUCHDB_CHANGES_OPERATIONS_ATTRIBUTE);
         String allDocuments = element.getAttribute(COUCHDB_ALL_DOCUMENTS_ATTRIBUTE);
         String allDocumentsLimit = element.getAttribute(COUCHDB_ALL_DOCUMENTS_LIMIT_ATTRIBUTE);
+        String changesPageSize = element.getAttribute(COUCHDB_CHANGES_PAGE_SIZE_ATTRIBUTE);
+        String includeDocs = element.getAttribute(COUCHDB_INCLUDE_DOCS_ATTRIBUTE);
+        String documentType = element.getAttribute(COUCHDB_DOCUMENT_TYPE_ATTRIBUTE);
+
+        if (StringUtils.hasText(changesPageSize) && ("true".equals(allDocuments) || !StringUtils.hasText(databaseUrl))) {
+            parserContext.getReaderContext().error(
+                    "'" + COUCHDB_CHANGES_PAGE_SIZE_ATTRIBUTE + "' is only allowed with '" +
+                            COUCHDB_DATABASE_URL_ATTRIBUTE + "' when polling for changes.", element);
+        }
+        if (StringUtils.hasText(includeDocs) && ("true".equals(allDocuments) || !StringUtils.hasText(databaseUrl))) {
+            parserContext.getReaderContext().error(
+                    "'" + COUCHDB_INCLUDE_DOCS_ATTRIBUTE + "' is only allowed with '" +
+                            COUCHDB_DATABASE_URL_ATTRIBUTE + "' when polling for changes.", element);
+        }
+        if (element.hasAttribute(COUCHDB_REVISION_CACHE_ATTRIBUTE) &&
+                ("true".equals(allDocuments) || !StringUtils.hasText(databaseUrl))) {
+            parserContext.getReaderContext().error(
+                    "'" + COUCHDB_REVISION_CACHE_ATTRIBUTE + "' is only allowed with '" +
+                            COUCHDB_DATABASE_URL_ATTRIBUTE + "' when polling for changes.", element);
+        }
+        if (StringUtils.hasText(documentType) && "true".equals(allDocuments)) {
+            parserContext.getReaderContext().error(
+                    "'" + COUCHDB_DOCUMENT_TYPE_ATTRIBUTE + "' is only allowed when polling for changes.", element);
+        }
 
         if (StringUtils.hasText(databaseUrl)) {
             if (StringUtils.hasText(changesOperations)) {
@@ -54,12 +88,28 @@ public class CouchDbInboundChannelAdapterParser extends AbstractPollingInboundCh
             } else {
                 if("true".equals(allDocuments)) {
                     builder = BeanDefinitionBuilder.genericBeanDefinition(CouchDbAllDocumentsMessageSource.class);
+                    if (CouchDbAdapterParserUtils.hasConnectionSettings(element, parserContext)) {
+                        builder.addConstructorArgValue(CouchDbAdapterParserUtils.createTemplateBuilder(
+                                CouchDbDocumentTemplate.class, databaseUrl, element, parserContext)
+                                .getBeanDefinition());
+                    }
+                    builder.addConstructorArgValue(databaseUrl);
                 } else {
                     builder = BeanDefinitionBuilder.genericBeanDefinition(CouchDbChangesPollingMessageSource.class);
+                    BeanDefinitionBuilder changesTemplate = CouchDbAdapterParserUtils.createTemplateBuilder(
+                            CouchDbChangesTemplate.class, databaseUrl, element, parserContext);
+                    CouchDbAdapterParserUtils.setRevisionCache(changesTemplate, element);
+                    if (StringUtils.hasText(changesPageSize)) {
+                        changesTemplate.addPropertyValue("pageSize", changesPageSize);
+                    }
+                    if (StringUtils.hasText(includeDocs)) {
+                        changesTemplate.addPropertyValue("includeDocs", includeDocs);
+                    }
+                    builder.addConstructorArgValue(changesTemplate.getBeanDefinition());
                 }
-                builder.addConstructorArgValue(databaseUrl);
             }
         } else if (StringUtils.hasText(changesOperations)) {
+            CouchDbAdapterParserUtils.hasConnectionSettings(element, parserContext);
             // changesOperations and allDocuments are XOR
             if("true".equals(allDocuments)) {
                 parserContext.getReaderContext().error(
@@ -77,8 +127,20 @@ public class CouchDbInboundChannelAdapterParser extends AbstractPollingInboundCh
 
         if("true".equals(allDocuments)) {
            builder.addConstructorArgValue(Integer.valueOf(allDocumentsLimit));
+           if (element.hasAttribute(COUCHDB_CHECKPOINT_STORE_ATTRIBUTE)) {
+               parserContext.getReaderContext().error(
+                       "'" + COUCHDB_CHECKPOINT_STORE_ATTRIBUTE + "' is only allowed when polling for changes.", element);
+           }
+        } else {
+            CouchDbAdapterParserUtils.setCheckpointProperties(builder, element, parserContext);
+            if (StringUtils.hasText(documentType)) {
+                builder.addPropertyValue("documentType", documentType);
+            }
         }
 
+        IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, COUCHDB_PREFETCH_THRESHOLD_ATTRIBUTE);
+        IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, COUCHDB_TASK_EXECUTOR_ATTRIBUTE);
+
         String beanName = BeanDefinitionReaderUtils.registerWithGeneratedName(
                 builder.getBeanDefinition(), parserContext.getRegistry());
         return new RuntimeBeanReference(beanName);
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.config;
+
+import java.util.Arrays;
+
+import org.opencredo.couchdb.core.CouchDbChangesTemplate;
+import org.opencredo.couchdb.core.CouchDbDocumentTemplate;
+import org.opencredo.couchdb.inbound.CouchDbAllDocumentsMessageDrivenChannelAdapter;
+import org.opencredo.couchdb.inbound.CouchDbChangesMessageDrivenChannelAdapter;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.ParserContext;
+import org.springframework.integration.config.xml.AbstractChannelAdapterParser;
+import org.springframework.integration.config.xml.IntegrationNamespaceUtils;
+import org.springframework.util.StringUtils;
+import org.w3c.dom.Element;
+
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_ALL_DOCUMENTS_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CHANGES_OPERATIONS_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CHECKPOINT_STORE_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DATABASE_URL_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DOCUMENT_TYPE_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_HEARTBEAT_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_INCLUDE_DOCS_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_PARTITIONS_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_RECOVERY_INTERVAL_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_REVISION_CACHE_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_SPLIT_KEYS_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_TASK_EXECUTOR_ATTRIBUTE;
+
+/**
+ * BeanDefinitionParser for the message-driven-channel-adapter element, which either follows the changes feed or,
+ * with all-documents, exports a view.
+ * @since 18/10/2026
+ */
+public class CouchDbMessageDrivenChannelAdapterParser extends AbstractChannelAdapterParser {
+
+    @Override
+    protected AbstractBeanDefinition doParse(Element element, ParserContext parserContext, String channelName) {
+        if ("true".equals(element.getAttribute(COUCHDB_ALL_DOCUMENTS_ATTRIBUTE))) {
+            return parseAllDocuments(element, parserContext, channelName);
+        }
+        for (String attribute : new String[] {COUCHDB_PARTITIONS_ATTRIBUTE, COUCHDB_SPLIT_KEYS_ATTRIBUTE}) {
+            if (element.hasAttribute(attribute)) {
+                parserContext.getReaderContext().error(
+                        "'" + attribute + "' is only allowed with '" + COUCHDB_ALL_DOCUMENTS_ATTRIBUTE + "'.", element);
+            }
+        }
+        BeanDefinitionBuilder builder =
+                BeanDefinitionBuilder.genericBeanDefinition(CouchDbChangesMessageDrivenChannelAdapter.class);
+        String databaseUrl = element.getAttribute(COUCHDB_DATABASE_URL_ATTRIBUTE);
+        String changesOperations = element.getAttribute(COUCHDB_CHANGES_OPERATIONS_ATTRIBUTE);
+        String heartbeat = element.getAttribute(COUCHDB_HEARTBEAT_ATTRIBUTE);
+        String includeDocs = element.getAttribute(COUCHDB_INCLUDE_DOCS_ATTRIBUTE);
+
+        if (StringUtils.hasText(databaseUrl)) {
+            if (StringUtils.hasText(changesOperations)) {
+                parserContext.getReaderContext().error(
+                        "At most one of '" + COUCHDB_DATABASE_URL_ATTRIBUTE + "' and '" +
+                                COUCHDB_CHANGES_OPERATIONS_ATTRIBUTE + "' may be provided.", element);
+            } else {
+                BeanDefinitionBuilder changesTemplate = CouchDbAdapterParserUtils.createTemplateBuilder(
+                        CouchDbChangesTemplate.class, databaseUrl, element, parserContext);
+                CouchDbAdapterParserUtils.setRevisionCache(changesTemplate, element);
+                if (StringUtils.hasText(heartbeat)) {
+                    changesTemplate.addPropertyValue("heartbeat", heartbeat);
+                }
+                if (StringUtils.hasText(includeDocs)) {
+                    changesTemplate.addPropertyValue("includeDocs", includeDocs);
+                }
+                builder.addConstructorArgValue(changesTemplate.getBeanDefinition());
+            }
+        } else if (StringUtils.hasText(changesOperations)) {
+            CouchDbAdapterParserUtils.hasConnectionSettings(element, parserContext);
+            if (StringUtils.hasText(heartbeat) || StringUtils.hasText(includeDocs) ||
+                    element.hasAttribute(COUCHDB_REVISION_CACHE_ATTRIBUTE)) {
+                parserContext.getReaderContext().error(
+                        "'" + COUCHDB_HEARTBEAT_ATTRIBUTE + "', '" + COUCHDB_INCLUDE_DOCS_ATTRIBUTE + "' and '" +
+                                COUCHDB_REVISION_CACHE_ATTRIBUTE + "' are only allowed with '" +
+                                COUCHDB_DATABASE_URL_ATTRIBUTE + "'.", element);
+            }
+            builder.addConstructorArgReference(changesOperations);
+        } else {
+            parserContext.getReaderContext().error(
+                    "Either '" + COUCHDB_DATABASE_URL_ATTRIBUTE + "' or '" +
+                            COUCHDB_CHANGES_OPERATIONS_ATTRIBUTE + "' must be provided.", element);
+        }
+
+        CouchDbAdapterParserUtils.setCheckpointProperties(builder, element, parserContext);
+        return setCommonProperties(builder, element, channelName);
+    }
+
+    /**
+     * Parses an adapter which exports all rows of a view or _all_docs.
+     */
+    private AbstractBeanDefinition parseAllDocuments(Element element, ParserContext parserContext, String channelName) {
+        BeanDefinitionBuilder builder =
+                BeanDefinitionBuilder.genericBeanDefinition(CouchDbAllDocumentsMessageDrivenChannelAdapter.class);
+        String databaseUrl = element.getAttribute(COUCHDB_DATABASE_URL_ATTRIBUTE);
+        String includeDocs = element.getAttribute(COUCHDB_INCLUDE_DOCS_ATTRIBUTE);
+        String partitions = element.getAttribute(COUCHDB_PARTITIONS_ATTRIBUTE);
+        String splitKeys = element.getAttribute(COUCHDB_SPLIT_KEYS_ATTRIBUTE);
+
+        if (!StringUtils.hasText(databaseUrl)) {
+            parserContext.getReaderContext().error(
+                    "'" + COUCHDB_ALL_DOCUMENTS_ATTRIBUTE + "' requires a view or _all_docs URL as '" +
+                            COUCHDB_DATABASE_URL_ATTRIBUTE + "'.", element);
+        }
+        for (String attribute : new String[] {COUCHDB_CHANGES_OPERATIONS_ATTRIBUTE, COUCHDB_HEARTBEAT_ATTRIBUTE,
+                COUCHDB_REVISION_CACHE_ATTRIBUTE, COUCHDB_CHECKPOINT_STORE_ATTRIBUTE}) {
+            if (element.hasAttribute(attribute)) {
+                parserContext.getReaderContext().error(
+                        "'" + attribute + "' is not allowed with '" + COUCHDB_ALL_DOCUMENTS_ATTRIBUTE + "'.", element);
+            }
+        }
+        builder.addConstructorArgValue(CouchDbAdapterParserUtils.createTemplateBuilder(
+                CouchDbDocumentTemplate.class, databaseUrl, element, parserContext).getBeanDefinition());
+        builder.addConstructorArgValue(databaseUrl);
+        if (StringUtils.hasText(includeDocs)) {
+            builder.addPropertyValue("includeDocs", includeDocs);
+        }
+        if (StringUtils.hasText(partitions)) {
+            builder.addPropertyValue("partitions", partitions);
+        }
+        if (StringUtils.hasText(splitKeys)) {
+            builder.addPropertyValue("splitKeys",
+                    Arrays.asList(StringUtils.trimArrayElements(StringUtils.commaDelimitedListToStringArray(splitKeys))));
+        }
+        return setCommonProperties(builder, element, channelName);
+    }
+
+    private AbstractBeanDefinition setCommonProperties(BeanDefinitionBuilder builder, Element element,
+                                                       String channelName) {
+        String documentType = element.getAttribute(COUCHDB_DOCUMENT_TYPE_ATTRIBUTE);
+        String recoveryInterval = element.getAttribute(COUCHDB_RECOVERY_INTERVAL_ATTRIBUTE);
+        String taskExecutor = element.getAttribute(COUCHDB_TASK_EXECUTOR_ATTRIBUTE);
+
+        builder.addPropertyReference("outputChannel", channelName);
+        if (StringUtils.hasText(recoveryInterval)) {
+            builder.addPropertyValue("recoveryInterval", recoveryInterval);
+        }
+        if (StringUtils.hasText(taskExecutor)) {
+            builder.addPropertyReference("taskExecutor", taskExecutor);
+        }
+        if (StringUtils.hasText(documentType)) {
+            builder.addPropertyValue("documentType", documentType);
+        }
+        IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "error-channel");
+        IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, IntegrationNamespaceUtils.AUTO_STARTUP);
+        IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, IntegrationNamespaceUtils.PHASE);
+
+        return builder.getBeanDefinition();
+    }
+}
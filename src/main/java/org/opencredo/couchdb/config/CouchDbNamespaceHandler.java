@@ -30,5 +30,8 @@ public class CouchDbNamespaceHandler extends NamespaceHandlerSupport {
         registerBeanDefinitionParser("id-to-document-transformer", new CouchDbIdToDocumentTransformerParser());
         registerBeanDefinitionParser("url-to-document-transformer", new CouchDbUrlToDocumentTransformerParser());
         registerBeanDefinitionParser("inbound-channel-adapter", new CouchDbInboundChannelAdapterParser());
+        registerBeanDefinitionParser("message-driven-channel-adapter", new CouchDbMessageDrivenChannelAdapterParser());
+        registerBeanDefinitionParser("connection-settings", new CouchDbConnectionSettingsParser());
+        registerBeanDefinitionParser("connection-factory", new CouchDbConnectionFactoryParser());
     }
 }
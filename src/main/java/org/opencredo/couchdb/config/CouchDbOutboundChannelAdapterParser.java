@@ -16,17 +16,40 @@
 
 package org.opencredo.couchdb.config;
 
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_ASYNC_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_ASYNC_DOCUMENT_OPERATIONS_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_BATCH_SIZE_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_BATCH_TIMEOUT_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CONFLICT_RESOLVER_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CONNECTION_FACTORY_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CONNECTION_SETTINGS_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CONFLICT_RETRIES_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_CONFLICT_STRATEGY_ATTRIBUTE;
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DATABASE_URL_ATTRIBUTE;
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DOCUMENT_ID_EXPRESSION_ATTRIBUTE;
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DOCUMENT_ID_EXPRESSION_PROPERTY;
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DOCUMENT_OPERATIONS_ATTRIBUTE;
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_EXCEPTIONS_COUNTER;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_FAILURE_CHANNEL_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_RAW_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_REVISION_CACHE_ATTRIBUTE;
+import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_WRITE_METRICS_ATTRIBUTE;
 
+import org.opencredo.couchdb.core.CouchDbAsyncDocumentTemplate;
+import org.opencredo.couchdb.core.CouchDbDocumentTemplate;
+import org.opencredo.couchdb.core.OverwriteConflictResolver;
+import org.opencredo.couchdb.core.SkipConflictResolver;
 import org.opencredo.couchdb.outbound.CouchDbSendingMessageHandler;
+import org.opencredo.couchdb.outbound.CouchDbWriteMetrics;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.PropertyValues;
+import org.springframework.beans.factory.config.TypedStringValue;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.integration.config.xml.AbstractOutboundChannelAdapterParser;
+import org.springframework.integration.config.xml.IntegrationNamespaceUtils;
 import org.springframework.util.StringUtils;
 import org.w3c.dom.Element;
 
@@ -44,16 +67,36 @@ public class CouchDbOutboundChannelAdapterParser extends AbstractOutboundChannel
         String documentOperations = element.getAttribute(COUCHDB_DOCUMENT_OPERATIONS_ATTRIBUTE);
         String documentIdExpression = element.getAttribute(COUCHDB_DOCUMENT_ID_EXPRESSION_ATTRIBUTE);
         String exeptionsCounter = element.getAttribute(COUCHDB_EXCEPTIONS_COUNTER);
+        String batchSize = element.getAttribute(COUCHDB_BATCH_SIZE_ATTRIBUTE);
+        String batchTimeout = element.getAttribute(COUCHDB_BATCH_TIMEOUT_ATTRIBUTE);
+        String failureChannel = element.getAttribute(COUCHDB_FAILURE_CHANNEL_ATTRIBUTE);
+        String async = element.getAttribute(COUCHDB_ASYNC_ATTRIBUTE);
+        String asyncDocumentOperations = element.getAttribute(COUCHDB_ASYNC_DOCUMENT_OPERATIONS_ATTRIBUTE);
+        String writeMetrics = element.getAttribute(COUCHDB_WRITE_METRICS_ATTRIBUTE);
+        boolean connectionSettings = CouchDbAdapterParserUtils.hasConnectionSettings(element, parserContext);
+        boolean conflictResolution = hasConflictResolution(element, parserContext);
+        String revisionCache = element.getAttribute(COUCHDB_REVISION_CACHE_ATTRIBUTE);
 
         if (StringUtils.hasText(databaseUrl)) {
             if (StringUtils.hasText(documentOperations)) {
                 parserContext.getReaderContext().error(
                         "At most one of '" + COUCHDB_DATABASE_URL_ATTRIBUTE + "' and '" +
                                 COUCHDB_DOCUMENT_OPERATIONS_ATTRIBUTE + "' may be provided.", element);
+            } else if (connectionSettings || conflictResolution || StringUtils.hasText(revisionCache)) {
+                BeanDefinitionBuilder documentTemplate = CouchDbAdapterParserUtils.createTemplateBuilder(
+                        CouchDbDocumentTemplate.class, databaseUrl, element, parserContext);
+                setConflictResolver(documentTemplate, element);
+                CouchDbAdapterParserUtils.setRevisionCache(documentTemplate, element);
+                builder.addConstructorArgValue(documentTemplate.getBeanDefinition());
             } else {
                 builder.addConstructorArgValue(databaseUrl);
             }
         } else if (StringUtils.hasText(documentOperations)) {
+            if (StringUtils.hasText(revisionCache)) {
+                parserContext.getReaderContext().error(
+                        "'" + COUCHDB_REVISION_CACHE_ATTRIBUTE + "' is only allowed with '" +
+                                COUCHDB_DATABASE_URL_ATTRIBUTE + "'.", element);
+            }
             builder.addConstructorArgReference(documentOperations);
         } else {
             parserContext.getReaderContext().error(
@@ -69,6 +112,166 @@ public class CouchDbOutboundChannelAdapterParser extends AbstractOutboundChannel
         	builder.addPropertyReference("counter", exeptionsCounter);
         }
 
+        if (StringUtils.hasText(batchSize)) {
+            if (!"1".equals(batchSize.trim()) && !StringUtils.hasText(failureChannel)) {
+                parserContext.getReaderContext().error(
+                        "'" + COUCHDB_FAILURE_CHANNEL_ATTRIBUTE + "' is required when '" +
+                                COUCHDB_BATCH_SIZE_ATTRIBUTE + "' is greater than one.", element);
+            }
+            if (!"1".equals(batchSize.trim()) && databaseUrl.contains("{")) {
+                parserContext.getReaderContext().error(
+                        "'" + COUCHDB_DATABASE_URL_ATTRIBUTE + "' cannot contain template variables when '" +
+                                COUCHDB_BATCH_SIZE_ATTRIBUTE + "' is greater than one.", element);
+            }
+            builder.addPropertyValue("batchSize", batchSize);
+        }
+
+        if (StringUtils.hasText(batchTimeout)) {
+            builder.addPropertyValue("batchTimeout", batchTimeout);
+        }
+
+        if (StringUtils.hasText(failureChannel)) {
+            builder.addPropertyReference("failureChannel", failureChannel);
+        }
+
+        IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, COUCHDB_RAW_ATTRIBUTE);
+
+        if (StringUtils.hasText(writeMetrics)) {
+            builder.addPropertyReference("writeMetrics", writeMetrics);
+        } else {
+            builder.addPropertyReference("writeMetrics", registerWriteMetrics(element, parserContext));
+        }
+
+        if (StringUtils.hasText(revisionCache) && ("true".equals(async) || StringUtils.hasText(asyncDocumentOperations))) {
+            parserContext.getReaderContext().error(
+                    "'" + COUCHDB_REVISION_CACHE_ATTRIBUTE + "' is not supported for asynchronous writes.", element);
+        }
+
+        if (StringUtils.hasText(asyncDocumentOperations)) {
+            if ("true".equals(async)) {
+                parserContext.getReaderContext().error(
+                        "At most one of '" + COUCHDB_ASYNC_ATTRIBUTE + "' and '" +
+                                COUCHDB_ASYNC_DOCUMENT_OPERATIONS_ATTRIBUTE + "' may be provided.", element);
+            }
+            builder.addPropertyReference("asyncDocumentOperations", asyncDocumentOperations);
+        } else if ("true".equals(async)) {
+            if (!StringUtils.hasText(databaseUrl)) {
+                parserContext.getReaderContext().error(
+                        "'" + COUCHDB_ASYNC_ATTRIBUTE + "' is only allowed with '" +
+                                COUCHDB_DATABASE_URL_ATTRIBUTE + "'.", element);
+            }
+            if (element.hasAttribute(COUCHDB_CONNECTION_FACTORY_ATTRIBUTE)) {
+                parserContext.getReaderContext().error(
+                        "'" + COUCHDB_CONNECTION_FACTORY_ATTRIBUTE + "' is not supported for asynchronous writes, " +
+                                "which use a non-blocking connection pool.", element);
+            }
+            checkAsyncConnectionSettings(element, parserContext);
+            BeanDefinitionBuilder asyncTemplate = CouchDbAdapterParserUtils.createTemplateBuilder(
+                    CouchDbAsyncDocumentTemplate.class, databaseUrl, element, parserContext);
+            builder.addPropertyValue("asyncDocumentOperations", asyncTemplate.getBeanDefinition());
+        }
+
         return builder.getBeanDefinition();
     }
+
+    /**
+     * Registers the metrics of an adapter as a top level bean, so that they are exported to JMX along with other
+     * annotated beans. Inner beans are not exported.
+     */
+    private String registerWriteMetrics(Element element, ParserContext parserContext) {
+        AbstractBeanDefinition metrics =
+                BeanDefinitionBuilder.genericBeanDefinition(CouchDbWriteMetrics.class).getBeanDefinition();
+        String id = element.getAttribute(ID_ATTRIBUTE);
+        if (!StringUtils.hasText(id)) {
+            return BeanDefinitionReaderUtils.registerWithGeneratedName(metrics, parserContext.getRegistry());
+        }
+        String name = id + ".writeMetrics";
+        parserContext.getRegistry().registerBeanDefinition(name, metrics);
+        return name;
+    }
+
+    /**
+     * Rejects connection settings that only apply to blocking requests, if their definition is already known. The
+     * asynchronous template checks them again when it is created.
+     */
+    private void checkAsyncConnectionSettings(Element element, ParserContext parserContext) {
+        String connectionSettings = element.getAttribute(COUCHDB_CONNECTION_SETTINGS_ATTRIBUTE);
+        if (!StringUtils.hasText(connectionSettings) ||
+                !parserContext.getRegistry().containsBeanDefinition(connectionSettings)) {
+            return;
+        }
+        PropertyValues properties =
+                parserContext.getRegistry().getBeanDefinition(connectionSettings).getPropertyValues();
+        if ("true".equals(literalValue(properties, "sessionAuthentication")) ||
+                !isDefault(literalValue(properties, "maxAttempts"), "1") ||
+                !isDefault(literalValue(properties, "circuitBreakerThreshold"), "0") ||
+                StringUtils.hasText(literalValue(properties, "clusterNodes"))) {
+            parserContext.getReaderContext().error(
+                    "Session authentication, retries, the circuit breaker and cluster nodes of '" +
+                            COUCHDB_CONNECTION_SETTINGS_ATTRIBUTE + "' are not supported for asynchronous writes.",
+                    element);
+        }
+    }
+
+    private static boolean isDefault(String value, String defaultValue) {
+        return value == null || defaultValue.equals(value.trim());
+    }
+
+    private static String literalValue(PropertyValues properties, String name) {
+        PropertyValue property = properties.getPropertyValue(name);
+        if (property == null) {
+            return null;
+        }
+        Object value = property.getValue();
+        if (value instanceof TypedStringValue) {
+            return ((TypedStringValue) value).getValue();
+        }
+        return value instanceof String ? (String) value : null;
+    }
+
+    private boolean hasConflictResolution(Element element, ParserContext parserContext) {
+        String conflictStrategy = element.getAttribute(COUCHDB_CONFLICT_STRATEGY_ATTRIBUTE);
+        String conflictResolver = element.getAttribute(COUCHDB_CONFLICT_RESOLVER_ATTRIBUTE);
+        String conflictRetries = element.getAttribute(COUCHDB_CONFLICT_RETRIES_ATTRIBUTE);
+        if (!StringUtils.hasText(conflictStrategy) && !StringUtils.hasText(conflictResolver)) {
+            if (StringUtils.hasText(conflictRetries)) {
+                parserContext.getReaderContext().error(
+                        "'" + COUCHDB_CONFLICT_RETRIES_ATTRIBUTE + "' is only allowed with '" +
+                                COUCHDB_CONFLICT_STRATEGY_ATTRIBUTE + "' or '" +
+                                COUCHDB_CONFLICT_RESOLVER_ATTRIBUTE + "'.", element);
+            }
+            return false;
+        }
+        if (StringUtils.hasText(conflictStrategy) && StringUtils.hasText(conflictResolver)) {
+            parserContext.getReaderContext().error(
+                    "At most one of '" + COUCHDB_CONFLICT_STRATEGY_ATTRIBUTE + "' and '" +
+                            COUCHDB_CONFLICT_RESOLVER_ATTRIBUTE + "' may be provided.", element);
+        }
+        if (!StringUtils.hasText(element.getAttribute(COUCHDB_DATABASE_URL_ATTRIBUTE))) {
+            parserContext.getReaderContext().error(
+                    "Conflict resolution is only allowed with '" + COUCHDB_DATABASE_URL_ATTRIBUTE + "'.", element);
+        }
+        if ("true".equals(element.getAttribute(COUCHDB_ASYNC_ATTRIBUTE)) ||
+                StringUtils.hasText(element.getAttribute(COUCHDB_ASYNC_DOCUMENT_OPERATIONS_ATTRIBUTE))) {
+            parserContext.getReaderContext().error(
+                    "Conflict resolution is not supported for asynchronous writes.", element);
+        }
+        return true;
+    }
+
+    private void setConflictResolver(BeanDefinitionBuilder documentTemplate, Element element) {
+        String conflictStrategy = element.getAttribute(COUCHDB_CONFLICT_STRATEGY_ATTRIBUTE);
+        String conflictResolver = element.getAttribute(COUCHDB_CONFLICT_RESOLVER_ATTRIBUTE);
+        String conflictRetries = element.getAttribute(COUCHDB_CONFLICT_RETRIES_ATTRIBUTE);
+        if (StringUtils.hasText(conflictResolver)) {
+            documentTemplate.addPropertyReference("conflictResolver", conflictResolver);
+        } else if ("skip".equals(conflictStrategy)) {
+            documentTemplate.addPropertyValue("conflictResolver", new SkipConflictResolver());
+        } else if ("overwrite".equals(conflictStrategy)) {
+            documentTemplate.addPropertyValue("conflictResolver", new OverwriteConflictResolver());
+        }
+        if (StringUtils.hasText(conflictRetries)) {
+            documentTemplate.addPropertyValue("conflictRetries", conflictRetries);
+        }
+    }
 }
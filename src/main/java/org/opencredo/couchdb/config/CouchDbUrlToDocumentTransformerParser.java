@@ -24,7 +24,6 @@ import org.springframework.util.StringUtils;
 import org.w3c.dom.Element;
 
 import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DOCUMENT_OPERATIONS_ATTRIBUTE;
-import static org.opencredo.couchdb.config.CouchDbAdapterParserUtils.COUCHDB_DOCUMENT_TYPE_ATTRIBUTE;
 
 /**
  * BeanDefinitionParser for the uri-to-document-transformer element.
@@ -39,16 +38,9 @@ public class CouchDbUrlToDocumentTransformerParser extends AbstractTransformerPa
 
     @Override
     protected void parseTransformer(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
-    	System.out.println("CouchDbUrlToDocumentTransformerParser2");
-        String documentType = element.getAttribute(COUCHDB_DOCUMENT_TYPE_ATTRIBUTE);
         String documentOperations = element.getAttribute(COUCHDB_DOCUMENT_OPERATIONS_ATTRIBUTE);
 
-        if (!StringUtils.hasText(documentType)) {
-            parserContext.getReaderContext().error("The '" + COUCHDB_DOCUMENT_TYPE_ATTRIBUTE +
-                    "' is mandatory.", parserContext.extractSource(element));
-        } else {
-            builder.addConstructorArgValue(documentType);
-        }
+        CouchDbAdapterParserUtils.setDocumentType(builder, element, parserContext);
 
         if (StringUtils.hasText(documentOperations)) {
             builder.addConstructorArgReference(documentOperations);
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.core;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * The outcome of writing a single document through the bulk documents API.
+ * </p>
+ * A successful write carries the new revision of the document, a failed one
+ * carries the error and reason reported by CouchDB (e.g. <code>conflict</code>).
+ *
+ * @since 18/10/2026
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BulkWriteResult {
+
+    static final String CONFLICT = "conflict";
+
+    private String id;
+
+    private String rev;
+
+    private String error;
+
+    private String reason;
+
+    public BulkWriteResult() {
+    }
+
+    public BulkWriteResult(String id, String rev, String error, String reason) {
+        this.id = id;
+        this.rev = rev;
+        this.error = error;
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the id of the written document
+     */
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the new revision of the document, or null if the write failed
+     */
+    public String getRev() {
+        return rev;
+    }
+
+    public void setRev(String rev) {
+        this.rev = rev;
+    }
+
+    /**
+     * Returns the error reported by CouchDB, or null if the write succeeded
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * Returns the reason of the error reported by CouchDB
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    /**
+     * Returns true if the document has been written
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Returns true if the document could not be written because of a revision conflict
+     */
+    public boolean isConflict() {
+        return CONFLICT.equals(error);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkWriteResult{" +
+                "id='" + id + '\'' +
+                ", rev='" + rev + '\'' +
+                ", error='" + error + '\'' +
+                ", reason='" + reason + '\'' +
+                '}';
+    }
+}
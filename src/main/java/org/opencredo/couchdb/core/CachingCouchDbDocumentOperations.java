@@ -0,0 +1,460 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opencredo.couchdb.CouchDbUtils;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.Assert;
+
+import com.prime.common.statistics.Counter;
+
+/**
+ * A CouchDbDocumentOperations that keeps the documents read through another CouchDbDocumentOperations in a
+ * bounded cache, so that documents which are read repeatedly cost neither a request nor their mapping. When the
+ * cache is full, the least recently used document is evicted, and a cached document is read again once it is
+ * older than the time to live.
+ * </p>
+ * Documents are evicted when they are written through this instance. If CouchDbChangesOperations are set, the
+ * changes feed of the database is followed while this instance is running and every changed document is evicted
+ * as soon as its change is received; the whole cache is cleared when the feed fails, since changes may be missed
+ * until it is followed again. A document read while its entry is evicted is not cached, so that a slow read cannot
+ * put back a document which has changed in the meantime.
+ * </p>
+ * The cache does not revalidate expired documents itself. Wrap a CouchDbDocumentTemplate with an ETag cache size to
+ * read them again with If-None-Match, so that an unmodified document is neither transferred nor mapped again.
+ * </p>
+ * Cached documents are shared between readers and must not be modified.
+ *
+ * @since 18/10/2026
+ */
+public class CachingCouchDbDocumentOperations implements CouchDbDocumentOperations, SmartLifecycle {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+    public static final long DEFAULT_TIME_TO_LIVE = 60000L;
+
+    private static final long DEFAULT_RECOVERY_INTERVAL = 5000L;
+
+    protected final Log logger = LogFactory.getLog(this.getClass());
+
+    private final CouchDbDocumentOperations delegate;
+
+    private final Map<String, CachedDocuments> documents;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    private CouchDbChangesOperations changesOperations;
+
+    private TaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("couchdb-cache-");
+
+    private long recoveryInterval = DEFAULT_RECOVERY_INTERVAL;
+
+    private boolean autoStartup = true;
+
+    private int phase = 0;
+
+    private volatile Invalidator invalidator;
+
+    /**
+     * Creates a cache of up to 1000 documents in front of the given operations.
+     */
+    public CachingCouchDbDocumentOperations(CouchDbDocumentOperations delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Creates a cache of up to the given number of documents in front of the given operations.
+     */
+    public CachingCouchDbDocumentOperations(CouchDbDocumentOperations delegate, final int maximumSize) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        Assert.isTrue(maximumSize > 0, "maximumSize must be greater than zero");
+        this.delegate = delegate;
+        this.documents = new LinkedHashMap<String, CachedDocuments>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDocuments> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    public <T> T readDocument(String id, Class<T> documentType) throws CouchDbOperationException {
+        CachedDocuments cached = reserve(id);
+        T document = getCached(cached, documentType);
+        if (document == null) {
+            try {
+                document = delegate.readDocument(id, documentType);
+            } finally {
+                putCached(id, cached, documentType, document);
+            }
+        }
+        return document;
+    }
+
+    public <T> T readDocument(URI uri, Class<T> documentType) throws CouchDbOperationException {
+        String key = uri.toString();
+        CachedDocuments cached = reserve(key);
+        T document = getCached(cached, documentType);
+        if (document == null) {
+            try {
+                document = delegate.readDocument(uri, documentType);
+            } finally {
+                putCached(key, cached, documentType, document);
+            }
+        }
+        return document;
+    }
+
+    public <T> List<T> readDocuments(List<String> ids, Class<T> documentType) throws CouchDbOperationException {
+        return readDocuments(null, ids, ids, documentType);
+    }
+
+    public <T> List<T> readDocuments(URI databaseUri, List<String> ids, Class<T> documentType)
+            throws CouchDbOperationException {
+        Assert.notNull(databaseUri, "databaseUri cannot be null");
+        List<String> keys = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            keys.add(CouchDbUtils.ensureTrailingSlash(databaseUri.toString()) + CouchDbUtils.encodeId(id));
+        }
+        return readDocuments(databaseUri, ids, keys, documentType);
+    }
+
+    /**
+     * Reads the documents which are not cached in a single request to the delegate.
+     */
+    private <T> List<T> readDocuments(URI databaseUri, List<String> ids, List<String> keys, Class<T> documentType) {
+        List<T> result = new ArrayList<T>(ids.size());
+        List<CachedDocuments> entries = new ArrayList<CachedDocuments>(ids.size());
+        List<String> missingIds = new ArrayList<String>();
+        List<Integer> missingIndexes = new ArrayList<Integer>();
+        for (int i = 0; i < ids.size(); i++) {
+            CachedDocuments cached = reserve(keys.get(i));
+            entries.add(cached);
+            T document = getCached(cached, documentType);
+            if (document == null) {
+                missingIds.add(ids.get(i));
+                missingIndexes.add(i);
+            }
+            result.add(document);
+        }
+        if (!missingIds.isEmpty()) {
+            List<T> read = null;
+            try {
+                read = databaseUri == null ? delegate.readDocuments(missingIds, documentType) :
+                        delegate.readDocuments(databaseUri, missingIds, documentType);
+                for (int i = 0; i < read.size(); i++) {
+                    result.set(missingIndexes.get(i), read.get(i));
+                }
+            } finally {
+                for (int i = 0; i < missingIndexes.size(); i++) {
+                    int index = missingIndexes.get(i);
+                    T document = read != null && i < read.size() ? read.get(i) : null;
+                    putCached(keys.get(index), entries.get(index), documentType, document);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void writeDocument(String id, Object document) throws CouchDbOperationException {
+        try {
+            delegate.writeDocument(id, document);
+        } finally {
+            evict(id);
+        }
+    }
+
+    public void writeDocument(URI uri, Object document) throws CouchDbOperationException {
+        try {
+            delegate.writeDocument(uri, document);
+        } finally {
+            evict(uri.toString());
+        }
+    }
+
+    public void writeDocument(String id, Object payload, MessageHeaders headers, Counter counter) {
+        try {
+            delegate.writeDocument(id, payload, headers, counter);
+        } finally {
+            if (id != null) {
+                evict(id);
+            }
+        }
+    }
+
+    /**
+     * Writes the document through the delegate. As the URI may be templated, the whole cache is cleared.
+     */
+    public void writeDocument(URI uri, Object document, MessageHeaders headers) throws CouchDbOperationException {
+        try {
+            delegate.writeDocument(uri, document, headers);
+        } finally {
+            clear();
+        }
+    }
+
+    public List<BulkWriteResult> writeDocuments(Map<String, ?> documents) throws CouchDbOperationException {
+        try {
+            return delegate.writeDocuments(documents);
+        } finally {
+            for (String id : documents.keySet()) {
+                evict(id);
+            }
+        }
+    }
+
+    /**
+     * Evicts a document, read either by id or by URI.
+     */
+    public void evict(String key) {
+        synchronized (documents) {
+            documents.remove(key);
+        }
+    }
+
+    /**
+     * Evicts all documents.
+     */
+    public void clear() {
+        synchronized (documents) {
+            documents.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (documents) {
+            return documents.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the entry of a key, replacing it if it is missing or expired. A document read from the delegate is
+     * only cached if the entry is still the same when the read completes, i.e. if the key was not evicted meanwhile.
+     */
+    private CachedDocuments reserve(String key) {
+        synchronized (documents) {
+            CachedDocuments cached = documents.get(key);
+            if (cached == null || cached.isExpired(System.currentTimeMillis())) {
+                cached = new CachedDocuments(timeToLive > 0 ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE);
+                documents.put(key, cached);
+            }
+            return cached;
+        }
+    }
+
+    private <T> T getCached(CachedDocuments cached, Class<T> documentType) {
+        Object document;
+        synchronized (documents) {
+            document = cached.byType.get(documentType);
+        }
+        (document == null ? misses : hits).incrementAndGet();
+        return documentType.cast(document);
+    }
+
+    /**
+     * Caches a document read for the given entry. If the read failed or found no document, an entry holding no
+     * document is removed again.
+     */
+    private void putCached(String key, CachedDocuments cached, Class<?> documentType, Object document) {
+        synchronized (documents) {
+            if (documents.get(key) != cached) {
+                return;
+            }
+            if (document != null) {
+                cached.byType.put(documentType, document);
+            } else if (cached.byType.isEmpty()) {
+                documents.remove(key);
+            }
+        }
+    }
+
+    private void evictChanged(ChangedDocument changedDocument) {
+        URI uri = changedDocument.getUri();
+        String path = uri.getRawPath();
+        synchronized (documents) {
+            documents.remove(uri.toString());
+            documents.remove(decode(path.substring(path.lastIndexOf('/') + 1)));
+        }
+    }
+
+    private static String decode(String id) {
+        try {
+            return URLDecoder.decode(id, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sets the time in milliseconds after which a cached document is read again. Default is 60000; 0 means
+     * that documents are kept until they are evicted.
+     */
+    public void setTimeToLive(long timeToLive) {
+        Assert.isTrue(timeToLive >= 0, "timeToLive must not be negative");
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Sets the changes of the cached database, which are followed to evict changed documents. They should start
+     * from the current sequence of the database, as every earlier change is read too.
+     */
+    public void setChangesOperations(CouchDbChangesOperations changesOperations) {
+        this.changesOperations = changesOperations;
+    }
+
+    /**
+     * Sets the TaskExecutor on which the changes feed is followed.
+     */
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        Assert.notNull(taskExecutor, "taskExecutor cannot be null");
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait before following the changes feed again after a failure.
+     * Default is 5000.
+     */
+    public void setRecoveryInterval(long recoveryInterval) {
+        this.recoveryInterval = recoveryInterval;
+    }
+
+    public void setAutoStartup(boolean autoStartup) {
+        this.autoStartup = autoStartup;
+    }
+
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    public boolean isAutoStartup() {
+        return autoStartup;
+    }
+
+    public int getPhase() {
+        return phase;
+    }
+
+    public synchronized void start() {
+        if (changesOperations != null && invalidator == null) {
+            invalidator = new Invalidator();
+            taskExecutor.execute(invalidator);
+        }
+    }
+
+    public synchronized void stop() {
+        if (invalidator != null) {
+            invalidator.stop();
+            changesOperations.stopFollowing(invalidator);
+            invalidator = null;
+            // changes are no longer followed
+            clear();
+        }
+    }
+
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    public boolean isRunning() {
+        return invalidator != null;
+    }
+
+    private static class CachedDocuments {
+
+        private final long expiresAt;
+
+        private final Map<Class<?>, Object> byType = new HashMap<Class<?>, Object>(2);
+
+        CachedDocuments(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * Follows the changes feed until stopped and evicts every changed document.
+     */
+    private class Invalidator implements Runnable, ChangesListener {
+
+        private volatile boolean listening = true;
+
+        public void run() {
+            while (listening) {
+                try {
+                    changesOperations.followChanges(this);
+                } catch (RuntimeException e) {
+                    if (listening) {
+                        clear();
+                        logger.warn("failed to follow CouchDB changes, cache cleared, reconnecting in " +
+                                recoveryInterval + "ms", e);
+                        waitForRecovery();
+                    }
+                }
+            }
+        }
+
+        public void onChange(ChangedDocument changedDocument) {
+            evictChanged(changedDocument);
+        }
+
+        public boolean isListening() {
+            return listening;
+        }
+
+        void stop() {
+            listening = false;
+        }
+
+        private void waitForRecovery() {
+            try {
+                Thread.sleep(recoveryInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                listening = false;
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@ package org.opencredo.couchdb.core;
 
 import java.net.URI;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 /**
  * A POJO representing a change event on a document in the database.
  * </p>
@@ -40,8 +42,10 @@ public class ChangedDocument {
 
     private final Long sequence;
 
+    private final JsonNode document;
+
     /**
-     * The unique constructor to create a ChangedDocument.
+     * Creates a ChangedDocument without the body of the document.
      *
      * @param uri      the URI of the changes document.
      *                 Example: http://127.0.0.1:5984/mydatabase/f958e9b0-bde6-429e-b4b3-a360a1bfe0a1
@@ -49,9 +53,23 @@ public class ChangedDocument {
      * @param sequence the sequence number generated by CouchDB for this change
      */
     public ChangedDocument(URI uri, Status status, Long sequence) {
+        this(uri, status, sequence, null);
+    }
+
+    /**
+     * Creates a ChangedDocument with the body of the document, as returned when changes are
+     * read with include_docs=true.
+     *
+     * @param uri      the URI of the changes document
+     * @param status   the nature of the change event: created, deleted or updated
+     * @param sequence the sequence number generated by CouchDB for this change
+     * @param document the body of the document, or null if it has not been read
+     */
+    public ChangedDocument(URI uri, Status status, Long sequence, JsonNode document) {
         this.status = status;
         this.uri = uri;
         this.sequence = sequence;
+        this.document = document;
     }
 
     /**
@@ -75,6 +93,14 @@ public class ChangedDocument {
         return sequence;
     }
 
+    /**
+     * Returns the body of the document, or null if it has not been read with the change.
+     * The returned node must not be modified.
+     */
+    public JsonNode getDocument() {
+        return document;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.core;
+
+/**
+ * Callback interface for code that consumes changes as soon as they are read from the changes API.
+ *
+ * @since 18/10/2026
+ */
+public interface ChangesListener {
+
+    /**
+     * Called for every change read from the database, in sequence order.
+     *
+     * @param changedDocument the changed document
+     */
+    void onChange(ChangedDocument changedDocument);
+
+    /**
+     * Returns false to stop reading changes. Checked before every change and on every heartbeat.
+     */
+    boolean isListening();
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Strategy to resolve a revision conflict (409) on writing a document. CouchDbDocumentTemplate calls it
+ * with the current revision of the document, read right after the conflict, and writes the returned
+ * document over that revision. Implement it to merge the written document into the current one.
+ *
+ * @since 18/10/2026
+ * @see SkipConflictResolver
+ * @see OverwriteConflictResolver
+ */
+public interface ConflictResolver {
+
+    /**
+     * Resolves a conflict on writing a document.
+     * @param id the id of the document
+     * @param document the document that could not be written
+     * @param current the current revision of the document, or null if it has been deleted in the meantime
+     * @return the document to write over the current revision, or null to keep the current revision
+     */
+    Object resolve(String id, Object document, JsonNode current);
+}
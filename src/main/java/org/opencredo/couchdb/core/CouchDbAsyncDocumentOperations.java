@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Non-blocking CouchDB operations that read and write documents. Every method returns as soon as the
+ * request has been issued; the returned future completes when CouchDB has answered, or fails with a
+ * CouchDbOperationException.
+ *
+ * @since 18/10/2026
+ */
+public interface CouchDbAsyncDocumentOperations {
+
+    /**
+     * Reads a document from the default database and maps it a Java object.
+     *
+     * @param id           the id of the CouchDB document to read
+     * @param documentType the target type to map to
+     * @return a future of the mapped object
+     */
+    <T> ListenableFuture<T> readDocument(String id, Class<T> documentType);
+
+    /**
+     * Reads a document from the database and maps it a Java object.
+     *
+     * @param uri          the full URI of the document to read
+     * @param documentType the target type to map to
+     * @return a future of the mapped object
+     */
+    <T> ListenableFuture<T> readDocument(URI uri, Class<T> documentType);
+
+    /**
+     * Maps a Java object to JSON and writes it to the default database, replacing any
+     * template variables in the URL which have the same keys as message headers
+     * by their corresponding values taken from the <tt>headers</tt> argument.
+     *
+     * @param id       the id of the document to write
+     * @param document the object to write
+     * @param headers  the headers used to expand the URL, may be null
+     * @return a future that completes when the document has been written
+     */
+    ListenableFuture<?> writeDocument(String id, Object document, MessageHeaders headers);
+
+    /**
+     * Maps Java objects to JSON and writes them to the default database in a single request
+     * using the bulk documents API.
+     *
+     * @param documents the objects to write, keyed by document id
+     * @return a future of the outcome for every document
+     */
+    ListenableFuture<List<BulkWriteResult>> writeDocuments(Map<String, ?> documents);
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opencredo.couchdb.BasicAuthAsyncRestTemplate;
+import org.opencredo.couchdb.ConnectionSettings;
+import org.opencredo.couchdb.CouchDbUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.client.AsyncRestOperations;
+import org.springframework.web.client.RestClientException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * An implementation of CouchDbAsyncDocumentOperations that relies on AsyncRestOperations to communicate
+ * with CouchDB without blocking the calling thread.
+ *
+ * @since 18/10/2026
+ */
+public class CouchDbAsyncDocumentTemplate implements CouchDbAsyncDocumentOperations, DisposableBean {
+
+    protected final Log logger = LogFactory.getLog(this.getClass());
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private AsyncRestOperations asyncRestOperations;
+
+    private String defaultDocumentUrl;
+
+    private String bulkDocumentsUrl;
+
+    /**
+     * The default constructor.
+     */
+    public CouchDbAsyncDocumentTemplate() {
+        asyncRestOperations = new BasicAuthAsyncRestTemplate();
+    }
+
+    /**
+     * Constructs an instance of CouchDbAsyncDocumentTemplate with a default database
+     * @param defaultDatabaseUrl the default database to connect to
+     */
+    public CouchDbAsyncDocumentTemplate(String defaultDatabaseUrl) {
+        this(defaultDatabaseUrl, new ConnectionSettings());
+    }
+
+    /**
+     * Constructs an instance of CouchDbAsyncDocumentTemplate with a default database and custom connection pool settings
+     * @param defaultDatabaseUrl the default database to connect to
+     * @param connectionSettings the settings of the connection pool
+     */
+    public CouchDbAsyncDocumentTemplate(String defaultDatabaseUrl, ConnectionSettings connectionSettings) {
+        Assert.hasText(defaultDatabaseUrl, "defaultDatabaseUrl must not be empty");
+        Assert.notNull(connectionSettings, "connectionSettings cannot be null");
+        asyncRestOperations = new BasicAuthAsyncRestTemplate(defaultDatabaseUrl, connectionSettings);
+        if (defaultDatabaseUrl.contains("{id}")) {
+            defaultDocumentUrl = defaultDatabaseUrl;
+        } else {
+            defaultDocumentUrl = CouchDbUtils.addId(defaultDatabaseUrl);
+        }
+        if (!defaultDatabaseUrl.contains("{")) {
+            bulkDocumentsUrl = CouchDbUtils.addBulkDocs(defaultDatabaseUrl);
+        }
+    }
+
+    public <T> ListenableFuture<T> readDocument(String id, Class<T> documentType) {
+        Assert.state(defaultDocumentUrl != null, "defaultDatabaseUrl must be set to use this method");
+        try {
+            return body(asyncRestOperations.getForEntity(defaultDocumentUrl, documentType, id));
+        } catch (RestClientException e) {
+            return failed(e);
+        }
+    }
+
+    public <T> ListenableFuture<T> readDocument(URI uri, Class<T> documentType) {
+        try {
+            return body(asyncRestOperations.getForEntity(uri, documentType));
+        } catch (RestClientException e) {
+            return failed(e);
+        }
+    }
+
+    public ListenableFuture<?> writeDocument(String id, Object document, MessageHeaders headers) {
+        Assert.state(defaultDocumentUrl != null, "defaultDatabaseUrl must be set to use this method");
+        HttpEntity<?> httpEntity = JsonDocuments.createHttpEntity(document);
+        try {
+            if (headers != null) {
+                Map<String, Object> copiedHeaders = new HashMap<String, Object>(headers);
+                if (StringUtils.hasLength(id)) {
+                    copiedHeaders.put(MessageHeaders.ID, id);
+                }
+                return translate(asyncRestOperations.put(defaultDocumentUrl, httpEntity, copiedHeaders));
+            } else {
+                return translate(asyncRestOperations.put(defaultDocumentUrl, httpEntity, id));
+            }
+        } catch (RestClientException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Returns whether writeDocuments can be used, which requires a default database URL without template variables.
+     */
+    public boolean isBulkWriteSupported() {
+        return bulkDocumentsUrl != null;
+    }
+
+    public ListenableFuture<List<BulkWriteResult>> writeDocuments(Map<String, ?> documents) {
+        Assert.state(bulkDocumentsUrl != null,
+                "defaultDatabaseUrl without template variables must be set to use this method");
+        HttpEntity<?> request = JsonDocuments.createHttpEntity(
+                JsonDocuments.createBulkDocumentsRequest(objectMapper, documents));
+        final SettableListenableFuture<List<BulkWriteResult>> results =
+                new SettableListenableFuture<List<BulkWriteResult>>();
+        try {
+            asyncRestOperations.postForEntity(bulkDocumentsUrl, request, BulkWriteResult[].class).addCallback(
+                    new ListenableFutureCallback<ResponseEntity<BulkWriteResult[]>>() {
+                        public void onSuccess(ResponseEntity<BulkWriteResult[]> response) {
+                            results.set(Arrays.asList(response.getBody()));
+                        }
+
+                        public void onFailure(Throwable cause) {
+                            results.setException(translate(cause));
+                        }
+                    });
+        } catch (RestClientException e) {
+            results.setException(translate(e));
+        }
+        return results;
+    }
+
+    /** Sets AsyncRestOperations */
+    public void setAsyncRestOperations(AsyncRestOperations asyncRestOperations) {
+        Assert.notNull(asyncRestOperations, "asyncRestOperations cannot be null");
+        this.asyncRestOperations = asyncRestOperations;
+    }
+
+    /**
+     * Releases the connections of the AsyncRestOperations if it holds any.
+     */
+    public void destroy() throws Exception {
+        if (asyncRestOperations instanceof DisposableBean) {
+            ((DisposableBean) asyncRestOperations).destroy();
+        }
+    }
+
+    private <T> ListenableFuture<T> body(ListenableFuture<ResponseEntity<T>> response) {
+        final SettableListenableFuture<T> body = new SettableListenableFuture<T>();
+        response.addCallback(new ListenableFutureCallback<ResponseEntity<T>>() {
+            public void onSuccess(ResponseEntity<T> result) {
+                body.set(result.getBody());
+            }
+
+            public void onFailure(Throwable cause) {
+                body.setException(translate(cause));
+            }
+        });
+        return body;
+    }
+
+    private <T> ListenableFuture<T> translate(ListenableFuture<T> future) {
+        final SettableListenableFuture<T> translated = new SettableListenableFuture<T>();
+        future.addCallback(new ListenableFutureCallback<T>() {
+            public void onSuccess(T result) {
+                translated.set(result);
+            }
+
+            public void onFailure(Throwable cause) {
+                translated.setException(translate(cause));
+            }
+        });
+        return translated;
+    }
+
+    private <T> ListenableFuture<T> failed(RestClientException e) {
+        SettableListenableFuture<T> failed = new SettableListenableFuture<T>();
+        failed.setException(translate(e));
+        return failed;
+    }
+
+    private Throwable translate(Throwable cause) {
+        if (cause instanceof ExecutionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof CouchDbOperationException) {
+            return cause;
+        }
+        return new CouchDbOperationException("Unable to communicate with CouchDB", cause);
+    }
+}
@@ -27,8 +27,45 @@ import java.util.List;
 public interface CouchDbChangesOperations {
 
     /**
-     * Polls the database for latest changes.
+     * Polls the database for latest changes. Implementations may return the changes in pages, in which
+     * case the next poll returns the following page.
      * @return the list of changes or an empty list if no changes are found
      */
     List<ChangedDocument> pollForChanges() throws CouchDbOperationException;
+
+    /**
+     * Polls the database for latest changes, handing every change to the listener as soon as it
+     * is read from the response instead of collecting them first. Reading stops early if the listener
+     * stops listening, in which case the next poll resumes after the last handed change. If the listener
+     * throws an exception, the change it failed on is handed again by the next poll.
+     * @param listener the listener to notify of changes
+     */
+    void pollForChanges(ChangesListener listener) throws CouchDbOperationException;
+
+    /**
+     * Follows the continuous changes feed of the database, handing every change to the listener
+     * as soon as it is received. This method blocks until the listener stops listening or the
+     * feed is closed by the server. If the listener throws an exception, the connection is aborted and the
+     * exception is thrown; the change it failed on is handed again when the feed is followed again.
+     * @param listener the listener to notify of changes
+     */
+    void followChanges(ChangesListener listener) throws CouchDbOperationException;
+
+    /**
+     * Aborts the connection of the feed followed for the listener, if any, so that followChanges returns without
+     * waiting for the next change or heartbeat. The listener should already have stopped listening.
+     * @param listener the listener passed to followChanges
+     */
+    void stopFollowing(ChangesListener listener);
+
+    /**
+     * Returns the sequence from which the next poll or feed starts.
+     */
+    long getCurrentSequence();
+
+    /**
+     * Sets the sequence from which the next poll or feed starts, e.g. to resume from a stored checkpoint.
+     * @param sequence the sequence after which changes are read
+     */
+    void setCurrentSequence(long sequence);
 }
@@ -16,17 +16,31 @@
 
 package org.opencredo.couchdb.core;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opencredo.couchdb.ConnectionSettings;
+import org.opencredo.couchdb.CouchDbConnectionFactory;
 import org.opencredo.couchdb.CouchDbUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.util.Assert;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestOperations;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * An implementation of CouchDbChangesOperations that relies on a RestOperations to communicate with
@@ -40,9 +54,31 @@ public class CouchDbChangesTemplate extends CouchDbObjectSupport implements Couc
 
     private String databaseUrl;
 
+    private static final int DEFAULT_HEARTBEAT = 30000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
     private String databaseChangesUrl;
 
-    private long currentSequence = 0L;
+    private String databaseChangesPageUrl;
+
+    private String databaseChangesFeedUrl;
+
+    private volatile long currentSequence = 0L;
+
+    private int heartbeat = DEFAULT_HEARTBEAT;
+
+    private int pageSize = 0;
+
+    private boolean includeDocs = false;
+
+    private RevisionCache revisionCache;
+
+    /**
+     * The bodies of the continuous feeds being read, by listener, so that they can be aborted when stopping.
+     */
+    private final ConcurrentMap<ChangesListener, InputStream> feeds = new ConcurrentHashMap<ChangesListener, InputStream>();
 
     /**
      * The default constructor.
@@ -76,6 +112,34 @@ public class CouchDbChangesTemplate extends CouchDbObjectSupport implements Couc
         setUrlAndSequence(defaultDatabaseUrl, sinceLocalSequence);
     }
 
+    /**
+     * Creates an instance of CouchDbChangesTemplate with a default database and custom connection pool settings.
+     * Credentials in the URL are used for Basic Authentication.
+     * 
+     * @param defaultDatabaseUrl
+     *            the default database to connect to
+     * @param connectionSettings
+     *            the settings of the connection pool
+     */
+    public CouchDbChangesTemplate(String defaultDatabaseUrl, ConnectionSettings connectionSettings) {
+        super(defaultDatabaseUrl, connectionSettings);
+        setUrlAndSequence(defaultDatabaseUrl, 0L);
+    }
+
+    /**
+     * Creates an instance of CouchDbChangesTemplate with a default database which uses the connection pool of a
+     * shared connection factory. Credentials in the URL are used for Basic Authentication.
+     * 
+     * @param defaultDatabaseUrl
+     *            the default database to connect to
+     * @param connectionFactory
+     *            the connection factory whose pool is used
+     */
+    public CouchDbChangesTemplate(String defaultDatabaseUrl, CouchDbConnectionFactory connectionFactory) {
+        super(defaultDatabaseUrl, connectionFactory);
+        setUrlAndSequence(defaultDatabaseUrl, 0L);
+    }
+
     /**
      * Creates an instance of CouchDbChangesTemplate with a default database, user, and password for Basic
      * Authentication
@@ -104,34 +168,89 @@ public class CouchDbChangesTemplate extends CouchDbObjectSupport implements Couc
         this.databaseUrl = defaultDatabaseUrl;
         this.currentSequence = sinceLocalSequence;
         databaseChangesUrl = CouchDbUtils.addChangesSince(defaultDatabaseUrl);
+        databaseChangesPageUrl = CouchDbUtils.addChangesSinceWithLimit(defaultDatabaseUrl);
+        databaseChangesFeedUrl = CouchDbUtils.addContinuousChangesSince(defaultDatabaseUrl);
     }
 
-    @SuppressWarnings("unchecked")
     public List<ChangedDocument> pollForChanges() throws CouchDbOperationException {
+        final List<ChangedDocument> changedDocuments = new ArrayList<ChangedDocument>();
+        pollForChanges(new ChangesListener() {
+            public void onChange(ChangedDocument changedDocument) {
+                changedDocuments.add(changedDocument);
+            }
+
+            public boolean isListening() {
+                return true;
+            }
+        });
+        return changedDocuments;
+    }
+
+    public void pollForChanges(final ChangesListener listener) throws CouchDbOperationException {
         if (logger.isDebugEnabled()) {
             logger.debug("polling " + databaseUrl + " for changes from sequence " + currentSequence);
         }
-        Changes changes = null;
+        ResponseExtractor<Object> extractor = new ResponseExtractor<Object>() {
+            public Object extractData(ClientHttpResponse response) throws IOException {
+                readChanges(response.getBody(), listener);
+                return null;
+            }
+        };
         try {
-            changes = restOperations.getForObject(databaseChangesUrl, Changes.class, currentSequence);
+            if (pageSize > 0) {
+                restOperations.execute(withIncludeDocs(databaseChangesPageUrl), HttpMethod.GET, null, extractor,
+                        currentSequence, pageSize);
+            } else {
+                restOperations.execute(withIncludeDocs(databaseChangesUrl), HttpMethod.GET, null, extractor,
+                        currentSequence);
+            }
         } catch (RestClientException e) {
             throw new CouchDbOperationException("Unable to communicate with CouchDB", e);
         }
+    }
 
+    public void followChanges(final ChangesListener listener) throws CouchDbOperationException {
         if (logger.isDebugEnabled()) {
-            logger.debug("found " + changes.getResults().size() + " changes");
+            logger.debug("following changes of " + databaseUrl + " from sequence " + currentSequence);
+        }
+        try {
+            restOperations.execute(withIncludeDocs(databaseChangesFeedUrl), HttpMethod.GET, null,
+                    new ResponseExtractor<Object>() {
+                        public Object extractData(ClientHttpResponse response) throws IOException {
+                            InputStream body = response.getBody();
+                            feeds.put(listener, body);
+                            try {
+                                readChangesFeed(body, listener);
+                            } finally {
+                                feeds.remove(listener, body);
+                            }
+                            return null;
+                        }
+                    }, heartbeat, currentSequence);
+        } catch (RestClientException e) {
+            throw new CouchDbOperationException("Unable to communicate with CouchDB", e);
         }
+    }
 
-        Long lastSequence = changes.getLast_seq();
-        if (lastSequence > currentSequence) {
-            List<ChangedDocument> changedDocuments = prepareChanges(changes);
-            currentSequence = lastSequence;
-            return changedDocuments;
-        } else {
-            return Collections.EMPTY_LIST;
+    public void stopFollowing(ChangesListener listener) {
+        InputStream body = feeds.remove(listener);
+        if (body != null) {
+            try {
+                abortConnection(body);
+            } catch (IOException e) {
+                logger.debug("failed to abort the connection of the changes feed", e);
+            }
         }
     }
 
+    public long getCurrentSequence() {
+        return currentSequence;
+    }
+
+    public void setCurrentSequence(long sequence) {
+        this.currentSequence = sequence;
+    }
+
     /**
      * Sets RestOperations
      */
@@ -139,55 +258,157 @@ public class CouchDbChangesTemplate extends CouchDbObjectSupport implements Couc
         this.restOperations = restOperations;
     }
 
-    private List<ChangedDocument> prepareChanges(Changes changes) {
-        List<ChangedDocument> changedDocuments = new ArrayList<ChangedDocument>();
+    /**
+     * Sets the interval in milliseconds at which CouchDB sends heartbeats on an idle continuous
+     * changes feed. This bounds the time needed to stop following changes. Default is 30000.
+     */
+    public void setHeartbeat(int heartbeat) {
+        Assert.isTrue(heartbeat > 0, "heartbeat must be greater than zero");
+        this.heartbeat = heartbeat;
+    }
 
-        for (Change change : changes.getResults()) {
-            try {
-                String encodedId = URLEncoder.encode(change.getId(), "UTF-8");
-                URI uri = new URI(CouchDbUtils.ensureTrailingSlash(databaseUrl) + encodedId);
-                ChangedDocument.Status status = determineStatus(change);
-                changedDocuments.add(new ChangedDocument(uri, status, change.getSeq()));
-            } catch (Exception e) {
-                throw new CouchDbOperationException("unable to create URI for [" + change + "]", e);
-            }
-        }
-        return changedDocuments;
+    /**
+     * Sets the maximum number of changes returned by a single poll. A poll then returns at most one
+     * page and the next poll continues from the last change of that page, so that catching up on a
+     * large backlog proceeds in bounded steps. Default is 0, which means no limit.
+     */
+    public void setPageSize(int pageSize) {
+        Assert.isTrue(pageSize >= 0, "pageSize must not be negative");
+        this.pageSize = pageSize;
     }
 
-    private ChangedDocument.Status determineStatus(Change change) {
-        if (change.deleted) {
-            return ChangedDocument.Status.DELETED;
-        } else if (change.changes.get(0).rev.startsWith("1-")) {
-            return ChangedDocument.Status.CREATED;
-        } else {
-            return ChangedDocument.Status.UPDATED;
-        }
+    /**
+     * Sets whether the body of each changed document is read along with the change, which saves
+     * a request per document for consumers that need it. Default is false.
+     */
+    public void setIncludeDocs(boolean includeDocs) {
+        this.includeDocs = includeDocs;
+    }
+
+    /**
+     * Sets a cache to which the latest revision of every changed document is written, so that a
+     * CouchDbDocumentTemplate sharing it can update documents changed by other writers without
+     * running into conflicts.
+     */
+    public void setRevisionCache(RevisionCache revisionCache) {
+        this.revisionCache = revisionCache;
     }
 
-    static class Changes {
-        private List<Change> results;
-        Long last_seq;
+    private String withIncludeDocs(String changesUrl) {
+        return includeDocs ? changesUrl + "&include_docs=true" : changesUrl;
+    }
 
-        public List<Change> getResults() {
-            return results;
+    /**
+     * Reads a changes response one change at a time with the streaming API, so that memory usage
+     * does not depend on the number of changes in the response.
+     */
+    private void readChanges(InputStream body, ChangesListener listener) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new CouchDbOperationException("unexpected changes response from " + databaseUrl);
+            }
+            int count = 0;
+            boolean complete = true;
+            Long lastSequence = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if ("results".equals(fieldName)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        if (!listener.isListening()) {
+                            complete = false;
+                            break;
+                        }
+                        handleChange(objectMapper.readValue(parser, Change.class), listener);
+                        count++;
+                    }
+                    if (!complete) {
+                        break;
+                    }
+                } else if ("last_seq".equals(fieldName)) {
+                    lastSequence = parser.getLongValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("found " + count + " changes");
+            }
+            // changes hidden by a filter still move the sequence forward
+            if (complete && lastSequence != null && lastSequence > currentSequence) {
+                currentSequence = lastSequence;
+            }
+        } finally {
+            parser.close();
         }
+    }
 
-        public void setResults(List<Change> results) {
-            this.results = results;
+    /**
+     * Reads a continuous feed until the server closes it. The connection is aborted on any other exit, including a
+     * failing listener, since closing the response would drain a feed which never ends.
+     */
+    private void readChangesFeed(InputStream body, ChangesListener listener) throws IOException {
+        boolean closed = false;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body, "UTF-8"));
+            String line;
+            // also checked before the first read, since stopFollowing misses a feed which is not registered yet
+            while (listener.isListening()) {
+                line = reader.readLine();
+                if (line == null) {
+                    closed = true;
+                    break;
+                }
+                if (line.length() == 0) {
+                    // heartbeat
+                    continue;
+                }
+                JsonNode node = objectMapper.readTree(line);
+                if (node.has("last_seq")) {
+                    // the server is closing the feed
+                    closed = true;
+                    break;
+                }
+                handleChange(objectMapper.treeToValue(node, Change.class), listener);
+            }
+        } finally {
+            if (!closed) {
+                abortConnection(body);
+            }
         }
+    }
 
-        public Long getLast_seq() {
-            return last_seq;
+    private void handleChange(Change change, ChangesListener listener) {
+        if (revisionCache != null) {
+            if (change.deleted) {
+                revisionCache.evict(change.getId());
+            } else if (change.changes != null && !change.changes.isEmpty()) {
+                revisionCache.putRevision(change.getId(), change.changes.get(0).rev);
+            }
         }
+        // a change whose listener fails is not passed, so that it is handed again by the next poll or feed
+        listener.onChange(createChangedDocument(change));
+        currentSequence = change.getSeq();
+    }
 
-        public void setLast_seq(Long last_seq) {
-            this.last_seq = last_seq;
+    private ChangedDocument createChangedDocument(Change change) {
+        try {
+            URI uri = new URI(CouchDbUtils.ensureTrailingSlash(databaseUrl) + CouchDbUtils.encodeId(change.getId()));
+            ChangedDocument.Status status = determineStatus(change);
+            return new ChangedDocument(uri, status, change.getSeq(), change.getDoc());
+        } catch (Exception e) {
+            throw new CouchDbOperationException("unable to create URI for [" + change + "]", e);
         }
+    }
 
-        @Override
-        public String toString() {
-            return "Changes{" + "last_seq=" + last_seq + ", results=" + results + '}';
+    private ChangedDocument.Status determineStatus(Change change) {
+        if (change.deleted) {
+            return ChangedDocument.Status.DELETED;
+        } else if (change.changes.get(0).rev.startsWith("1-")) {
+            return ChangedDocument.Status.CREATED;
+        } else {
+            return ChangedDocument.Status.UPDATED;
         }
     }
 
@@ -196,6 +417,7 @@ public class CouchDbChangesTemplate extends CouchDbObjectSupport implements Couc
         String id;
         List<Revision> changes;
         boolean deleted;
+        JsonNode doc;
 
         public boolean getDeleted() {
             return deleted;
@@ -225,6 +447,14 @@ public class CouchDbChangesTemplate extends CouchDbObjectSupport implements Couc
             return seq;
         }
 
+        public JsonNode getDoc() {
+            return doc;
+        }
+
+        public void setDoc(JsonNode doc) {
+            this.doc = doc;
+        }
+
         public void setSeq(Long seq) {
             this.seq = seq;
         }
@@ -17,6 +17,8 @@
 package org.opencredo.couchdb.core;
 
 import java.net.URI;
+import java.util.List;
+import java.util.Map;
 
 import org.springframework.messaging.MessageHeaders;
 
@@ -51,6 +53,29 @@ public interface CouchDbDocumentOperations {
      */
     <T> T readDocument(URI uri, Class<T> documentType) throws CouchDbOperationException;
 
+    /**
+     * Reads several documents from the database in a single request and maps them to Java objects.
+     * </p>
+     * This method is intended to work when a default database
+     * is set on the CouchDbDocumentOperations instance.
+     *
+     * @param ids          the ids of the CouchDB documents to read
+     * @param documentType the target type to map to
+     * @return the mapped objects in the order of the ids, with null for missing or deleted documents
+     */
+    <T> List<T> readDocuments(List<String> ids, Class<T> documentType) throws CouchDbOperationException;
+
+    /**
+     * Reads several documents from a database in a single request and maps them to Java objects.
+     *
+     * @param databaseUri  the URI of the database to read from
+     * @param ids          the ids of the CouchDB documents to read
+     * @param documentType the target type to map to
+     * @return the mapped objects in the order of the ids, with null for missing or deleted documents
+     */
+    <T> List<T> readDocuments(URI databaseUri, List<String> ids, Class<T> documentType)
+            throws CouchDbOperationException;
+
     /**
      * Maps a Java object to JSON and writes it to the database
      * </p>
@@ -80,11 +105,6 @@ public interface CouchDbDocumentOperations {
      * @param counter  count exceptions causing by CouchDB operations
      */
     void writeDocument(String id, Object payload, MessageHeaders headers, Counter counter);
-    
-    
-    
-    
-    
 
     /**
      * Maps a Java object to JSON and writes it to the database, replacing any
@@ -96,4 +116,16 @@ public interface CouchDbDocumentOperations {
      */
     void writeDocument(URI uri, Object document, MessageHeaders headers) throws CouchDbOperationException;
 
+    /**
+     * Maps Java objects to JSON and writes them to the database in a single request
+     * using the bulk documents API.
+     * </p>
+     * This method is intended to work when a default database
+     * is set on the CouchDbDocumentOperations instance.
+     *
+     * @param documents the objects to write, keyed by the id of the document
+     * @return the outcome of each write, in the order of the given documents
+     */
+    List<BulkWriteResult> writeDocuments(Map<String, ?> documents) throws CouchDbOperationException;
+
 }
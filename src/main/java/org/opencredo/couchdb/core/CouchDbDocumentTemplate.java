@@ -16,20 +16,44 @@
 
 package org.opencredo.couchdb.core;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.opencredo.couchdb.ConnectionSettings;
+import org.opencredo.couchdb.CouchDbConnectionFactory;
 import org.opencredo.couchdb.CouchDbUtils;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestOperations;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import com.prime.common.statistics.Counter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * An implementation of CouchDbDocumentOperations that relies on RestOperations to communicate
@@ -38,10 +62,26 @@ import java.util.HashMap;
  * @author Tareq Abedrabbo
  * @since 31/01/2011
  */
-public class CouchDbDocumentTemplate extends CouchDbObjectSupport implements CouchDbDocumentOperations {
+public class CouchDbDocumentTemplate extends CouchDbObjectSupport
+        implements CouchDbDocumentOperations, CouchDbViewOperations {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
     private String defaultDocumentUrl;
 
+    private String bulkDocumentsUrl;
+
+    private String allDocumentsUrl;
+
+    private ConflictResolver conflictResolver;
+
+    private int conflictRetries = 3;
+
+    private RevisionCache revisionCache;
+
+    private Map<String, TaggedDocument> taggedDocuments;
+
     /**
      * The default constructor.
      */
@@ -59,6 +99,29 @@ public class CouchDbDocumentTemplate extends CouchDbObjectSupport implements Cou
         setDefaultDocumentUrl(defaultDatabaseUrl);
     }
 
+    /**
+     * Constructs an instance of CouchDbDocumentTemplate with a default database and custom connection pool settings
+     * @param defaultDatabaseUrl the default database to connect to
+     * @param connectionSettings the settings of the connection pool
+     */
+    public CouchDbDocumentTemplate(String defaultDatabaseUrl, ConnectionSettings connectionSettings) {
+        super(defaultDatabaseUrl, connectionSettings);
+        Assert.hasText(defaultDatabaseUrl, "defaultDatabaseUrl must not be empty");
+        setDefaultDocumentUrl(defaultDatabaseUrl);
+    }
+
+    /**
+     * Constructs an instance of CouchDbDocumentTemplate with a default database which uses the connection pool of a
+     * shared connection factory
+     * @param defaultDatabaseUrl the default database to connect to
+     * @param connectionFactory the connection factory whose pool is used
+     */
+    public CouchDbDocumentTemplate(String defaultDatabaseUrl, CouchDbConnectionFactory connectionFactory) {
+        super(defaultDatabaseUrl, connectionFactory);
+        Assert.hasText(defaultDatabaseUrl, "defaultDatabaseUrl must not be empty");
+        setDefaultDocumentUrl(defaultDatabaseUrl);
+    }
+
     /**
      * Constructs an instance of CouchDbDocumentTemplate with a default database, user, and password for Basic Authentication
      * 
@@ -75,12 +138,29 @@ public class CouchDbDocumentTemplate extends CouchDbObjectSupport implements Cou
             defaultDocumentUrl = defaultDatabaseUrl;
         else
             defaultDocumentUrl = CouchDbUtils.addId(defaultDatabaseUrl);
+        // bulk writes need the plain database URL, which templated URLs don't give us
+        if(!defaultDatabaseUrl.contains("{")) {
+            bulkDocumentsUrl = CouchDbUtils.addBulkDocs(defaultDatabaseUrl);
+            allDocumentsUrl = CouchDbUtils.addAllDocumentsIncludeDocs(defaultDatabaseUrl);
+        }
     }
 
     public <T> T readDocument(String id, Class<T> documentType) throws CouchDbOperationException {
         Assert.state(defaultDocumentUrl != null, "defaultDatabaseUrl must be set to use this method");
         try {
-            return restOperations.getForObject(defaultDocumentUrl, documentType, id);
+            if (revisionCache == null && taggedDocuments == null) {
+                return restOperations.getForObject(defaultDocumentUrl, documentType, id);
+            }
+            String key = "id:" + documentType.getName() + ":" + id;
+            TaggedDocument cached = getTaggedDocument(key);
+            ResponseEntity<T> response = restOperations.exchange(defaultDocumentUrl, HttpMethod.GET,
+                    createConditionalRequest(cached), documentType, id);
+            // CouchDB sends the revision of the document as its ETag
+            String etag = response.getHeaders().getETag();
+            if (etag != null && revisionCache != null) {
+                revisionCache.putRevision(id, etag.replace("\"", ""));
+            }
+            return handleConditionalResponse(key, cached, response, documentType);
         } catch (RestClientException e) {
             throw new CouchDbOperationException("Unable to communicate with CouchDB", e);
         }
@@ -88,31 +168,307 @@ public class CouchDbDocumentTemplate extends CouchDbObjectSupport implements Cou
 
     public <T> T readDocument(URI uri, Class<T> documentType) throws CouchDbOperationException {
         try {
-            return restOperations.getForObject(uri, documentType);
+            if (taggedDocuments == null) {
+                return restOperations.getForObject(uri, documentType);
+            }
+            String key = "uri:" + documentType.getName() + ":" + uri;
+            TaggedDocument cached = getTaggedDocument(key);
+            ResponseEntity<T> response = restOperations.exchange(uri, HttpMethod.GET,
+                    createConditionalRequest(cached), documentType);
+            return handleConditionalResponse(key, cached, response, documentType);
+        } catch (RestClientException e) {
+            throw new CouchDbOperationException("Unable to communicate with CouchDB", e);
+        }
+    }
+
+    private HttpEntity<?> createConditionalRequest(TaggedDocument cached) {
+        HttpHeaders headers = new HttpHeaders();
+        if (cached != null) {
+            headers.setIfNoneMatch(cached.etag);
+        }
+        return new HttpEntity<Object>(headers);
+    }
+
+    /**
+     * Returns the previously read document if it has not been modified, otherwise remembers the read document
+     * along with its ETag.
+     */
+    private <T> T handleConditionalResponse(String key, TaggedDocument cached, ResponseEntity<T> response,
+                                            Class<T> documentType) {
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && cached != null) {
+            return documentType.cast(cached.document);
+        }
+        String etag = response.getHeaders().getETag();
+        if (taggedDocuments != null && etag != null && response.getBody() != null) {
+            synchronized (taggedDocuments) {
+                taggedDocuments.put(key, new TaggedDocument(etag, response.getBody()));
+            }
+        }
+        return response.getBody();
+    }
+
+    private TaggedDocument getTaggedDocument(String key) {
+        if (taggedDocuments == null) {
+            return null;
+        }
+        synchronized (taggedDocuments) {
+            return taggedDocuments.get(key);
+        }
+    }
+
+    public <T> List<T> readDocuments(List<String> ids, Class<T> documentType) throws CouchDbOperationException {
+        Assert.state(allDocumentsUrl != null,
+                "defaultDatabaseUrl without template variables must be set to use this method");
+        return fetchDocuments(URI.create(allDocumentsUrl), ids, documentType, true);
+    }
+
+    public <T> List<T> readDocuments(URI databaseUri, List<String> ids, Class<T> documentType)
+            throws CouchDbOperationException {
+        Assert.notNull(databaseUri, "databaseUri cannot be null");
+        URI uri = URI.create(CouchDbUtils.addAllDocumentsIncludeDocs(databaseUri.toString()));
+        return fetchDocuments(uri, ids, documentType, false);
+    }
+
+    private <T> List<T> fetchDocuments(URI allDocumentsUri, List<String> ids, Class<T> documentType,
+                                       boolean defaultDatabase) {
+        ObjectNode request = objectMapper.createObjectNode();
+        ArrayNode keys = request.putArray("keys");
+        for (String id : ids) {
+            keys.add(id);
+        }
+        JsonNode response;
+        try {
+            response = restOperations.postForObject(allDocumentsUri, JsonDocuments.createHttpEntity(request), JsonNode.class);
+        } catch (RestClientException e) {
+            throw new CouchDbOperationException("Unable to communicate with CouchDB", e);
+        }
+        // CouchDB returns one row per requested key, in the order of the keys
+        JsonNode rows = response.get("rows");
+        if (rows == null || rows.size() != ids.size()) {
+            throw new CouchDbOperationException("Unexpected response from " + allDocumentsUri);
+        }
+        List<T> documents = new ArrayList<T>(ids.size());
+        for (JsonNode row : rows) {
+            JsonNode document = row.get("doc");
+            if (defaultDatabase && document != null) {
+                cacheRevision(document.path("_id").textValue(), document.path("_rev").textValue());
+            }
+            documents.add(mapDocument(document, documentType));
+        }
+        return documents;
+    }
+
+    public void readRows(final URI viewUri, final RowListener listener) throws CouchDbOperationException {
+        try {
+            restOperations.execute(viewUri, HttpMethod.GET, null, new ResponseExtractor<Object>() {
+                public Object extractData(ClientHttpResponse response) throws IOException {
+                    readRows(viewUri, response.getBody(), listener);
+                    return null;
+                }
+            });
+        } catch (RestClientException e) {
+            throw new CouchDbOperationException("Unable to communicate with CouchDB", e);
+        }
+    }
+
+    public long countRows(URI viewUri) throws CouchDbOperationException {
+        URI uri = UriComponentsBuilder.fromUri(viewUri).replaceQueryParam("limit", 0).build(true).toUri();
+        try {
+            return restOperations.getForObject(uri, JsonNode.class).path("total_rows").asLong();
         } catch (RestClientException e) {
             throw new CouchDbOperationException("Unable to communicate with CouchDB", e);
         }
     }
 
+    /**
+     * Reads a view response one row at a time with the streaming API. Unless the response is read to its end, the
+     * connection is aborted, since closing the response would read the rest of it, which may be large.
+     */
+    private void readRows(URI viewUri, InputStream body, RowListener listener) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(body);
+        boolean complete = false;
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new CouchDbOperationException("Unexpected response from " + viewUri);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if (!"rows".equals(fieldName)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (!listener.isListening()) {
+                        return;
+                    }
+                    listener.onRow(objectMapper.<JsonNode>readTree(parser));
+                }
+            }
+            complete = true;
+        } finally {
+            if (!complete) {
+                abortConnection(body);
+            }
+            parser.close();
+        }
+    }
+
     public void writeDocument(String id, Object document) throws CouchDbOperationException {
         writeDocument(id, document, null,null);
     }
     public void writeDocument(String id, Object document, MessageHeaders headers, Counter counter) throws CouchDbOperationException {
         Assert.state(defaultDocumentUrl != null, "defaultDatabaseUrl must be set to use this method");
-        HttpEntity<?> httpEntity = createHttpEntity(document);
+        HashMap<String, Object> copiedHeaders = null;
+        if(headers != null) {
+            copiedHeaders = new HashMap<String, Object>(headers);
+            if(StringUtils.hasLength(id)) {
+                copiedHeaders.put(MessageHeaders.ID, id);
+            }
+        }
         try {
-            if(headers != null) {
-                HashMap<String, Object> copiedHeaders = new HashMap<String, Object>(headers);
-                if(StringUtils.hasLength(id)) {
-                    copiedHeaders.put(MessageHeaders.ID, id);
-                }
-                restOperations.put(defaultDocumentUrl, httpEntity, copiedHeaders);
+            if (document instanceof RawDocument) {
+                putRawDocument((RawDocument) document, id, copiedHeaders);
             } else {
-                restOperations.put(defaultDocumentUrl, httpEntity, id);
+                putDocument(withCachedRevision(id, document), id, copiedHeaders);
             }
         } catch (RestClientException e) {
-            throw new CouchDbOperationException(document,counter,"Unable to communicate with CouchDB", e);
+            if (revisionCache != null && isConflict(e)) {
+                revisionCache.evict(id);
+            }
+            // a raw document is written as it is, without resolving conflicts
+            if (conflictResolver == null || !isConflict(e) || document instanceof RawDocument) {
+                throw new CouchDbOperationException(document,counter,"Unable to communicate with CouchDB", e);
+            }
+            try {
+                resolveConflict(document, id, copiedHeaders);
+            } catch (RestClientException resolveFailure) {
+                throw new CouchDbOperationException(document, counter, "Unable to resolve conflict on document " + id,
+                        resolveFailure);
+            }
+        }
+    }
+
+    private void putDocument(Object document, String id, Map<String, Object> uriVariables) {
+        HttpEntity<?> httpEntity = JsonDocuments.createHttpEntity(document);
+        if (revisionCache == null) {
+            if(uriVariables != null) {
+                restOperations.put(defaultDocumentUrl, httpEntity, uriVariables);
+            } else {
+                restOperations.put(defaultDocumentUrl, httpEntity, id);
+            }
+            return;
+        }
+        // the response carries the new revision of the document
+        ResponseEntity<JsonNode> response;
+        if(uriVariables != null) {
+            response = restOperations.exchange(defaultDocumentUrl, HttpMethod.PUT, httpEntity, JsonNode.class, uriVariables);
+        } else {
+            response = restOperations.exchange(defaultDocumentUrl, HttpMethod.PUT, httpEntity, JsonNode.class, id);
+        }
+        if (response.getBody() != null) {
+            revisionCache.putRevision(id, response.getBody().path("rev").textValue());
+        }
+    }
+
+    /**
+     * Copies a raw document straight to the request, without mapping it.
+     */
+    private void putRawDocument(RawDocument document, final String id, Map<String, Object> uriVariables) {
+        RequestCallback requestCallback = JsonDocuments.createRequestCallback(document);
+        ResponseExtractor<Object> responseExtractor = null;
+        if (revisionCache != null) {
+            responseExtractor = new ResponseExtractor<Object>() {
+                public Object extractData(ClientHttpResponse response) throws IOException {
+                    revisionCache.putRevision(id, objectMapper.readTree(response.getBody()).path("rev").textValue());
+                    return null;
+                }
+            };
+        }
+        if(uriVariables != null) {
+            restOperations.execute(defaultDocumentUrl, HttpMethod.PUT, requestCallback, responseExtractor, uriVariables);
+        } else {
+            restOperations.execute(defaultDocumentUrl, HttpMethod.PUT, requestCallback, responseExtractor, id);
+        }
+    }
+
+    /**
+     * Adds the cached revision to a document which has none, so that it can be updated without reading it first.
+     */
+    private Object withCachedRevision(String id, Object document) {
+        String revision = revisionCache == null ? null : revisionCache.getRevision(id);
+        if (revision == null) {
+            return document;
+        }
+        ObjectNode revised = JsonDocuments.createObjectNode(objectMapper, document);
+        if (!revised.has("_rev")) {
+            revised.put("_rev", revision);
+        }
+        return revised;
+    }
+
+    private void cacheRevision(String id, String revision) {
+        if (revisionCache != null) {
+            revisionCache.putRevision(id, revision);
+        }
+    }
+
+    private JsonNode getCurrentDocument(String id, Map<String, Object> uriVariables) {
+        try {
+            if(uriVariables != null) {
+                return restOperations.getForObject(defaultDocumentUrl, JsonNode.class, uriVariables);
+            }
+            return restOperations.getForObject(defaultDocumentUrl, JsonNode.class, id);
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                // deleted since the conflict
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the current revision of a conflicting document and writes the resolved document over it, until
+     * the write succeeds or conflictRetries attempts have conflicted as well.
+     */
+    private void resolveConflict(Object document, String id, Map<String, Object> uriVariables) {
+        for (int attempt = 1; ; attempt++) {
+            JsonNode current = getCurrentDocument(id, uriVariables);
+            Object resolved = conflictResolver.resolve(id, document, current);
+            if (resolved == null) {
+                if (current != null) {
+                    cacheRevision(id, current.path("_rev").textValue());
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("kept current revision of conflicting document [" + id + "]");
+                }
+                return;
+            }
+            try {
+                putDocument(withRevisionOf(resolved, current), id, uriVariables);
+                return;
+            } catch (RestClientException e) {
+                if (!isConflict(e) || attempt >= conflictRetries) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private ObjectNode withRevisionOf(Object document, JsonNode current) {
+        ObjectNode revised = JsonDocuments.createObjectNode(objectMapper, document);
+        if (current != null && current.has("_rev")) {
+            revised.set("_rev", current.get("_rev"));
+        } else {
+            revised.remove("_rev");
         }
+        return revised;
+    }
+
+    private static boolean isConflict(RestClientException e) {
+        return e instanceof HttpStatusCodeException
+                && ((HttpStatusCodeException) e).getStatusCode() == HttpStatus.CONFLICT;
     }
 
     public void writeDocument(URI uri, Object document) throws CouchDbOperationException {
@@ -120,34 +476,191 @@ public class CouchDbDocumentTemplate extends CouchDbObjectSupport implements Cou
     }
 
     public void writeDocument(URI uri, Object document, MessageHeaders headers) throws CouchDbOperationException {
-        HttpEntity<?> httpEntity = createHttpEntity(document);
         try {
+            if (document instanceof RawDocument) {
+                restOperations.execute(uri.toString(), HttpMethod.PUT,
+                        JsonDocuments.createRequestCallback((RawDocument) document), null, headers);
+                return;
+            }
+            HttpEntity<?> httpEntity = JsonDocuments.createHttpEntity(document);
             restOperations.put(uri.toString(), httpEntity, headers);
         } catch (RestClientException e) {
             throw new CouchDbOperationException("Unable to communicate with CouchDB", e);
         }
     }
 
+    /**
+     * Returns whether writeDocuments can be used, which requires a default database URL without template variables.
+     */
+    public boolean isBulkWriteSupported() {
+        return bulkDocumentsUrl != null;
+    }
+
+    public List<BulkWriteResult> writeDocuments(Map<String, ?> documents) throws CouchDbOperationException {
+        Assert.state(bulkDocumentsUrl != null,
+                "defaultDatabaseUrl without template variables must be set to use this method");
+        List<BulkWriteResult> results = new ArrayList<BulkWriteResult>(postBulkDocuments(documents));
+        for (int attempt = 1; conflictResolver != null && attempt <= conflictRetries; attempt++) {
+            if (!resolveConflicts(documents, results)) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    private List<BulkWriteResult> postBulkDocuments(Map<String, ?> documents) {
+        ObjectNode request = JsonDocuments.createBulkDocumentsRequest(objectMapper, documents);
+        if (revisionCache != null) {
+            for (JsonNode doc : request.get("docs")) {
+                String revision = revisionCache.getRevision(doc.get("_id").textValue());
+                if (revision != null && !doc.has("_rev")) {
+                    ((ObjectNode) doc).put("_rev", revision);
+                }
+            }
+        }
+        BulkWriteResult[] results;
+        try {
+            results = restOperations.postForObject(bulkDocumentsUrl, JsonDocuments.createHttpEntity(request),
+                    BulkWriteResult[].class);
+        } catch (RestClientException e) {
+            throw new CouchDbOperationException("Unable to communicate with CouchDB", e);
+        }
+        if (revisionCache != null) {
+            for (BulkWriteResult result : results) {
+                if (result.isSuccess()) {
+                    revisionCache.putRevision(result.getId(), result.getRev());
+                } else if (result.isConflict()) {
+                    revisionCache.evict(result.getId());
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Reads the current revisions of all conflicting documents of a bulk write with a single request, and writes
+     * the resolved documents with another one. Returns false if there was nothing left to write.
+     */
+    private boolean resolveConflicts(Map<String, ?> documents, List<BulkWriteResult> results) {
+        Map<String, Integer> conflicts = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).isConflict()) {
+                conflicts.put(results.get(i).getId(), i);
+            }
+        }
+        if (conflicts.isEmpty()) {
+            return false;
+        }
+        List<String> ids = new ArrayList<String>(conflicts.keySet());
+        List<JsonNode> currents = fetchDocuments(URI.create(allDocumentsUrl), ids, JsonNode.class, true);
+        Map<String, Object> resolvedDocuments = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            JsonNode current = currents.get(i);
+            Object resolved = conflictResolver.resolve(id, documents.get(id), current);
+            if (resolved == null) {
+                String currentRevision = current == null ? null : current.path("_rev").asText();
+                results.set(conflicts.get(id), new BulkWriteResult(id, currentRevision, null, null));
+            } else {
+                resolvedDocuments.put(id, withRevisionOf(resolved, current));
+            }
+        }
+        if (resolvedDocuments.isEmpty()) {
+            return false;
+        }
+        for (BulkWriteResult result : postBulkDocuments(resolvedDocuments)) {
+            results.set(conflicts.get(result.getId()), result);
+        }
+        return true;
+    }
+
+    /**
+     * Sets the strategy used to resolve revision conflicts on writes. By default conflicts are not resolved
+     * and the write fails.
+     */
+    public void setConflictResolver(ConflictResolver conflictResolver) {
+        this.conflictResolver = conflictResolver;
+    }
+
+    /**
+     * Sets the number of times a conflict is resolved before the write fails, for documents which are
+     * changed again while resolving the conflict. Default is 3.
+     */
+    public void setConflictRetries(int conflictRetries) {
+        Assert.isTrue(conflictRetries > 0, "conflictRetries must be greater than zero");
+        this.conflictRetries = conflictRetries;
+    }
+
+    /**
+     * Sets the cache of document revisions used to update documents without reading them first. Documents
+     * written without a _rev get the cached revision, if any. Requires a database URL without template
+     * variables other than the id.
+     */
+    public void setRevisionCache(RevisionCache revisionCache) {
+        Assert.state(revisionCache == null || allDocumentsUrl != null,
+                "a revision cache requires a defaultDatabaseUrl without template variables");
+        this.revisionCache = revisionCache;
+    }
+
+    /**
+     * Sets the number of documents whose ETag is remembered, along with the document itself, so that reading
+     * them again sends If-None-Match and CouchDB only transfers documents which have been modified. An unmodified
+     * document is returned as previously read, shared between readers, and must not be modified. When the limit is
+     * reached, the least recently read document is forgotten. Default is 0, which disables conditional reads.
+     */
+    public void setETagCacheSize(final int eTagCacheSize) {
+        Assert.isTrue(eTagCacheSize >= 0, "eTagCacheSize must not be negative");
+        if (eTagCacheSize == 0) {
+            taggedDocuments = null;
+        } else {
+            taggedDocuments = new LinkedHashMap<String, TaggedDocument>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TaggedDocument> eldest) {
+                    return size() > eTagCacheSize;
+                }
+            };
+        }
+    }
+
     /** Sets RestOperations */
     public void setRestOperations(RestOperations restOperations) {
         this.restOperations = restOperations;
     }
 
-    private HttpEntity<?> createHttpEntity(Object document) {
-
-        if (document instanceof HttpEntity) {
-            HttpEntity<?> httpEntity = (HttpEntity<?>) document;
-            Assert.isTrue(httpEntity.getHeaders().getContentType().equals(MediaType.APPLICATION_JSON),
-                    "HttpEntity payload with non application/json content type found.");
-            return httpEntity;
+    private <T> T mapDocument(JsonNode document, Class<T> documentType) {
+        if (document == null || document.isNull()) {
+            // missing or deleted document
+            return null;
+        }
+        if (documentType.isInstance(document)) {
+            return documentType.cast(document);
+        }
+        if (documentType == String.class) {
+            return documentType.cast(document.toString());
+        }
+        if (documentType == byte[].class) {
+            try {
+                return documentType.cast(objectMapper.writeValueAsBytes(document));
+            } catch (IOException e) {
+                throw new CouchDbOperationException("Unable to write document as bytes", e);
+            }
+        }
+        try {
+            return objectMapper.treeToValue(document, documentType);
+        } catch (IOException e) {
+            throw new CouchDbOperationException("Unable to map document to " + documentType.getName(), e);
         }
+    }
 
-        HttpHeaders httpHeaders = new HttpHeaders();
-        httpHeaders.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<Object> httpEntity = new HttpEntity<Object>(document, httpHeaders);
+    private static class TaggedDocument {
 
-        return httpEntity;
-    }
+        private final String etag;
 
-	
+        private final Object document;
+
+        TaggedDocument(String etag, Object document) {
+            this.etag = etag;
+            this.document = document;
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import org.opencredo.couchdb.CouchDbUtils;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A SequenceCheckpointStore that keeps the sequence in a CouchDB _local document.
+ * </p>
+ * Local documents are not replicated and do not appear in the changes feed, so storing the checkpoint
+ * does not produce a change of its own. Typically the checkpoint is stored in the database whose changes
+ * are consumed, with an id that identifies the consumer.
+ *
+ * @since 18/10/2026
+ */
+public class CouchDbLocalDocumentCheckpointStore extends CouchDbObjectSupport implements SequenceCheckpointStore {
+
+    private static final String SEQUENCE_FIELD = "seq";
+
+    private static final String REVISION_FIELD = "_rev";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String checkpointUrl;
+
+    private final String checkpointId;
+
+    private volatile String revision;
+
+    /**
+     * Creates an instance that stores the sequence in the local document _local/checkpointId
+     * of the given database.
+     */
+    public CouchDbLocalDocumentCheckpointStore(String databaseUrl, String checkpointId) {
+        super(databaseUrl);
+        Assert.hasText(databaseUrl, "databaseUrl must not be empty");
+        Assert.hasText(checkpointId, "checkpointId must not be empty");
+        this.checkpointUrl = CouchDbUtils.addLocalId(databaseUrl);
+        this.checkpointId = checkpointId;
+    }
+
+    public Long readSequence() throws CouchDbOperationException {
+        JsonNode checkpoint = readCheckpoint();
+        if (checkpoint == null || !checkpoint.has(SEQUENCE_FIELD)) {
+            return null;
+        }
+        return checkpoint.get(SEQUENCE_FIELD).asLong();
+    }
+
+    public synchronized void writeSequence(long sequence) throws CouchDbOperationException {
+        try {
+            putCheckpoint(sequence);
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() != HttpStatus.CONFLICT) {
+                throw new CouchDbOperationException("Unable to write checkpoint " + checkpointId, e);
+            }
+            // another writer updated the checkpoint, retry once with its revision
+            readCheckpoint();
+            try {
+                putCheckpoint(sequence);
+            } catch (RestClientException retryFailure) {
+                throw new CouchDbOperationException("Unable to write checkpoint " + checkpointId, retryFailure);
+            }
+        } catch (RestClientException e) {
+            throw new CouchDbOperationException("Unable to write checkpoint " + checkpointId, e);
+        }
+    }
+
+    private JsonNode readCheckpoint() {
+        try {
+            JsonNode checkpoint = restOperations.getForObject(checkpointUrl, JsonNode.class, checkpointId);
+            revision = checkpoint != null && checkpoint.has(REVISION_FIELD)
+                    ? checkpoint.get(REVISION_FIELD).textValue() : null;
+            return checkpoint;
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                revision = null;
+                return null;
+            }
+            throw new CouchDbOperationException("Unable to read checkpoint " + checkpointId, e);
+        } catch (RestClientException e) {
+            throw new CouchDbOperationException("Unable to read checkpoint " + checkpointId, e);
+        }
+    }
+
+    private void putCheckpoint(long sequence) {
+        ObjectNode checkpoint = objectMapper.createObjectNode();
+        checkpoint.put(SEQUENCE_FIELD, sequence);
+        if (revision != null) {
+            checkpoint.put(REVISION_FIELD, revision);
+        }
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.setContentType(MediaType.APPLICATION_JSON);
+        JsonNode response = restOperations.exchange(checkpointUrl, HttpMethod.PUT,
+                new HttpEntity<Object>(checkpoint, httpHeaders), JsonNode.class, checkpointId).getBody();
+        if (response != null && response.has("rev")) {
+            revision = response.get("rev").textValue();
+        }
+    }
+}
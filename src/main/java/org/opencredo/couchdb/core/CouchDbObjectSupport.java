@@ -16,12 +16,18 @@
 
 package org.opencredo.couchdb.core;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.conn.EofSensorInputStream;
 import org.opencredo.couchdb.BasicAuthRestTemplate;
+import org.opencredo.couchdb.ConnectionSettings;
+import org.opencredo.couchdb.CouchDbConnectionFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.util.Assert;
 import org.springframework.web.client.RestOperations;
 
@@ -30,7 +36,7 @@ import org.springframework.web.client.RestOperations;
  * @author Tareq Abedrabbo
  * @since 02/02/2011
  */
-public abstract class CouchDbObjectSupport {
+public abstract class CouchDbObjectSupport implements DisposableBean {
 
     protected final Log logger = LogFactory.getLog(this.getClass());
 
@@ -48,8 +54,40 @@ public abstract class CouchDbObjectSupport {
         restOperations = new BasicAuthRestTemplate(defaultDatabaseUrl);
     }
 
+    protected CouchDbObjectSupport(String defaultDatabaseUrl, ConnectionSettings connectionSettings) {
+        Assert.notNull(connectionSettings, "connectionSettings cannot be null");
+        restOperations = new BasicAuthRestTemplate(defaultDatabaseUrl, connectionSettings);
+    }
+
+    /**
+     * Uses the connection pool of a shared connection factory, which is not closed when this object is destroyed.
+     */
+    protected CouchDbObjectSupport(String defaultDatabaseUrl, CouchDbConnectionFactory connectionFactory) {
+        Assert.notNull(connectionFactory, "connectionFactory cannot be null");
+        restOperations = connectionFactory.createRestOperations(defaultDatabaseUrl);
+    }
+
     public void setRestOperations(RestOperations restOperations) {
         Assert.notNull(restOperations, "restOperations cannot be null");
         this.restOperations = restOperations;
     }
+
+    /**
+     * Aborts the connection of a response which is not read to its end, such as a continuous feed or a large view,
+     * rather than draining it when the response is closed.
+     */
+    protected static void abortConnection(InputStream body) throws IOException {
+        if (body instanceof EofSensorInputStream) {
+            ((EofSensorInputStream) body).abortConnection();
+        }
+    }
+
+    /**
+     * Releases the connections of the RestOperations if it holds any.
+     */
+    public void destroy() throws Exception {
+        if (restOperations instanceof DisposableBean) {
+            ((DisposableBean) restOperations).destroy();
+        }
+    }
 }
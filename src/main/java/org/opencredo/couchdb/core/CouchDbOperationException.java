@@ -16,6 +16,9 @@
 
 package org.opencredo.couchdb.core;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpStatusCodeException;
+
 import com.fasterxml.jackson.databind.JsonNode;
 import com.prime.common.statistics.Counter;
 
@@ -34,6 +37,16 @@ public class CouchDbOperationException extends RuntimeException {
 	 */
 	public static Counter counter;
 
+	/**
+	 * Creates an instance of CouchDbOperationException.
+	 * 
+	 * @param message
+	 *            an error message
+	 */
+	public CouchDbOperationException(String message) {
+		super(message);
+	}
+
 	/**
 	 * Creates an instance of CouchDbOperationException.
 	 * 
@@ -49,20 +62,35 @@ public class CouchDbOperationException extends RuntimeException {
 
 	public CouchDbOperationException(Object document, Counter counter, String message,Throwable cause) {
 		super(message, cause);
-		
-		if (cause.getMessage().startsWith("409")) {
-			System.out.println("HELLO");
-			System.out.println(counter.getStatistics().toString());
+		if (counter != null && isConflict() && document instanceof JsonNode) {
 			JsonNode doc = (JsonNode) document;
-			if (counter != null) {
-				System.out.println(counter.getStatistics().toString());
-				counter.count("conflict409_"+doc.get("contentBranch").asText()+"_"
-						+ doc.get("sourceType").asText());
+			counter.count("conflict409_" + doc.path("contentBranch").asText() + "_"
+					+ doc.path("sourceType").asText());
+		}
+	}
 
+	/**
+	 * Returns the HTTP status code with which CouchDB rejected the operation, or null if the
+	 * operation did not fail with an HTTP error, e.g. because CouchDB could not be reached.
+	 */
+	public HttpStatus getStatusCode() {
+		Throwable cause = getCause();
+		while (cause != null) {
+			if (cause instanceof HttpStatusCodeException) {
+				return ((HttpStatusCodeException) cause).getStatusCode();
 			}
+			cause = cause.getCause();
 		}
+		return null;
 	}
-	
+
+	/**
+	 * Returns true if the operation failed because of a document revision conflict.
+	 */
+	public boolean isConflict() {
+		return getStatusCode() == HttpStatus.CONFLICT;
+	}
+
 	public void setCounter(Counter counter) {
 		CouchDbOperationException.counter = counter;
 	}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.net.URI;
+
+/**
+ * CouchDB operations that read the rows of views and of _all_docs.
+ *
+ * @since 18/10/2026
+ */
+public interface CouchDbViewOperations {
+
+    /**
+     * Reads all rows of a view or _all_docs with a single request, handing every row to the listener as soon as
+     * it is parsed, so that memory usage does not depend on the number of rows. Reading stops early if the listener
+     * stops listening.
+     *
+     * @param viewUri  the full URI of the view or _all_docs, including its query parameters
+     * @param listener the listener to notify of rows
+     */
+    void readRows(URI viewUri, RowListener listener) throws CouchDbOperationException;
+
+    /**
+     * Returns the total number of rows of a view or _all_docs, as reported by CouchDB without reading any row.
+     *
+     * @param viewUri the full URI of the view or _all_docs
+     */
+    long countRows(URI viewUri) throws CouchDbOperationException;
+}
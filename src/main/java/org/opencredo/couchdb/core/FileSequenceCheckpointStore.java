@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.springframework.util.Assert;
+
+/**
+ * A SequenceCheckpointStore that keeps the sequence in a local file.
+ * </p>
+ * A new sequence is written to a temporary file in the same directory which is then renamed over the
+ * checkpoint file, so that a crash while writing never leaves a truncated checkpoint behind. Where renaming over an
+ * existing file fails, the checkpoint file is deleted first; if a crash then leaves only the temporary file, it is
+ * read instead and renamed back before the next write.
+ *
+ * @since 18/10/2026
+ */
+public class FileSequenceCheckpointStore implements SequenceCheckpointStore {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final File file;
+
+    private final File temporaryFile;
+
+    /**
+     * Creates an instance that stores the sequence in the given file.
+     */
+    public FileSequenceCheckpointStore(File file) {
+        Assert.notNull(file, "file cannot be null");
+        this.file = file.getAbsoluteFile();
+        this.temporaryFile = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+    }
+
+    public Long readSequence() throws CouchDbOperationException {
+        // the temporary file is complete if the checkpoint file was deleted to rename it
+        File file = this.file.exists() ? this.file : temporaryFile;
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+            try {
+                String line = reader.readLine();
+                return line != null ? Long.valueOf(line.trim()) : null;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new CouchDbOperationException("Unable to read checkpoint from " + file, e);
+        } catch (NumberFormatException e) {
+            throw new CouchDbOperationException("Invalid checkpoint in " + file, e);
+        }
+    }
+
+    public synchronized void writeSequence(long sequence) throws CouchDbOperationException {
+        try {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.exists() && !directory.mkdirs()) {
+                throw new IOException("could not create directory " + directory);
+            }
+            // keeps the complete temporary file left by a crash before it is overwritten
+            if (!file.exists() && temporaryFile.exists() && !temporaryFile.renameTo(file)) {
+                throw new IOException("could not rename " + temporaryFile + " to " + file);
+            }
+            FileOutputStream out = new FileOutputStream(temporaryFile);
+            try {
+                Writer writer = new OutputStreamWriter(out, ENCODING);
+                writer.write(String.valueOf(sequence));
+                writer.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            // renaming over an existing file fails on some platforms
+            if (!temporaryFile.renameTo(file) && !(file.delete() && temporaryFile.renameTo(file))) {
+                throw new IOException("could not rename " + temporaryFile + " to " + file);
+            }
+        } catch (IOException e) {
+            throw new CouchDbOperationException("Unable to write checkpoint to " + file, e);
+        }
+    }
+}
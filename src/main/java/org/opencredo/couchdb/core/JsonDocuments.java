@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RequestCallback;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Helpers shared by the document templates to turn payloads into CouchDB request bodies.
+ * </p>
+ * Only the mapping of a payload to a JSON object is public, so that callers can convert documents
+ * before handing them to a template, e.g. to reject a single malformed document of a bulk write.
+ *
+ * @since 18/10/2026
+ */
+public final class JsonDocuments {
+
+    private JsonDocuments() {
+    }
+
+    /**
+     * Wraps a document in an application/json HttpEntity, unless it already is one.
+     */
+    static HttpEntity<?> createHttpEntity(Object document) {
+
+        if (document instanceof HttpEntity) {
+            HttpEntity<?> httpEntity = (HttpEntity<?>) document;
+            Assert.isTrue(httpEntity.getHeaders().getContentType().equals(MediaType.APPLICATION_JSON),
+                    "HttpEntity payload with non application/json content type found.");
+            return httpEntity;
+        }
+
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.setContentType(MediaType.APPLICATION_JSON);
+        if (document instanceof RawDocument) {
+            try {
+                return new HttpEntity<byte[]>(((RawDocument) document).toByteArray(), httpHeaders);
+            } catch (IOException e) {
+                throw new CouchDbOperationException("Unable to read raw document", e);
+            }
+        }
+        HttpEntity<Object> httpEntity = new HttpEntity<Object>(document, httpHeaders);
+
+        return httpEntity;
+    }
+
+    /**
+     * Creates a callback which copies a raw document to the body of an application/json request.
+     */
+    static RequestCallback createRequestCallback(final RawDocument document) {
+        return new RequestCallback() {
+            public void doWithRequest(ClientHttpRequest request) throws IOException {
+                request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                if (document.getContentLength() >= 0) {
+                    request.getHeaders().setContentLength(document.getContentLength());
+                }
+                document.writeTo(request.getBody());
+            }
+        };
+    }
+
+    /**
+     * Creates the body of a _bulk_docs request, setting the _id of every document to its key.
+     */
+    static ObjectNode createBulkDocumentsRequest(ObjectMapper objectMapper, Map<String, ?> documents) {
+        ObjectNode request = objectMapper.createObjectNode();
+        ArrayNode docs = request.putArray("docs");
+        for (Map.Entry<String, ?> entry : documents.entrySet()) {
+            ObjectNode doc = createObjectNode(objectMapper, entry.getValue());
+            doc.put("_id", entry.getKey());
+            docs.add(doc);
+        }
+        return request;
+    }
+
+    /**
+     * Maps a document to a new ObjectNode which can be modified without affecting the document.
+     *
+     * @throws IllegalArgumentException if the document is not a JSON object
+     * @throws CouchDbOperationException if the document cannot be read or mapped to JSON
+     */
+    public static ObjectNode createObjectNode(ObjectMapper objectMapper, Object document) {
+        if (document instanceof HttpEntity) {
+            document = ((HttpEntity<?>) document).getBody();
+        }
+        JsonNode node;
+        try {
+            if (document instanceof JsonNode) {
+                // never modify the payload of the message
+                node = ((JsonNode) document).deepCopy();
+            } else if (document instanceof String) {
+                node = objectMapper.readTree((String) document);
+            } else if (document instanceof byte[]) {
+                node = objectMapper.readTree((byte[]) document);
+            } else if (document instanceof RawDocument) {
+                node = objectMapper.readTree(((RawDocument) document).getInputStream());
+            } else {
+                node = objectMapper.valueToTree(document);
+            }
+        } catch (IOException e) {
+            throw new CouchDbOperationException("Unable to map document to JSON", e);
+        }
+        Assert.isTrue(node != null && node.isObject(), "CouchDB documents must be JSON objects");
+        return (ObjectNode) node;
+    }
+}
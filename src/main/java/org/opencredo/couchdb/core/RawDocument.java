@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+/**
+ * A JSON document given as bytes, which the document templates write to CouchDB as they are, without mapping them
+ * to an object or a tree. The content is either a byte[], a ByteBuffer, whose remaining bytes are written, or an
+ * InputStream, which is read to its end and closed.
+ * </p>
+ * CouchDbDocumentTemplate copies the content straight to the request of a single document write. Bulk writes and
+ * conflict resolution need the _id and _rev of the document, so the content is parsed there like any other payload.
+ *
+ * @since 18/10/2026
+ */
+public final class RawDocument {
+
+    private final Object content;
+
+    /**
+     * Wraps the content of a JSON document.
+     * @param content a byte[], ByteBuffer or InputStream
+     */
+    public RawDocument(Object content) {
+        Assert.isTrue(isRawContent(content),
+                "raw documents must be given as byte[], ByteBuffer or InputStream, not " + content);
+        this.content = content;
+    }
+
+    /**
+     * Returns true if the object can be the content of a RawDocument.
+     */
+    public static boolean isRawContent(Object content) {
+        return content instanceof byte[] || content instanceof ByteBuffer || content instanceof InputStream;
+    }
+
+    /**
+     * Returns the number of bytes of the document, or -1 if the content is a stream.
+     */
+    public long getContentLength() {
+        if (content instanceof byte[]) {
+            return ((byte[]) content).length;
+        } else if (content instanceof ByteBuffer) {
+            return ((ByteBuffer) content).remaining();
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the document to the given stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (content instanceof byte[]) {
+            out.write((byte[]) content);
+        } else if (content instanceof ByteBuffer) {
+            // never move the position of the payload
+            ByteBuffer buffer = ((ByteBuffer) content).duplicate();
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] chunk = new byte[Math.min(buffer.remaining(), StreamUtils.BUFFER_SIZE)];
+                while (buffer.hasRemaining()) {
+                    int length = Math.min(buffer.remaining(), chunk.length);
+                    buffer.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            }
+        } else {
+            InputStream in = (InputStream) content;
+            try {
+                StreamUtils.copy(in, out);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the document as a stream of bytes.
+     */
+    public InputStream getInputStream() throws IOException {
+        if (content instanceof InputStream) {
+            return (InputStream) content;
+        }
+        return new ByteArrayInputStream(toByteArray());
+    }
+
+    /**
+     * Returns the bytes of the document, copying them unless the content is a byte[].
+     */
+    public byte[] toByteArray() throws IOException {
+        if (content instanceof byte[]) {
+            return (byte[]) content;
+        }
+        ByteBuffer buffer = content instanceof ByteBuffer ? ((ByteBuffer) content).duplicate() : null;
+        if (buffer != null) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        InputStream in = (InputStream) content;
+        try {
+            return StreamUtils.copyToByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * A bounded cache of the latest known revision of documents, so that CouchDbDocumentTemplate can update
+ * documents without reading them first. When the cache is full, the least recently used document is evicted.
+ * </p>
+ * Revisions come from writes, reads and the changes feed, which may report them out of order; the cache only
+ * replaces a revision with one of a higher generation. A stale revision costs a conflict, after which the
+ * document is evicted. The same instance can be shared between a document template and a changes template
+ * following the same database.
+ *
+ * @since 18/10/2026
+ */
+public class RevisionCache {
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final Map<String, String> revisions;
+
+    /**
+     * Creates a cache of up to 10000 documents.
+     */
+    public RevisionCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache of up to the given number of documents.
+     */
+    public RevisionCache(final int capacity) {
+        Assert.isTrue(capacity > 0, "capacity must be greater than zero");
+        revisions = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the latest known revision of a document, or null if it is not known.
+     */
+    public synchronized String getRevision(String id) {
+        return revisions.get(id);
+    }
+
+    /**
+     * Records a revision of a document, unless a later revision is already known.
+     */
+    public synchronized void putRevision(String id, String revision) {
+        if (id == null || revision == null) {
+            return;
+        }
+        String known = revisions.get(id);
+        if (known == null || generation(revision) >= generation(known)) {
+            revisions.put(id, revision);
+        }
+    }
+
+    /**
+     * Forgets the revision of a document, e.g. after a conflict or once it has been deleted.
+     */
+    public synchronized void evict(String id) {
+        revisions.remove(id);
+    }
+
+    public synchronized int size() {
+        return revisions.size();
+    }
+
+    private static long generation(String revision) {
+        int separator = revision.indexOf('-');
+        try {
+            return Long.parseLong(separator > 0 ? revision.substring(0, separator) : revision);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Callback interface for code that consumes the rows of a view or _all_docs response as soon as they are read.
+ *
+ * @since 18/10/2026
+ */
+public interface RowListener {
+
+    /**
+     * Called for every row of the response, in the order of the view.
+     *
+     * @param row the row, with its id, key, value and, if requested, doc
+     */
+    void onRow(JsonNode row);
+
+    /**
+     * Returns false to stop reading rows. Checked before every row.
+     */
+    boolean isListening();
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+/**
+ * Strategy interface for persisting the sequence up to which changes of a database have been
+ * processed, so that a restarted consumer resumes from there instead of replaying all changes.
+ *
+ * @since 18/10/2026
+ */
+public interface SequenceCheckpointStore {
+
+    /**
+     * Reads the last stored sequence.
+     * @return the stored sequence or null if none has been stored yet
+     */
+    Long readSequence() throws CouchDbOperationException;
+
+    /**
+     * Stores a sequence, replacing the previously stored one.
+     * @param sequence the sequence up to which changes have been processed
+     */
+    void writeSequence(long sequence) throws CouchDbOperationException;
+}
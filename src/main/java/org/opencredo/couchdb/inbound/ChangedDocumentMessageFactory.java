@@ -0,0 +1,71 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.inbound;
+
+import java.io.IOException;
+
+import org.opencredo.couchdb.CouchDbHeaders;
+import org.opencredo.couchdb.core.ChangedDocument;
+import org.opencredo.couchdb.core.CouchDbOperationException;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Creates the messages sent by the changes adapters. The payload is the body of the changed document
+ * if it has been read with the change, mapped to the document type if one is set, and the URI of the
+ * document otherwise. The URI, sequence and status of the change are set as headers.
+ *
+ * @since 18/10/2026
+ */
+class ChangedDocumentMessageFactory {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Class<?> documentType;
+
+    void setDocumentType(Class<?> documentType) {
+        this.documentType = documentType;
+    }
+
+    Message<Object> createMessage(ChangedDocument changedDocument) {
+        return MessageBuilder.withPayload(createPayload(changedDocument))
+                .setHeader(CouchDbHeaders.URI, changedDocument.getUri().toString())
+                .setHeader(CouchDbHeaders.SEQUENCE, changedDocument.getSequence())
+                .setHeader(CouchDbHeaders.STATUS, changedDocument.getStatus().name())
+                .build();
+    }
+
+    private Object createPayload(ChangedDocument changedDocument) {
+        JsonNode document = changedDocument.getDocument();
+        if (document == null) {
+            return changedDocument.getUri();
+        }
+        if (documentType == null || documentType.isInstance(document)) {
+            return document;
+        }
+        try {
+            return objectMapper.treeToValue(document, documentType);
+        } catch (IOException e) {
+            throw new CouchDbOperationException("Unable to map " + changedDocument.getUri() + " to "
+                    + documentType.getName(), e);
+        }
+    }
+}
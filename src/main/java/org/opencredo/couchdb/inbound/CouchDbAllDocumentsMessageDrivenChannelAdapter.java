@@ -0,0 +1,409 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.inbound;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencredo.couchdb.CouchDbHeaders;
+import org.opencredo.couchdb.CouchDbUtils;
+import org.opencredo.couchdb.core.CouchDbDocumentTemplate;
+import org.opencredo.couchdb.core.CouchDbOperationException;
+import org.opencredo.couchdb.core.CouchDbViewOperations;
+import org.opencredo.couchdb.core.RowListener;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.Assert;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A message-driven channel adapter that exports all rows of a CouchDB view or of _all_docs. The rows are parsed one
+ * at a time as they arrive and a message is sent for every row; its payload is the java.net.URI of the document, or
+ * the document itself if the rows are read with their documents. The URI of the view and the number of rows sent so
+ * far are set as headers, see CouchDbHeaders.
+ * </p>
+ * The key space can be split into ranges which are exported concurrently, each with its own request on a thread of
+ * the configured TaskExecutor, either at given split keys or at keys sampled evenly across the view. Rows of
+ * different ranges are then interleaved in the output channel. The URL of a partitioned view must not restrict its
+ * keys itself.
+ * </p>
+ * Each range is read no faster than its messages are sent. With a bounded output channel, a slow consumer therefore
+ * holds back the export instead of filling the memory. If the connection fails, the range is read again after the
+ * recovery interval, resuming after its last sent row. Once all rows have been sent, the adapter stays idle; starting
+ * it again exports the view again.
+ *
+ * @since 18/10/2026
+ */
+public class CouchDbAllDocumentsMessageDrivenChannelAdapter extends MessageProducerSupport {
+
+    private static final long DEFAULT_RECOVERY_INTERVAL = 5000L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final CouchDbViewOperations couchDbViewOperations;
+
+    private final URI viewUri;
+
+    private final String baseUri;
+
+    private TaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("couchdb-export-");
+
+    private long recoveryInterval = DEFAULT_RECOVERY_INTERVAL;
+
+    private boolean includeDocs = false;
+
+    private Class<?> documentType;
+
+    private int partitions = 1;
+
+    private List<?> splitKeys;
+
+    private volatile Export export;
+
+    /**
+     * The ranges of the current export, kept across restarts so that a stopped export resumes where it stopped.
+     */
+    private volatile List<KeyRange> keyRanges;
+
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Creates an instance with custom CouchDbViewOperations.
+     *
+     * @param couchDbViewOperations the operations used to read the view
+     * @param viewUrl               the URL of a view (/db/_design/ddoc/_view/name) or of _all_docs (/db/_all_docs)
+     */
+    public CouchDbAllDocumentsMessageDrivenChannelAdapter(CouchDbViewOperations couchDbViewOperations, String viewUrl) {
+        Assert.notNull(couchDbViewOperations, "couchDbViewOperations cannot be null");
+        Assert.hasText(viewUrl, "viewUrl must not be empty");
+        this.couchDbViewOperations = couchDbViewOperations;
+        this.viewUri = URI.create(viewUrl);
+        int index = viewUrl.indexOf("/_all_docs");
+        if (index == -1) {
+            index = viewUrl.indexOf("/_design/");
+        }
+        Assert.isTrue(index != -1, "viewUrl must be a /_design/../_view/... or a /_all_docs URL");
+        this.baseUri = viewUrl.substring(0, index);
+    }
+
+    /**
+     * Creates an instance which reads the view with a default template.
+     */
+    public CouchDbAllDocumentsMessageDrivenChannelAdapter(String viewUrl) {
+        this(new CouchDbDocumentTemplate(viewUrl), viewUrl);
+    }
+
+    @Override
+    public String getComponentType() {
+        return "couchdb:message-driven-channel-adapter";
+    }
+
+    @Override
+    protected void doStart() {
+        export = new Export();
+        taskExecutor.execute(export);
+    }
+
+    @Override
+    protected void doStop() {
+        if (export != null) {
+            export.stop();
+            export = null;
+        }
+    }
+
+    /**
+     * Sets the TaskExecutor on which the view is read. It needs a thread per range to export the ranges concurrently.
+     */
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        Assert.notNull(taskExecutor, "taskExecutor cannot be null");
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait before reconnecting after a failure. Default is 5000.
+     */
+    public void setRecoveryInterval(long recoveryInterval) {
+        this.recoveryInterval = recoveryInterval;
+    }
+
+    /**
+     * Sets whether the documents are read along with the rows and sent instead of their URIs. Default is false.
+     */
+    public void setIncludeDocs(boolean includeDocs) {
+        this.includeDocs = includeDocs;
+    }
+
+    /**
+     * Sets the type to which the documents read along with the rows are mapped. By default the documents
+     * are sent as JsonNode.
+     */
+    public void setDocumentType(Class<?> documentType) {
+        this.documentType = documentType;
+    }
+
+    /**
+     * Sets the number of ranges exported concurrently. The split keys are sampled at even offsets of the view,
+     * with one request each, when the export starts. Default is 1.
+     */
+    public void setPartitions(int partitions) {
+        Assert.isTrue(partitions > 0, "partitions must be greater than zero");
+        this.partitions = partitions;
+    }
+
+    /**
+     * Sets the keys at which the view is split into ranges exported concurrently, in the order of the view. Each key
+     * starts a range, which ends before the next key. Takes precedence over the number of partitions.
+     */
+    public void setSplitKeys(List<?> splitKeys) {
+        this.splitKeys = splitKeys;
+    }
+
+    /**
+     * Creates the URI of a request for the given range, which starts after the last sent row if the range is
+     * resumed.
+     */
+    URI createExportUri(KeyRange keyRange) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUri(viewUri);
+        if (includeDocs) {
+            builder.replaceQueryParam("include_docs", true);
+        }
+        if (keyRange.lastKey != null) {
+            builder.replaceQueryParam("startkey", CouchDbUtils.encodeId(keyRange.lastKey.toString()))
+                    .replaceQueryParam("startkey_docid", CouchDbUtils.encodeId(keyRange.lastDocumentId))
+                    .replaceQueryParam("skip", 1);
+        } else if (keyRange.startKey != null) {
+            builder.replaceQueryParam("startkey", CouchDbUtils.encodeId(keyRange.startKey.toString()));
+        }
+        if (keyRange.endKey != null) {
+            builder.replaceQueryParam("endkey", CouchDbUtils.encodeId(keyRange.endKey.toString()))
+                    .replaceQueryParam("inclusive_end", false);
+        }
+        return builder.build(true).toUri();
+    }
+
+    /**
+     * Splits the view into ranges at the given split keys, or at keys sampled at even offsets of the view.
+     */
+    List<KeyRange> createKeyRanges() {
+        List<JsonNode> keys = new ArrayList<JsonNode>();
+        if (splitKeys != null) {
+            for (Object splitKey : splitKeys) {
+                keys.add(objectMapper.valueToTree(splitKey));
+            }
+        } else if (partitions > 1) {
+            long total = couchDbViewOperations.countRows(viewUri);
+            for (int i = 1; i < partitions; i++) {
+                JsonNode key = sampleKey(total * i / partitions);
+                if (key != null && (keys.isEmpty() || !key.equals(keys.get(keys.size() - 1)))) {
+                    keys.add(key);
+                }
+            }
+        }
+        List<KeyRange> ranges = new ArrayList<KeyRange>(keys.size() + 1);
+        JsonNode startKey = null;
+        for (JsonNode key : keys) {
+            ranges.add(new KeyRange(startKey, key));
+            startKey = key;
+        }
+        ranges.add(new KeyRange(startKey, null));
+        return ranges;
+    }
+
+    private JsonNode sampleKey(long offset) {
+        if (offset == 0) {
+            return null;
+        }
+        URI uri = UriComponentsBuilder.fromUri(viewUri).replaceQueryParam("limit", 1)
+                .replaceQueryParam("skip", offset).build(true).toUri();
+        final JsonNode[] key = new JsonNode[1];
+        couchDbViewOperations.readRows(uri, new RowListener() {
+            public void onRow(JsonNode row) {
+                key[0] = row.get("key");
+            }
+
+            public boolean isListening() {
+                return key[0] == null;
+            }
+        });
+        return key[0];
+    }
+
+    private void sendRow(KeyRange keyRange, JsonNode row) {
+        String id = row.path("id").textValue();
+        if (id == null) {
+            // e.g. a reduced row
+            return;
+        }
+        Object payload = createPayload(id, row.get("doc"));
+        sendMessage(MessageBuilder.withPayload(payload)
+                .setHeader(CouchDbHeaders.URI, viewUri.toString())
+                .setHeader(CouchDbHeaders.SKIP, String.valueOf(count.incrementAndGet()))
+                .build());
+        // only a sent row is skipped when the range is resumed
+        keyRange.lastKey = row.get("key");
+        keyRange.lastDocumentId = id;
+    }
+
+    private Object createPayload(String id, JsonNode document) {
+        if (!includeDocs || document == null || document.isNull()) {
+            return URI.create(baseUri + "/" + CouchDbUtils.encodeId(id));
+        }
+        if (documentType == null || documentType.isInstance(document)) {
+            return document;
+        }
+        try {
+            return objectMapper.treeToValue(document, documentType);
+        } catch (IOException e) {
+            throw new CouchDbOperationException("Unable to map document " + id + " to " + documentType.getName(), e);
+        }
+    }
+
+    /**
+     * A range of keys of the view, from its start key, inclusive, to its end key, exclusive. Null keys stand for
+     * the beginning and the end of the view.
+     */
+    static class KeyRange {
+
+        final JsonNode startKey;
+
+        final JsonNode endKey;
+
+        /**
+         * The key of the last sent row, or null if nothing has been sent yet.
+         */
+        volatile JsonNode lastKey;
+
+        volatile String lastDocumentId;
+
+        volatile boolean complete;
+
+        KeyRange(JsonNode startKey, JsonNode endKey) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+        }
+    }
+
+    /**
+     * Splits the view into ranges, unless a stopped export is resumed, and reads the incomplete ranges concurrently
+     * until all rows have been sent or the adapter is stopped.
+     */
+    private class Export implements Runnable {
+
+        private volatile boolean listening = true;
+
+        private final AtomicInteger remaining = new AtomicInteger();
+
+        public void run() {
+            while (listening && keyRanges == null) {
+                try {
+                    keyRanges = createKeyRanges();
+                } catch (RuntimeException e) {
+                    if (listening) {
+                        logger.warn("failed to split " + viewUri + ", retrying in " + recoveryInterval + "ms", e);
+                        waitForRecovery();
+                    }
+                }
+            }
+            if (!listening) {
+                return;
+            }
+            List<KeyRange> incomplete = new ArrayList<KeyRange>();
+            for (KeyRange keyRange : keyRanges) {
+                if (!keyRange.complete) {
+                    incomplete.add(keyRange);
+                }
+            }
+            remaining.set(incomplete.size());
+            for (KeyRange keyRange : incomplete) {
+                taskExecutor.execute(new KeyRangeExport(keyRange, this));
+            }
+        }
+
+        void completed(KeyRange keyRange) {
+            keyRange.complete = true;
+            if (remaining.decrementAndGet() == 0 && listening) {
+                logger.info("exported " + count.get() + " rows of " + viewUri);
+                keyRanges = null;
+                count.set(0);
+            }
+        }
+
+        void stop() {
+            listening = false;
+        }
+
+        void waitForRecovery() {
+            try {
+                Thread.sleep(recoveryInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                listening = false;
+            }
+        }
+    }
+
+    /**
+     * Reads a range until all its rows have been sent or the export is stopped.
+     */
+    private class KeyRangeExport implements Runnable, RowListener {
+
+        private final KeyRange keyRange;
+
+        private final Export export;
+
+        KeyRangeExport(KeyRange keyRange, Export export) {
+            this.keyRange = keyRange;
+            this.export = export;
+        }
+
+        public void run() {
+            while (export.listening) {
+                try {
+                    couchDbViewOperations.readRows(createExportUri(keyRange), this);
+                    if (export.listening) {
+                        export.completed(keyRange);
+                    }
+                    return;
+                } catch (RuntimeException e) {
+                    if (export.listening) {
+                        logger.warn("failed to read " + viewUri + ", resuming in " + recoveryInterval + "ms", e);
+                        export.waitForRecovery();
+                    }
+                }
+            }
+        }
+
+        public void onRow(JsonNode row) {
+            sendRow(keyRange, row);
+        }
+
+        public boolean isListening() {
+            return export.listening;
+        }
+    }
+}
@@ -18,16 +18,21 @@ package org.opencredo.couchdb.inbound;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.opencredo.couchdb.CouchDbHeaders;
+import org.opencredo.couchdb.CouchDbUtils;
 import org.opencredo.couchdb.core.CouchDbDocumentOperations;
 import org.opencredo.couchdb.core.CouchDbDocumentTemplate;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.messaging.Message;
 import org.springframework.integration.context.IntegrationObjectSupport;
 import org.springframework.integration.core.MessageSource;
@@ -36,11 +41,20 @@ import org.springframework.util.Assert;
 import org.springframework.web.util.UriComponentsBuilder;
 
 /**
- * A MessageSource that takes the URI of a CouchDB view or database and receives all messages sequentially by using the skip and limit parameters
- * which are supported by CouchDB. The retrieval of the documents is performed through an instance of CouchDbDocumentOperations.
+ * A MessageSource that takes the URI of a CouchDB view or database and receives all messages sequentially by using the startkey,
+ * startkey_docid and limit parameters which are supported by CouchDB. The retrieval of the documents is performed through an
+ * instance of CouchDbDocumentOperations.
  * <p/>
- * Each request returns and stores internally a number of {@link JsonNode}s equal to the queue capacity; when the queue becomes empty, a new request
- * is made with limit and skip adjusted accordingly.
+ * Each request returns and stores internally at most limit {@link JsonNode}s; when the queue becomes empty, a new request
+ * is made which starts at the key and document id of the last retrieved row and skips that row. Unlike an increasing skip offset,
+ * this keeps the cost of every request proportional to the limit, however deep into the database or view the source is.
+ * <p/>
+ * receive() may be called concurrently, e.g. by a poller with a task executor and several messages per poll. Received
+ * messages are handed off through a lock-free queue; at most one page is requested at a time, and the position of the
+ * next page is only advanced once a page has been fully queued, so that pages are neither repeated nor skipped.
+ * <p/>
+ * With a prefetch threshold, the next page is requested on a thread of the TaskExecutor as soon as fewer rows than
+ * the threshold are left, instead of when the last row has been received.
  * 
  * @author Kambiz Darabi
  * @since 2014-02-18
@@ -50,13 +64,19 @@ public class CouchDbAllDocumentsMessageSource extends IntegrationObjectSupport i
    private final int limit;
 
    /**
-    * The number of documents which we already retrieved.
+    * The position of the next page, replaced as a whole once a page has been queued.
     */
-   private int skip = 0;
+   private volatile PageCursor cursor = new PageCursor(null, null, 0);
 
    final CouchDbDocumentOperations couchDbDocumentOperations;
 
-   private final Queue<URI> toBeReceived;
+   private final Queue<Message<URI>> toBeReceived = new ConcurrentLinkedQueue<Message<URI>>();
+
+   private final Prefetcher prefetcher = new Prefetcher(toBeReceived, new Runnable() {
+      public void run() {
+         queueNextPage();
+      }
+   });
 
    /**
     * The base URI of the database or view to which <code>limit</code> and <code>skip</code> query parameters are added.
@@ -71,9 +91,19 @@ public class CouchDbAllDocumentsMessageSource extends IntegrationObjectSupport i
     * @throws URISyntaxException
     */
    public CouchDbAllDocumentsMessageSource(String databaseUrl, int limit) throws URISyntaxException {
-      this.couchDbDocumentOperations = new CouchDbDocumentTemplate(databaseUrl);
+      this(new CouchDbDocumentTemplate(databaseUrl), databaseUrl, limit);
+   }
+
+   /**
+    * Creates an instance with a custom CouchDbDocumentOperations.
+    * 
+    * @throws URISyntaxException
+    */
+   public CouchDbAllDocumentsMessageSource(CouchDbDocumentOperations couchDbDocumentOperations, String databaseUrl, int limit)
+         throws URISyntaxException {
+      Assert.notNull(couchDbDocumentOperations, "couchDbDocumentOperations cannot be null");
+      this.couchDbDocumentOperations = couchDbDocumentOperations;
       this.limit = limit;
-      this.toBeReceived = new ArrayBlockingQueue<URI>(limit);
       this.databaseUri = new URI(databaseUrl);
       int ind = databaseUrl.indexOf("/_all_docs");
       if (ind != -1) {
@@ -89,42 +119,112 @@ public class CouchDbAllDocumentsMessageSource extends IntegrationObjectSupport i
    }
 
    public Message<URI> receive() {
-      if (toBeReceived.isEmpty()) {
-         URI skipUri = UriComponentsBuilder.fromUri(databaseUri).replaceQueryParam("limit", limit).replaceQueryParam("skip", skip).build().toUri();
-         ObjectNode response = couchDbDocumentOperations.readDocument(skipUri, ObjectNode.class);
-         ArrayNode rows = (ArrayNode) response.get("rows");
-         int size = rows.size();
-         Assert.isTrue(size <= limit, "Retrieved more rows than limit");
-         for (int i = 0; i < size; i++) {
-            JsonNode node = rows.get(i);
-            String id = node.get("id").textValue();
-            try {
-               toBeReceived.add(new URI(baseUri + "/" + id));
-               skip++;
-            } catch (URISyntaxException e) {
-               logger.error("Error creating the URI of document from baseUri and ID", e);
-               return null;
-            }
+      Message<URI> message = toBeReceived.poll();
+      if (message == null) {
+         prefetcher.fetchIfEmpty();
+         message = toBeReceived.poll();
+      }
+      if (message != null) {
+         prefetcher.prefetchIfLow();
+      }
+      return message;
+   }
+
+   /**
+    * Sets the number of queued rows below which the next page is requested in the background. Default is 0, which
+    * requests the next page only once all rows have been received.
+    */
+   public void setPrefetchThreshold(int prefetchThreshold) {
+      prefetcher.setThreshold(prefetchThreshold);
+   }
+
+   /**
+    * Sets the TaskExecutor on which pages are prefetched.
+    */
+   public void setTaskExecutor(TaskExecutor taskExecutor) {
+      prefetcher.setTaskExecutor(taskExecutor);
+   }
+
+   /**
+    * Requests the next page and queues a message for each of its rows. Only called by the prefetcher, which makes
+    * sure that one page is requested at a time.
+    */
+   private void queueNextPage() {
+      PageCursor current = cursor;
+      ObjectNode response = couchDbDocumentOperations.readDocument(createPageUri(current), ObjectNode.class);
+      ArrayNode rows = (ArrayNode) response.get("rows");
+      int size = rows.size();
+      Assert.isTrue(size <= limit, "Retrieved more rows than limit");
+      List<URI> uris = new ArrayList<URI>(size);
+      PageCursor next = current;
+      for (int i = 0; i < size; i++) {
+         JsonNode node = rows.get(i);
+         String id = node.get("id").textValue();
+         try {
+            uris.add(new URI(baseUri + "/" + id));
+         } catch (URISyntaxException e) {
+            logger.error("Error creating the URI of document from baseUri and ID", e);
+            break;
          }
+         next = new PageCursor(node.get("key"), id, next.skip + 1);
       }
+      Map<String, String> headers = createHeaderMap(databaseUri, next.skip, limit);
+      for (URI uri : uris) {
+         toBeReceived.add(prepareMessage(uri, headers));
+      }
+      cursor = next;
+   }
 
-      Map<String, String> headers = createHeaderMap(databaseUri, skip, limit);
-      return prepareMessage(toBeReceived.poll(), headers);
+   /**
+    * Creates the URI of the next page.
+    */
+   URI createPageUri() {
+      return createPageUri(cursor);
+   }
+
+   /**
+    * Creates the URI of a page. The first page starts at the beginning of the database or view, every following page
+    * starts at the last retrieved row, which is skipped.
+    */
+   private URI createPageUri(PageCursor pageCursor) {
+      UriComponentsBuilder builder = UriComponentsBuilder.fromUri(databaseUri).replaceQueryParam("limit", limit);
+      if (pageCursor.lastKey == null) {
+         return builder.build().toUri();
+      }
+      builder.replaceQueryParam("startkey", CouchDbUtils.encodeId(pageCursor.lastKey.toString()))
+            .replaceQueryParam("startkey_docid", CouchDbUtils.encodeId(pageCursor.lastDocumentId))
+            .replaceQueryParam("skip", 1);
+      return builder.build(true).toUri();
    }
 
    Map<String, String> createHeaderMap(URI uri, int skip, int limit) {
       Map<String, String> headers = new HashMap<String, String>(4);
-      headers.put("couchdb-uri", uri.toString());
-      headers.put("couchdb-skip", String.valueOf(skip));
-      headers.put("couchdb-limit", String.valueOf(limit));
+      headers.put(CouchDbHeaders.URI, uri.toString());
+      headers.put(CouchDbHeaders.SKIP, String.valueOf(skip));
+      headers.put(CouchDbHeaders.LIMIT, String.valueOf(limit));
       return headers;
    }
 
    private Message<URI> prepareMessage(URI uri, Map<String, String> headers) {
-      Message<URI> message = null;
-      if (uri != null) {
-         message = MessageBuilder.withPayload(uri).copyHeaders(headers).build();
+      return MessageBuilder.withPayload(uri).copyHeaders(headers).build();
+   }
+
+   /**
+    * The key and document id of the last retrieved row, or null keys if no row has been retrieved yet, along with the
+    * number of documents retrieved so far.
+    */
+   private static final class PageCursor {
+
+      private final JsonNode lastKey;
+
+      private final String lastDocumentId;
+
+      private final int skip;
+
+      PageCursor(JsonNode lastKey, String lastDocumentId, int skip) {
+         this.lastKey = lastKey;
+         this.lastDocumentId = lastDocumentId;
+         this.skip = skip;
       }
-      return message;
    }
 }
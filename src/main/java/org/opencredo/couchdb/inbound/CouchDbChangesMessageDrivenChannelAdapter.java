@@ -0,0 +1,199 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.inbound;
+
+import org.opencredo.couchdb.core.ChangedDocument;
+import org.opencredo.couchdb.core.ChangesListener;
+import org.opencredo.couchdb.core.CouchDbChangesOperations;
+import org.opencredo.couchdb.core.CouchDbChangesTemplate;
+import org.opencredo.couchdb.core.SequenceCheckpointStore;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.util.Assert;
+
+/**
+ * A message-driven channel adapter that follows the continuous changes feed of a CouchDB database
+ * through a CouchDbChangesOperations. A message is sent as soon as a change is received; its payload
+ * is the java.net.URI of the changed document, or the document itself if the changes are read with their
+ * documents. The URI, sequence and status of the change are set as headers, see CouchDbHeaders.
+ * </p>
+ * The feed is followed on a thread of the configured TaskExecutor. If the connection fails, the adapter
+ * reconnects after the recovery interval and resumes from the last received sequence. Stopping the adapter aborts
+ * the connection of the feed.
+ * </p>
+ * If a message cannot be sent and an error channel is set, the failure is sent there and the change counts as
+ * processed. Without an error channel the connection is dropped as if it had failed, and the change is sent again
+ * after the recovery interval, so that no change is lost.
+ * </p>
+ * If a SequenceCheckpointStore is set, the adapter resumes from the stored sequence on startup. A change counts as
+ * processed once its message has been sent, and the sequence of processed changes is stored every
+ * checkpointInterval messages.
+ *
+ * @since 18/10/2026
+ */
+public class CouchDbChangesMessageDrivenChannelAdapter extends MessageProducerSupport {
+
+    private static final long DEFAULT_RECOVERY_INTERVAL = 5000L;
+
+    private final CouchDbChangesOperations couchDbChangesOperations;
+
+    private TaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("couchdb-changes-");
+
+    private long recoveryInterval = DEFAULT_RECOVERY_INTERVAL;
+
+    private final ChangedDocumentMessageFactory messageFactory = new ChangedDocumentMessageFactory();
+
+    private SequenceCheckpointStore checkpointStore;
+
+    private int checkpointInterval = 1;
+
+    private SequenceCheckpointer checkpointer;
+
+    private volatile ChangesFeed changesFeed;
+
+    /**
+     * Creates an instance with a custom CouchDbChangesOperations.
+     */
+    public CouchDbChangesMessageDrivenChannelAdapter(CouchDbChangesOperations couchDbChangesOperations) {
+        Assert.notNull(couchDbChangesOperations, "couchDbChangesOperations cannot be null");
+        this.couchDbChangesOperations = couchDbChangesOperations;
+    }
+
+    /**
+     * Creates an instance with a default database to connect to.
+     */
+    public CouchDbChangesMessageDrivenChannelAdapter(String databaseUrl) {
+        this(new CouchDbChangesTemplate(databaseUrl));
+    }
+
+    @Override
+    public String getComponentType() {
+        return "couchdb:message-driven-channel-adapter";
+    }
+
+    @Override
+    protected void onInit() {
+        super.onInit();
+        if (checkpointStore != null) {
+            checkpointer = new SequenceCheckpointer(checkpointStore, checkpointInterval);
+            checkpointer.restore(couchDbChangesOperations);
+        }
+    }
+
+    @Override
+    protected void doStart() {
+        changesFeed = new ChangesFeed();
+        taskExecutor.execute(changesFeed);
+    }
+
+    @Override
+    protected void doStop() {
+        if (changesFeed != null) {
+            changesFeed.stop();
+            changesFeed = null;
+        }
+        if (checkpointer != null) {
+            checkpointer.flush();
+        }
+    }
+
+    /**
+     * Sets the TaskExecutor on which the changes feed is followed.
+     */
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        Assert.notNull(taskExecutor, "taskExecutor cannot be null");
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait before reconnecting after a failure. Default is 5000.
+     */
+    public void setRecoveryInterval(long recoveryInterval) {
+        this.recoveryInterval = recoveryInterval;
+    }
+
+    /**
+     * Sets the type to which the documents read along with the changes are mapped. By default the
+     * documents are sent as JsonNode.
+     */
+    public void setDocumentType(Class<?> documentType) {
+        messageFactory.setDocumentType(documentType);
+    }
+
+    /**
+     * Sets the store in which the sequence of processed changes is kept across restarts.
+     */
+    public void setCheckpointStore(SequenceCheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * Sets the number of processed messages after which the sequence is stored. Default is 1.
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        Assert.isTrue(checkpointInterval > 0, "checkpointInterval must be greater than zero");
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Follows the changes feed until stopped. Each start of the adapter gets its own instance
+     * so that a feed which is still shutting down never competes with a new one.
+     */
+    private class ChangesFeed implements Runnable, ChangesListener {
+
+        private volatile boolean listening = true;
+
+        public void run() {
+            while (listening) {
+                try {
+                    couchDbChangesOperations.followChanges(this);
+                } catch (RuntimeException e) {
+                    if (listening) {
+                        logger.warn("failed to follow CouchDB changes, reconnecting in " + recoveryInterval + "ms", e);
+                        waitForRecovery();
+                    }
+                }
+            }
+        }
+
+        public void onChange(ChangedDocument changedDocument) {
+            sendMessage(messageFactory.createMessage(changedDocument));
+            if (checkpointer != null) {
+                checkpointer.acknowledge(changedDocument.getSequence());
+            }
+        }
+
+        public boolean isListening() {
+            return listening;
+        }
+
+        void stop() {
+            listening = false;
+            couchDbChangesOperations.stopFollowing(this);
+        }
+
+        private void waitForRecovery() {
+            try {
+                Thread.sleep(recoveryInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                listening = false;
+            }
+        }
+    }
+}
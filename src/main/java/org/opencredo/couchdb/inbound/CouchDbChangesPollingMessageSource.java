@@ -17,15 +17,17 @@
 package org.opencredo.couchdb.inbound;
 
 import org.opencredo.couchdb.core.ChangedDocument;
+import org.opencredo.couchdb.core.ChangesListener;
 import org.opencredo.couchdb.core.CouchDbChangesOperations;
 import org.opencredo.couchdb.core.CouchDbChangesTemplate;
+import org.opencredo.couchdb.core.SequenceCheckpointStore;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.messaging.Message;
 import org.springframework.integration.context.IntegrationObjectSupport;
 import org.springframework.integration.core.MessageSource;
-import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.Assert;
 
-import java.net.URI;
-import java.util.Collection;
 import java.util.Comparator;
 import java.util.Queue;
 import java.util.concurrent.PriorityBlockingQueue;
@@ -34,14 +36,25 @@ import java.util.concurrent.PriorityBlockingQueue;
  * A MessageSource that receives messages by polling a CouchDB database. The polling is performed through
  * a CouchDbChangesOperations, typically using the changes API.
  * </p>
+ * The payload of a message is the URI of the changed document, or the document itself if the changes are read with
+ * their documents. The URI, sequence and status of the change are set as headers, see CouchDbHeaders.
+ * </p>
  * Each poll returns and stores internally the list of changed documents since the last poll, which means that instances
  * of this class are stateful.
+ * </p>
+ * If a SequenceCheckpointStore is set, the source resumes from the stored sequence on startup. A message counts as
+ * processed once the next message is requested, and the sequence of processed messages is stored every
+ * checkpointInterval messages.
+ * </p>
+ * With a prefetch threshold, the next changes are polled on a thread of the TaskExecutor as soon as fewer changes
+ * than the threshold are left, instead of when the last change has been received.
  *
  * @author Tareq Abedrabbo
  * @author Tomas Lukosius
  * @since 24/01/2011
  */
-public class CouchDbChangesPollingMessageSource extends IntegrationObjectSupport implements MessageSource<URI> {
+public class CouchDbChangesPollingMessageSource extends IntegrationObjectSupport implements MessageSource<Object>,
+        DisposableBean {
 
 
     private static final int DEFAULT_INTERNAL_QUEUE_CAPACITY = 5;
@@ -50,6 +63,18 @@ public class CouchDbChangesPollingMessageSource extends IntegrationObjectSupport
 
     private final CouchDbChangesOperations couchDbChangesOperations;
 
+    private final ChangedDocumentMessageFactory messageFactory = new ChangedDocumentMessageFactory();
+
+    private SequenceCheckpointStore checkpointStore;
+
+    private int checkpointInterval = 1;
+
+    private SequenceCheckpointer checkpointer;
+
+    private Long receivedSequence;
+
+    private final Prefetcher prefetcher;
+
     /**
      * Creates an instance with a custom CouchDbChangesOperations.
      */
@@ -66,6 +91,11 @@ public class CouchDbChangesPollingMessageSource extends IntegrationObjectSupport
                         }
                     }
                 });
+        this.prefetcher = new Prefetcher(toBeReceived, new Runnable() {
+            public void run() {
+                pollForChanges();
+            }
+        });
     }
 
     /**
@@ -75,20 +105,90 @@ public class CouchDbChangesPollingMessageSource extends IntegrationObjectSupport
         this(new CouchDbChangesTemplate(databaseUrl));
     }
 
-    public Message<URI> receive() {
-        if (toBeReceived.isEmpty()) {
-            Collection<ChangedDocument> changedDocuments = couchDbChangesOperations.pollForChanges();
-            toBeReceived.addAll(changedDocuments);
+    @Override
+    protected void onInit() throws Exception {
+        super.onInit();
+        if (checkpointStore != null) {
+            checkpointer = new SequenceCheckpointer(checkpointStore, checkpointInterval);
+            checkpointer.restore(couchDbChangesOperations);
+        }
+    }
+
+    public void destroy() {
+        if (checkpointer != null) {
+            checkpointer.flush();
+        }
+    }
+
+    public Message<Object> receive() {
+        if (checkpointer != null && receivedSequence != null) {
+            checkpointer.acknowledge(receivedSequence);
+            receivedSequence = null;
         }
+        prefetcher.fetchIfEmpty();
 
         ChangedDocument changedDocument = toBeReceived.poll();
+        if (changedDocument != null) {
+            receivedSequence = changedDocument.getSequence();
+            prefetcher.prefetchIfLow();
+        }
         return prepareMessage(changedDocument);
     }
 
-    private Message<URI> prepareMessage(ChangedDocument changedDocument) {
-        Message<URI> message = null;
+    /**
+     * Sets the number of queued changes below which the next changes are polled in the background. Default is 0,
+     * which polls only once all changes have been received.
+     */
+    public void setPrefetchThreshold(int prefetchThreshold) {
+        prefetcher.setThreshold(prefetchThreshold);
+    }
+
+    /**
+     * Sets the TaskExecutor on which changes are prefetched.
+     */
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        prefetcher.setTaskExecutor(taskExecutor);
+    }
+
+    /**
+     * Sets the type to which the documents read along with the changes are mapped. By default the
+     * documents are sent as JsonNode.
+     */
+    public void setDocumentType(Class<?> documentType) {
+        messageFactory.setDocumentType(documentType);
+    }
+
+    /**
+     * Sets the store in which the sequence of processed changes is kept across restarts.
+     */
+    public void setCheckpointStore(SequenceCheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * Sets the number of processed messages after which the sequence is stored. Default is 1.
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        Assert.isTrue(checkpointInterval > 0, "checkpointInterval must be greater than zero");
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    private void pollForChanges() {
+        couchDbChangesOperations.pollForChanges(new ChangesListener() {
+            public void onChange(ChangedDocument changedDocument) {
+                toBeReceived.add(changedDocument);
+            }
+
+            public boolean isListening() {
+                return true;
+            }
+        });
+    }
+
+    private Message<Object> prepareMessage(ChangedDocument changedDocument) {
+        Message<Object> message = null;
         if (changedDocument != null) {
-            message = MessageBuilder.withPayload(changedDocument.getUri()).build();
+            message = messageFactory.createMessage(changedDocument);
         }
         return message;
     }
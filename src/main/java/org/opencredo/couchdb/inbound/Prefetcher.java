@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.inbound;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+
+/**
+ * Fills the internal queue of a polling message source. The queue is filled on the calling thread when it is empty
+ * and, once prefetching is enabled with a threshold, on a thread of the TaskExecutor as soon as fewer messages than
+ * the threshold are left, so that the next batch is usually queued before the current one has been received.
+ * <p/>
+ * At most one batch is requested at a time, whether in the background or on the calling thread.
+ *
+ * @since 18/10/2026
+ */
+class Prefetcher {
+
+    private static final Log logger = LogFactory.getLog(Prefetcher.class);
+
+    private final Queue<?> queue;
+
+    private final Runnable fetch;
+
+    private final Lock fetchLock = new ReentrantLock();
+
+    private final AtomicBoolean prefetching = new AtomicBoolean();
+
+    private TaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("couchdb-prefetch-");
+
+    private volatile int threshold = 0;
+
+    /**
+     * @param queue the queue which is filled
+     * @param fetch requests the next batch and adds it to the queue
+     */
+    Prefetcher(Queue<?> queue, Runnable fetch) {
+        Assert.notNull(queue, "queue cannot be null");
+        Assert.notNull(fetch, "fetch cannot be null");
+        this.queue = queue;
+        this.fetch = fetch;
+    }
+
+    void setTaskExecutor(TaskExecutor taskExecutor) {
+        Assert.notNull(taskExecutor, "taskExecutor cannot be null");
+        this.taskExecutor = taskExecutor;
+    }
+
+    void setThreshold(int threshold) {
+        Assert.isTrue(threshold >= 0, "threshold cannot be negative");
+        this.threshold = threshold;
+    }
+
+    /**
+     * Requests the next batch on the calling thread if the queue is empty, first waiting for a batch which is
+     * being prefetched.
+     */
+    void fetchIfEmpty() {
+        if (!queue.isEmpty()) {
+            return;
+        }
+        fetchLock.lock();
+        try {
+            if (queue.isEmpty()) {
+                fetch.run();
+            }
+        } finally {
+            fetchLock.unlock();
+        }
+    }
+
+    /**
+     * Requests the next batch in the background if fewer messages than the threshold are queued and no batch is
+     * being requested already.
+     */
+    void prefetchIfLow() {
+        if (queue.size() >= threshold || !prefetching.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            taskExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        prefetch();
+                    } finally {
+                        prefetching.set(false);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            prefetching.set(false);
+            logger.warn("failed to schedule the prefetch of the next batch", e);
+        }
+    }
+
+    private void prefetch() {
+        fetchLock.lock();
+        try {
+            if (queue.size() < threshold) {
+                fetch.run();
+            }
+        } catch (RuntimeException e) {
+            // the next batch is then requested by the next receive() which finds the queue empty
+            logger.warn("failed to prefetch the next batch", e);
+        } finally {
+            fetchLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.inbound;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opencredo.couchdb.core.CouchDbChangesOperations;
+import org.opencredo.couchdb.core.SequenceCheckpointStore;
+import org.springframework.util.Assert;
+
+/**
+ * Tracks the sequence of acknowledged changes on behalf of a changes consumer and writes it to a
+ * SequenceCheckpointStore every checkpointInterval acknowledgements.
+ *
+ * @since 18/10/2026
+ */
+class SequenceCheckpointer {
+
+    private static final Log logger = LogFactory.getLog(SequenceCheckpointer.class);
+
+    private final SequenceCheckpointStore checkpointStore;
+
+    private final int checkpointInterval;
+
+    private int uncheckpointed = 0;
+
+    private Long acknowledgedSequence;
+
+    SequenceCheckpointer(SequenceCheckpointStore checkpointStore, int checkpointInterval) {
+        Assert.notNull(checkpointStore, "checkpointStore cannot be null");
+        Assert.isTrue(checkpointInterval > 0, "checkpointInterval must be greater than zero");
+        this.checkpointStore = checkpointStore;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Moves the changes operations to the stored sequence, if any.
+     */
+    void restore(CouchDbChangesOperations changesOperations) {
+        Long sequence = checkpointStore.readSequence();
+        if (sequence != null) {
+            if (logger.isInfoEnabled()) {
+                logger.info("resuming changes from checkpoint " + sequence);
+            }
+            changesOperations.setCurrentSequence(sequence);
+        }
+    }
+
+    /**
+     * Records that the change with the given sequence has been processed.
+     */
+    synchronized void acknowledge(long sequence) {
+        acknowledgedSequence = sequence;
+        if (++uncheckpointed >= checkpointInterval) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the last acknowledged sequence, if it has not been written yet.
+     */
+    synchronized void flush() {
+        if (uncheckpointed == 0 || acknowledgedSequence == null) {
+            return;
+        }
+        try {
+            checkpointStore.writeSequence(acknowledgedSequence);
+            uncheckpointed = 0;
+        } catch (RuntimeException e) {
+            // the checkpoint is written again with the next acknowledgement
+            logger.warn("failed to write checkpoint " + acknowledgedSequence, e);
+        }
+    }
+}
@@ -16,9 +16,22 @@
 
 package org.opencredo.couchdb.outbound;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import org.opencredo.couchdb.core.BulkWriteResult;
+import org.opencredo.couchdb.core.CouchDbAsyncDocumentOperations;
+import org.opencredo.couchdb.core.CouchDbAsyncDocumentTemplate;
 import org.opencredo.couchdb.core.CouchDbDocumentOperations;
 import org.opencredo.couchdb.core.CouchDbDocumentTemplate;
+import org.opencredo.couchdb.core.CouchDbOperationException;
+import org.opencredo.couchdb.core.JsonDocuments;
+import org.opencredo.couchdb.core.RawDocument;
 import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.expression.BeanFactoryResolver;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.expression.Expression;
@@ -27,9 +40,14 @@ import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.expression.spel.support.StandardTypeConverter;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.integration.handler.AbstractMessageHandler;
 import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFutureCallback;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.prime.common.statistics.Counter;
 
 /**
@@ -37,19 +55,49 @@ import com.prime.common.statistics.Counter;
  * </p>
  * The id of the created documents is by default that of the Spring Integration message,
  * but this can be customized using a SpeL expression.
+ * </p>
+ * When the batch size is greater than one, messages are accumulated and written with a single
+ * request to the bulk documents API once the batch is full or the batch timeout has elapsed.
+ * Documents that CouchDB fails to write (e.g. because of a conflict) are reported per message
+ * to the failure channel, which is therefore required for batches. Every message of a batch is mapped to
+ * a JSON object before the batch is written, so that a message which is not a valid document is reported
+ * on its own without failing the rest of the batch. Batches also need a database URL without template
+ * variables.
+ * </p>
+ * If a CouchDbAsyncDocumentOperations is set, documents and batches are written without blocking the
+ * sending thread, so that many writes can be in flight at the same time. Failed writes are then always
+ * reported to the failure channel, or logged.
+ * </p>
+ * In raw mode, byte[], ByteBuffer and InputStream payloads are taken to be the JSON of the document and are copied
+ * to the request without being mapped.
  *
  * @author Tareq Abedrabbo
  * @since 11/01/2011
  */
-public class CouchDbSendingMessageHandler extends AbstractMessageHandler {
+public class CouchDbSendingMessageHandler extends AbstractMessageHandler implements DisposableBean {
 
     private static final ExpressionParser expressionParser = new SpelExpressionParser();
 
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final long DEFAULT_BATCH_TIMEOUT = 1000L;
+
     private final CouchDbDocumentOperations couchDbDocumentOperations;
     private final StandardEvaluationContext evaluationContext = new StandardEvaluationContext();
     private Expression documentIdExpression;
     private Counter counter;
 
+    private int batchSize = 1;
+    private long batchTimeout = DEFAULT_BATCH_TIMEOUT;
+    private MessageChannel failureChannel;
+    private CouchDbAsyncDocumentOperations asyncDocumentOperations;
+    private CouchDbWriteMetrics writeMetrics = new CouchDbWriteMetrics();
+    private boolean raw = false;
+
+    private final Object batchMonitor = new Object();
+    private Map<String, Message<?>> batch = new LinkedHashMap<String, Message<?>>();
+    private long batchStarted;
+    private volatile ScheduledFuture<?> batchFlushTask;
 
     /**
      * Creates an instance with a custom CouchDbDocumentOperations.
@@ -83,18 +131,230 @@ public class CouchDbSendingMessageHandler extends AbstractMessageHandler {
         if (conversionService != null) {
             this.evaluationContext.setTypeConverter(new StandardTypeConverter(conversionService));
         }
+        Assert.state(batchSize == 1 || failureChannel != null,
+                "a failureChannel is required when batchSize is greater than one");
+        Assert.state(batchSize == 1 || isBulkWriteSupported(),
+                "a database URL without template variables is required when batchSize is greater than one");
+        if (batchSize > 1 && batchTimeout > 0) {
+            batchFlushTask = getTaskScheduler().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    flushExpiredBatch();
+                }
+            }, Math.max(batchTimeout / 2, 1));
+        }
+    }
+
+    public void destroy() {
+        if (batchFlushTask != null) {
+            batchFlushTask.cancel(false);
+        }
+        flush();
     }
 
 
     @Override
     protected final void handleMessageInternal(Message<?> message) throws Exception {
-    	System.out.println(message.getHeaders().toString());
-    	System.out.println(message.getPayload().toString());
         String documentId = createDocumentId(message);
+        if (logger.isTraceEnabled()) {
+            logger.trace("sending message to CouchDB [" + message + "]");
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("sending message [" + message.getHeaders().getId() + "] to CouchDB");
+        }
+        writeMetrics.recordPayload(message.getPayload());
+        if (batchSize > 1) {
+            addToBatch(documentId, message);
+        } else if (asyncDocumentOperations != null) {
+            writeAsync(documentId, message);
+        } else {
+            long started = System.nanoTime();
+            try {
+                couchDbDocumentOperations.writeDocument(documentId, createDocument(message), message.getHeaders(), counter);
+            } catch (RuntimeException e) {
+                writeMetrics.recordLatency(System.nanoTime() - started);
+                writeMetrics.recordFailure(e);
+                throw e;
+            }
+            writeMetrics.recordLatency(System.nanoTime() - started);
+            writeMetrics.recordSuccess(1);
+        }
+    }
+
+    private void writeAsync(String documentId, final Message<?> message) {
+        final long started = System.nanoTime();
+        asyncDocumentOperations.writeDocument(documentId, createDocument(message), message.getHeaders())
+                .addCallback(new ListenableFutureCallback<Object>() {
+                    public void onSuccess(Object result) {
+                        writeMetrics.recordLatency(System.nanoTime() - started);
+                        writeMetrics.recordSuccess(1);
+                    }
+
+                    public void onFailure(Throwable cause) {
+                        writeMetrics.recordLatency(System.nanoTime() - started);
+                        writeMetrics.recordFailure(cause);
+                        handleFailure(message, cause);
+                    }
+                });
+    }
+
+    /**
+     * Writes all the messages of the current batch to CouchDB.
+     */
+    public void flush() {
+        Map<String, Message<?>> messages;
+        synchronized (batchMonitor) {
+            messages = takeBatch();
+        }
+        writeBatch(messages);
+    }
+
+    private void addToBatch(String documentId, Message<?> message) {
+        Map<String, Message<?>> fullBatch = null;
+        synchronized (batchMonitor) {
+            if (batch.containsKey(documentId)) {
+                // the same document can only be written once per bulk request
+                fullBatch = takeBatch();
+            }
+            if (batch.isEmpty()) {
+                batchStarted = System.currentTimeMillis();
+            }
+            batch.put(documentId, message);
+            if (fullBatch == null && batch.size() >= batchSize) {
+                fullBatch = takeBatch();
+            }
+        }
+        writeBatch(fullBatch);
+    }
+
+    private void flushExpiredBatch() {
+        Map<String, Message<?>> expiredBatch = null;
+        synchronized (batchMonitor) {
+            if (!batch.isEmpty() && System.currentTimeMillis() - batchStarted >= batchTimeout) {
+                expiredBatch = takeBatch();
+            }
+        }
+        writeBatch(expiredBatch);
+    }
+
+    private Map<String, Message<?>> takeBatch() {
+        Map<String, Message<?>> taken = batch;
+        batch = new LinkedHashMap<String, Message<?>>();
+        return taken;
+    }
+
+    private void writeBatch(final Map<String, Message<?>> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        Map<String, Object> documents = new LinkedHashMap<String, Object>();
+        Iterator<Map.Entry<String, Message<?>>> entries = messages.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Message<?>> entry = entries.next();
+            try {
+                documents.put(entry.getKey(),
+                        JsonDocuments.createObjectNode(objectMapper, createDocument(entry.getValue())));
+            } catch (RuntimeException e) {
+                // a malformed document would fail the whole bulk request
+                entries.remove();
+                writeMetrics.recordFailure(e);
+                handleFailure(entry.getValue(), e);
+            }
+        }
+        if (documents.isEmpty()) {
+            return;
+        }
         if (logger.isDebugEnabled()) {
-            logger.debug("sending message to CouchDB [" + message + "]");
+            logger.debug("sending batch of " + documents.size() + " documents to CouchDB");
+        }
+
+        final long started = System.nanoTime();
+        if (asyncDocumentOperations != null) {
+            try {
+                asyncDocumentOperations.writeDocuments(documents).addCallback(
+                        new ListenableFutureCallback<List<BulkWriteResult>>() {
+                            public void onSuccess(List<BulkWriteResult> results) {
+                                writeMetrics.recordLatency(System.nanoTime() - started);
+                                handleResults(messages, results);
+                            }
+
+                            public void onFailure(Throwable cause) {
+                                writeMetrics.recordLatency(System.nanoTime() - started);
+                                handleFailure(messages, cause);
+                            }
+                        });
+            } catch (RuntimeException e) {
+                handleFailure(messages, e);
+            }
+            return;
         }
-        couchDbDocumentOperations.writeDocument(documentId, message.getPayload(), message.getHeaders(),counter);
+
+        List<BulkWriteResult> results;
+        try {
+            results = couchDbDocumentOperations.writeDocuments(documents);
+        } catch (RuntimeException e) {
+            writeMetrics.recordLatency(System.nanoTime() - started);
+            handleFailure(messages, e);
+            return;
+        }
+        writeMetrics.recordLatency(System.nanoTime() - started);
+        handleResults(messages, results);
+    }
+
+    private boolean isBulkWriteSupported() {
+        if (asyncDocumentOperations instanceof CouchDbAsyncDocumentTemplate) {
+            return ((CouchDbAsyncDocumentTemplate) asyncDocumentOperations).isBulkWriteSupported();
+        }
+        if (asyncDocumentOperations == null && couchDbDocumentOperations instanceof CouchDbDocumentTemplate) {
+            return ((CouchDbDocumentTemplate) couchDbDocumentOperations).isBulkWriteSupported();
+        }
+        // custom operations are trusted to support bulk writes
+        return true;
+    }
+
+    private void handleResults(Map<String, Message<?>> messages, List<BulkWriteResult> results) {
+        Map<String, Message<?>> unanswered = new LinkedHashMap<String, Message<?>>(messages);
+        int written = 0;
+        for (BulkWriteResult result : results) {
+            Message<?> message = unanswered.remove(result.getId());
+            if (message == null) {
+                logger.warn("CouchDB returned a result for document [" + result.getId() + "] which was not written");
+            } else if (result.isSuccess()) {
+                written++;
+            } else {
+                writeMetrics.recordFailure(result);
+                handleFailure(message, new CouchDbOperationException("CouchDB failed to write document [" +
+                        result.getId() + "]: " + result.getError() + " (" + result.getReason() + ")"));
+            }
+        }
+        writeMetrics.recordSuccess(written);
+        // documents without a result may or may not have been written
+        if (!unanswered.isEmpty()) {
+            handleFailure(unanswered, new CouchDbOperationException("CouchDB returned no result for the document"));
+        }
+    }
+
+    private void handleFailure(Map<String, Message<?>> messages, Throwable cause) {
+        for (Message<?> message : messages.values()) {
+            writeMetrics.recordFailure(cause);
+            handleFailure(message, cause);
+        }
+    }
+
+    private void handleFailure(Message<?> message, Throwable cause) {
+        MessageHandlingException exception = new MessageHandlingException(message,
+                "unable to write message to CouchDB", cause);
+        if (failureChannel != null) {
+            failureChannel.send(new ErrorMessage(exception));
+        } else {
+            logger.error("unable to write message to CouchDB [" + message + "]", cause);
+        }
+    }
+
+    private Object createDocument(Message<?> message) {
+        Object payload = message.getPayload();
+        if (raw && RawDocument.isRawContent(payload)) {
+            return new RawDocument(payload);
+        }
+        return payload;
     }
 
     private String createDocumentId(Message<?> message) {
@@ -104,8 +364,8 @@ public class CouchDbSendingMessageHandler extends AbstractMessageHandler {
         } else {
             documentId = documentIdExpression.getValue(evaluationContext, message, String.class);
         }
-        if (logger.isDebugEnabled()) {
-            logger.debug("created document id [" +  documentId + "]");
+        if (logger.isTraceEnabled()) {
+            logger.trace("created document id [" +  documentId + "]");
         }
         return documentId;
     }
@@ -121,4 +381,58 @@ public class CouchDbSendingMessageHandler extends AbstractMessageHandler {
 	public void setCounter(Counter counter) {
 		this.counter = counter;
 	}
+
+    /**
+     * Sets the number of messages written to CouchDB with a single bulk request.
+     * Defaults to 1, which writes every message with its own request.
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than zero");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds a message waits in an incomplete batch
+     * before the batch is written. A value of zero or less disables the timeout.
+     */
+    public void setBatchTimeout(long batchTimeout) {
+        this.batchTimeout = batchTimeout;
+    }
+
+    /**
+     * Sets the operations used to write documents without blocking. If set, they are used
+     * instead of the CouchDbDocumentOperations given in the constructor.
+     */
+    public void setAsyncDocumentOperations(CouchDbAsyncDocumentOperations asyncDocumentOperations) {
+        this.asyncDocumentOperations = asyncDocumentOperations;
+    }
+
+    /**
+     * Sets the metrics in which the outcomes and latencies of writes are recorded, e.g. to share them between
+     * handlers or to export them to JMX. By default every handler has its own.
+     */
+    public void setWriteMetrics(CouchDbWriteMetrics writeMetrics) {
+        Assert.notNull(writeMetrics, "writeMetrics cannot be null");
+        this.writeMetrics = writeMetrics;
+    }
+
+    public CouchDbWriteMetrics getWriteMetrics() {
+        return writeMetrics;
+    }
+
+    /**
+     * Sets whether byte[], ByteBuffer and InputStream payloads are written to CouchDB as they are, as the JSON
+     * of the document, instead of being converted. Other payloads are written as usual. Default is false.
+     */
+    public void setRaw(boolean raw) {
+        this.raw = raw;
+    }
+
+    /**
+     * Sets the channel to which messages that could not be written in a batch, or asynchronously,
+     * are sent wrapped in an ErrorMessage. Required when the batch size is greater than one.
+     */
+    public void setFailureChannel(MessageChannel failureChannel) {
+        this.failureChannel = failureChannel;
+    }
 }
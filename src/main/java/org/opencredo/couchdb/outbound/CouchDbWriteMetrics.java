@@ -0,0 +1,259 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.outbound;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.opencredo.couchdb.core.BulkWriteResult;
+import org.opencredo.couchdb.core.CouchDbOperationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Counts the outcomes, latencies and payload sizes of the writes of a CouchDbSendingMessageHandler. All
+ * counters are lock free, so that recording does not serialize the writing threads.
+ * </p>
+ * Outcomes are counted per document, latencies per request to CouchDB, i.e. once per batch for bulk writes.
+ * Payload bytes are counted for byte[] and String payloads only; other payloads are serialized by the
+ * template and their size is not known to the handler.
+ * </p>
+ * The attributes are exported to JMX when this class is registered as a bean along with an annotation
+ * based MBeanExporter, e.g. &lt;context:mbean-export/&gt;.
+ *
+ * @since 18/10/2026
+ */
+@ManagedResource(description = "CouchDB write metrics")
+public class CouchDbWriteMetrics {
+
+    private static final long[] LATENCY_BUCKETS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final AtomicLong successes = new AtomicLong();
+
+    private final AtomicLong conflicts = new AtomicLong();
+
+    private final AtomicLong clientErrors = new AtomicLong();
+
+    private final AtomicLong serverErrors = new AtomicLong();
+
+    private final AtomicLong ioFailures = new AtomicLong();
+
+    private final AtomicLong otherFailures = new AtomicLong();
+
+    private final AtomicLong payloadBytes = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+    /**
+     * Records the given number of documents as written.
+     */
+    public void recordSuccess(int documents) {
+        successes.addAndGet(documents);
+    }
+
+    /**
+     * Records a document that could not be written because of the given exception.
+     */
+    public void recordFailure(Throwable cause) {
+        HttpStatus statusCode = null;
+        if (cause instanceof CouchDbOperationException) {
+            statusCode = ((CouchDbOperationException) cause).getStatusCode();
+        }
+        if (statusCode != null) {
+            recordStatus(statusCode);
+        } else if (isIoFailure(cause)) {
+            ioFailures.incrementAndGet();
+        } else {
+            otherFailures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a document that CouchDB rejected in a bulk write.
+     */
+    public void recordFailure(BulkWriteResult result) {
+        if (result.isConflict()) {
+            conflicts.incrementAndGet();
+        } else {
+            // CouchDB reports validation and authorization failures per document
+            clientErrors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the duration of a request to CouchDB.
+     */
+    public void recordLatency(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        requests.incrementAndGet();
+        totalLatency.addAndGet(millis);
+        long max = maxLatency.get();
+        while (millis > max && !maxLatency.compareAndSet(max, millis)) {
+            max = maxLatency.get();
+        }
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        latencyHistogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Adds the size of the payload to the written bytes, if it is known without serializing the payload.
+     */
+    public void recordPayload(Object payload) {
+        if (payload instanceof byte[]) {
+            payloadBytes.addAndGet(((byte[]) payload).length);
+        } else if (payload instanceof String) {
+            payloadBytes.addAndGet(utf8Length((String) payload));
+        }
+    }
+
+    @ManagedAttribute(description = "Documents written")
+    public long getSuccessCount() {
+        return successes.get();
+    }
+
+    @ManagedAttribute(description = "Documents rejected because of a revision conflict (409)")
+    public long getConflictCount() {
+        return conflicts.get();
+    }
+
+    @ManagedAttribute(description = "Documents rejected with any other client error (4xx)")
+    public long getClientErrorCount() {
+        return clientErrors.get();
+    }
+
+    @ManagedAttribute(description = "Documents rejected with a server error (5xx)")
+    public long getServerErrorCount() {
+        return serverErrors.get();
+    }
+
+    @ManagedAttribute(description = "Documents not written because CouchDB could not be reached")
+    public long getIoFailureCount() {
+        return ioFailures.get();
+    }
+
+    @ManagedAttribute(description = "Documents not written for any other reason, e.g. mapping errors")
+    public long getOtherFailureCount() {
+        return otherFailures.get();
+    }
+
+    @ManagedAttribute(description = "Bytes of byte[] and String payloads written")
+    public long getPayloadBytes() {
+        return payloadBytes.get();
+    }
+
+    @ManagedAttribute(description = "Requests sent to CouchDB")
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @ManagedAttribute(description = "Mean request latency in milliseconds")
+    public double getMeanLatency() {
+        long count = requests.get();
+        return count == 0 ? 0 : (double) totalLatency.get() / count;
+    }
+
+    @ManagedAttribute(description = "Maximum request latency in milliseconds")
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    /**
+     * Returns the number of requests per latency bucket, keyed by the upper bound of the bucket in milliseconds.
+     */
+    @ManagedAttribute(description = "Request latencies in milliseconds, by upper bound of the bucket")
+    public Map<String, Long> getLatencyHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            histogram.put("<=" + LATENCY_BUCKETS[i], latencyHistogram.get(i));
+        }
+        histogram.put(">" + LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1], latencyHistogram.get(LATENCY_BUCKETS.length));
+        return histogram;
+    }
+
+    @ManagedOperation(description = "Resets all counters")
+    public void reset() {
+        successes.set(0);
+        conflicts.set(0);
+        clientErrors.set(0);
+        serverErrors.set(0);
+        ioFailures.set(0);
+        otherFailures.set(0);
+        payloadBytes.set(0);
+        requests.set(0);
+        totalLatency.set(0);
+        maxLatency.set(0);
+        for (int i = 0; i < latencyHistogram.length(); i++) {
+            latencyHistogram.set(i, 0);
+        }
+    }
+
+    private void recordStatus(HttpStatus statusCode) {
+        if (statusCode == HttpStatus.CONFLICT) {
+            conflicts.incrementAndGet();
+        } else if (statusCode.is5xxServerError()) {
+            serverErrors.incrementAndGet();
+        } else {
+            clientErrors.incrementAndGet();
+        }
+    }
+
+    private static boolean isIoFailure(Throwable cause) {
+        while (cause != null) {
+            if (cause instanceof ResourceAccessException ||
+                    (cause instanceof IOException && !(cause instanceof JsonProcessingException))) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    private static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -23,6 +23,9 @@ import org.springframework.integration.transformer.AbstractTransformer;
 import org.springframework.integration.transformer.MessageTransformationException;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -31,6 +34,11 @@ import java.util.UUID;
  * The payload of the message is expected to contain the id of the message to read.
  * </p>
  * Once the document read, it is mapped to the Java class specified as documentType in the constructor.
+ * </p>
+ * If the payload is a collection of ids, e.g. the output of an aggregator, all documents are read with a single
+ * request and the payload is transformed into the list of documents in the same order. A splitter can then turn
+ * the list back into one message per document. As for a single id, the transformation fails if any of the documents
+ * is missing or deleted, so that the list never contains null.
  *
  * @author Tareq Abedrabbo
  * @since 21/01/2011
@@ -66,17 +74,36 @@ public class CouchDbIdToDocumentTransformer extends AbstractTransformer {
     @Override
     protected Object doTransform(Message<?> message) throws Exception {
         Object payload = message.getPayload();
-        String id = null;
+        if (payload instanceof Collection) {
+            List<String> ids = new ArrayList<String>();
+            for (Object element : (Collection<?>) payload) {
+                ids.add(toId(message, element));
+            }
+            List<?> documents = couchDbDocumentOperations.readDocuments(ids, documentType);
+            List<String> missingIds = new ArrayList<String>();
+            for (int i = 0; i < documents.size(); i++) {
+                if (documents.get(i) == null) {
+                    missingIds.add(ids.get(i));
+                }
+            }
+            if (!missingIds.isEmpty()) {
+                throw new MessageTransformationException(message, "documents not found: " + missingIds);
+            }
+            return documents;
+        }
+
+        return couchDbDocumentOperations.readDocument(toId(message, payload), documentType);
+    }
+
+    private String toId(Message<?> message, Object payload) {
         if (payload instanceof String) {
-            id = (String) payload;
+            return (String) payload;
         } else if (payload instanceof UUID) {
-            id = payload.toString();
+            return payload.toString();
         } else {
             throw new MessageTransformationException(message, "Cannot transform payload ["
                     + payload + "] to a CouchDB document");
         }
-
-        return couchDbDocumentOperations.readDocument(id, documentType);
     }
 
 }
@@ -24,6 +24,14 @@ import org.springframework.integration.transformer.MessageTransformationExceptio
 import org.springframework.util.Assert;
 
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A message transformer that reads a CouchDB document from the database.
@@ -31,6 +39,11 @@ import java.net.URI;
  * The payload of the message is expected to contain the full URI of the message to read.
  * </p>
  * Once the document read, it is mapped to the Java class specified as documentType in the constructor.
+ * </p>
+ * If the payload is a collection of URIs, e.g. the output of an aggregator, the documents of each database are read
+ * with a single request and the payload is transformed into the list of documents in the same order. A splitter can
+ * then turn the list back into one message per document. As for a single URI, the transformation fails if any of the
+ * documents is missing or deleted, so that the list never contains null.
  *
  * @author Tareq Abedrabbo
  * @since 01/02/2011
@@ -66,16 +79,69 @@ public class CouchDbUrlToDocumentTransformer extends AbstractTransformer {
     @Override
     protected Object doTransform(Message<?> message) throws Exception {
         Object payload = message.getPayload();
-        URI uri = null;
+        if (payload instanceof Collection) {
+            return readDocuments(message, (Collection<?>) payload);
+        }
+
+        return couchDbDocumentOperations.readDocument(toUri(message, payload), documentType);
+    }
+
+    private List<Object> readDocuments(Message<?> message, Collection<?> payload) throws Exception {
+        // group the positions of the documents by database, keeping the order of first appearance
+        Map<String, List<Integer>> positionsByDatabase = new LinkedHashMap<String, List<Integer>>();
+        Map<String, List<String>> idsByDatabase = new HashMap<String, List<String>>();
+        int position = 0;
+        for (Object element : payload) {
+            String uri = toUri(message, element).toString();
+            int separator = uri.lastIndexOf('/');
+            if (separator <= 0 || separator == uri.length() - 1) {
+                throw new MessageTransformationException(message, "Cannot find document id in [" + uri + "]");
+            }
+            String database = uri.substring(0, separator);
+            if (!positionsByDatabase.containsKey(database)) {
+                positionsByDatabase.put(database, new ArrayList<Integer>());
+                idsByDatabase.put(database, new ArrayList<String>());
+            }
+            positionsByDatabase.get(database).add(position++);
+            idsByDatabase.get(database).add(decodePathSegment(uri.substring(separator + 1)));
+        }
+
+        Object[] documents = new Object[position];
+        List<String> missingIds = new ArrayList<String>();
+        for (Map.Entry<String, List<Integer>> entry : positionsByDatabase.entrySet()) {
+            List<String> ids = idsByDatabase.get(entry.getKey());
+            List<?> databaseDocuments = couchDbDocumentOperations.readDocuments(new URI(entry.getKey()), ids,
+                    documentType);
+            List<Integer> positions = entry.getValue();
+            for (int i = 0; i < positions.size(); i++) {
+                Object document = databaseDocuments.get(i);
+                if (document == null) {
+                    missingIds.add(entry.getKey() + "/" + ids.get(i));
+                }
+                documents[positions.get(i)] = document;
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            throw new MessageTransformationException(message, "documents not found: " + missingIds);
+        }
+        return Arrays.asList(documents);
+    }
+
+    /**
+     * Decodes a path segment of a URI. Unlike form decoding, a '+' stays a '+'.
+     */
+    private static String decodePathSegment(String segment) throws URISyntaxException {
+        return new URI("/" + segment).getPath().substring(1);
+    }
+
+    private URI toUri(Message<?> message, Object payload) throws URISyntaxException {
         if (payload instanceof String) {
-            uri = new URI((String) payload);
+            return new URI((String) payload);
         } else if (payload instanceof URI) {
-            uri = (URI) payload;
+            return (URI) payload;
         } else {
             throw new MessageTransformationException(message, "Cannot transform payload ["
                     + payload + "] to a CouchDB document");
         }
-
-        return couchDbDocumentOperations.readDocument(uri, documentType);
     }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.net.URI;
+
+import org.apache.http.HttpHost;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @since 18/10/2026
+ */
+public class BasicAuthRequestFactoryTest {
+
+    private final BasicAuthRequestFactory requestFactory = new BasicAuthRequestFactory(HttpClients.createDefault(),
+            new HttpHost("couchdb.example.com", 80, "http"), "admin", "secret");
+
+    @Test
+    public void sendCredentialsPreemptively() throws Exception {
+        ClientHttpRequest request = requestFactory.createRequest(
+                new URI("http://couchdb.example.com/database/a"), HttpMethod.GET);
+        assertThat(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION), equalTo("Basic YWRtaW46c2VjcmV0"));
+    }
+
+    @Test
+    public void sendNoCredentialsToOtherHosts() throws Exception {
+        ClientHttpRequest request = requestFactory.createRequest(
+                new URI("http://couchdb.example.com:5984/database/a"), HttpMethod.GET);
+        assertThat(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION), is(nullValue()));
+        request = requestFactory.createRequest(new URI("http://example.com/database/a"), HttpMethod.GET);
+        assertThat(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION), is(nullValue()));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @since 18/10/2026
+ */
+public class ConnectionPoolSupportTest {
+
+    private ConnectionKeepAliveStrategy keepAliveStrategy;
+
+    @Before
+    public void setUp() throws Exception {
+        ConnectionSettings connectionSettings = new ConnectionSettings();
+        connectionSettings.setKeepAlive(30000L);
+        keepAliveStrategy = ConnectionPoolSupport.createKeepAliveStrategy(connectionSettings);
+    }
+
+    @Test
+    public void keepAliveFromServer() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader("Keep-Alive", "timeout=5");
+        assertThat(keepAliveStrategy.getKeepAliveDuration(response, new BasicHttpContext()), is(5000L));
+    }
+
+    @Test
+    public void defaultKeepAlive() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        assertThat(keepAliveStrategy.getKeepAliveDuration(response, new BasicHttpContext()), is(30000L));
+    }
+}
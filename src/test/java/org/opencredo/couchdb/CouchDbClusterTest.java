@@ -0,0 +1,242 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs requests against a cluster of stub CouchDB nodes.
+ *
+ * @since 18/10/2026
+ */
+public class CouchDbClusterTest {
+
+    private StubNode node1;
+
+    private StubNode node2;
+
+    private CouchDbConnectionFactory connectionFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        node1 = new StubNode();
+        node2 = new StubNode();
+        ConnectionSettings connectionSettings = new ConnectionSettings();
+        connectionSettings.setClusterNodes(node1.getUrl(), node2.getUrl());
+        connectionSettings.setHealthCheckInterval(0L);
+        connectionFactory = new CouchDbConnectionFactory(connectionSettings);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connectionFactory.destroy();
+        node1.stop();
+        node2.stop();
+    }
+
+    @Test
+    public void spreadRequestsAcrossNodes() throws Exception {
+        BasicAuthRestTemplate restTemplate = createRestTemplate();
+        for (int i = 0; i < 4; i++) {
+            assertThat(restTemplate.getForObject(getDatabaseUrl() + "a", String.class), equalTo("{\"ok\":true}"));
+        }
+
+        assertThat(node1.requests.get(), is(2));
+        assertThat(node2.requests.get(), is(2));
+        assertThat(node1.authorizedRequests.get(), is(2));
+        assertThat(node2.authorizedRequests.get(), is(2));
+    }
+
+    @Test
+    public void failOverToAvailableNode() throws Exception {
+        node2.stop();
+        BasicAuthRestTemplate restTemplate = createRestTemplate();
+        for (int i = 0; i < 4; i++) {
+            assertThat(restTemplate.getForObject(getDatabaseUrl() + "a", String.class), equalTo("{\"ok\":true}"));
+        }
+        restTemplate.postForObject(getDatabaseUrl(), "{}", String.class);
+
+        assertThat(node1.requests.get(), is(5));
+        CouchDbCluster cluster = connectionFactory.getCluster();
+        assertThat(cluster.getNodes().get(0).isAvailable(), is(true));
+        assertThat(cluster.getNodes().get(1).isAvailable(), is(false));
+        assertThat(cluster.getNodes().get(1).getOutstandingRequests(), is(0));
+    }
+
+    @Test
+    public void logInThroughAvailableNode() throws Exception {
+        ConnectionSettings connectionSettings = new ConnectionSettings();
+        connectionSettings.setClusterNodes(node1.getUrl(), node2.getUrl());
+        connectionSettings.setHealthCheckInterval(0L);
+        connectionSettings.setSessionAuthentication(true);
+        CouchDbConnectionFactory sessionConnectionFactory = new CouchDbConnectionFactory(connectionSettings);
+        try {
+            node1.stop();
+            BasicAuthRestTemplate restTemplate = new BasicAuthRestTemplate(
+                    getDatabaseUrl().replace("http://", "http://admin:secret@"), sessionConnectionFactory);
+
+            assertThat(restTemplate.getForObject(getDatabaseUrl() + "a", String.class), equalTo("{\"ok\":true}"));
+            assertThat(node2.logins.get(), is(1));
+            assertThat(node2.authorizedRequests.get(), is(1));
+        } finally {
+            sessionConnectionFactory.destroy();
+        }
+    }
+
+    @Test
+    public void failOverPostWhenConnectTimesOut() throws Exception {
+        CouchDbCluster cluster = new CouchDbCluster(Arrays.asList(node1.getUrl(), node2.getUrl()),
+                CouchDbCluster.LoadBalancing.ROUND_ROBIN);
+        ClientHttpRequest timedOut = createRequest();
+        when(timedOut.execute()).thenThrow(new ConnectTimeoutException("connect timed out"));
+        ClientHttpRequest sent = createRequest();
+        ClientHttpResponse response = mock(ClientHttpResponse.class);
+        when(sent.execute()).thenReturn(response);
+        ClientHttpRequestFactory requestFactory = mock(ClientHttpRequestFactory.class);
+        when(requestFactory.createRequest(URI.create(node1.getUrl() + "/database/"), HttpMethod.POST))
+                .thenReturn(timedOut);
+        when(requestFactory.createRequest(URI.create(node2.getUrl() + "/database/"), HttpMethod.POST))
+                .thenReturn(sent);
+
+        new ClusterRequestFactory(requestFactory, cluster, false)
+                .createRequest(URI.create(getDatabaseUrl()), HttpMethod.POST).execute();
+
+        verify(sent).execute();
+        assertThat(cluster.getNodes().get(0).isAvailable(), is(false));
+    }
+
+    @Test
+    public void restoreNodeAfterHealthCheck() throws Exception {
+        CouchDbCluster cluster = connectionFactory.getCluster();
+        node2.status = 503;
+        cluster.checkHealth(connectionFactory.getHttpClient(), 1000);
+        assertThat(cluster.getNodes().get(1).isAvailable(), is(false));
+
+        node2.status = 200;
+        cluster.checkHealth(connectionFactory.getHttpClient(), 1000);
+        assertThat(cluster.getNodes().get(1).isAvailable(), is(true));
+    }
+
+    @Test
+    public void selectNodeWithLeastOutstandingRequests() throws Exception {
+        CouchDbCluster cluster = new CouchDbCluster(Arrays.asList(node1.getUrl(), node2.getUrl()),
+                CouchDbCluster.LoadBalancing.LEAST_OUTSTANDING_REQUESTS);
+        CouchDbCluster.Node busyNode = cluster.getNodes().get(0);
+        CouchDbCluster.Node idleNode = cluster.getNodes().get(1);
+        busyNode.requestStarted();
+
+        for (int i = 0; i < 2; i++) {
+            List<CouchDbCluster.Node> nodes = cluster.selectNodes();
+            assertThat(nodes.get(0), sameInstance(idleNode));
+            assertThat(nodes.get(1), sameInstance(busyNode));
+        }
+    }
+
+    private ClientHttpRequest createRequest() throws IOException {
+        ClientHttpRequest request = mock(ClientHttpRequest.class);
+        when(request.getHeaders()).thenReturn(new HttpHeaders());
+        when(request.getBody()).thenReturn(new ByteArrayOutputStream());
+        return request;
+    }
+
+    private BasicAuthRestTemplate createRestTemplate() {
+        return new BasicAuthRestTemplate(getDatabaseUrl().replace("http://", "http://admin:secret@"),
+                connectionFactory);
+    }
+
+    private String getDatabaseUrl() {
+        return node1.getUrl() + "/database/";
+    }
+
+    /**
+     * A local HTTP server which answers every request like a CouchDB node.
+     */
+    private static class StubNode implements HttpHandler {
+
+        private final HttpServer server;
+
+        final AtomicInteger requests = new AtomicInteger();
+
+        final AtomicInteger authorizedRequests = new AtomicInteger();
+
+        final AtomicInteger logins = new AtomicInteger();
+
+        volatile int status = 200;
+
+        StubNode() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", this);
+            server.start();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        public void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            if ("/_session".equals(path)) {
+                logins.incrementAndGet();
+                exchange.getResponseHeaders().set("Set-Cookie", "AuthSession=YWRtaW46MQ; Version=1; Path=/");
+            } else if (!"/".equals(path)) {
+                requests.incrementAndGet();
+                if (exchange.getRequestHeaders().getFirst("Authorization") != null ||
+                        exchange.getRequestHeaders().getFirst("Cookie") != null) {
+                    authorizedRequests.incrementAndGet();
+                }
+            }
+            byte[] body = "{\"ok\":true}".getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/2026
+ */
+public class RetryInterceptorTest {
+
+    private static final String DOCUMENT_URL = "http://127.0.0.1:5984/database/a";
+
+    private ClientHttpRequestFactory requestFactory;
+
+    private ConnectionSettings connectionSettings;
+
+    private RestTemplate restTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        requestFactory = mock(ClientHttpRequestFactory.class);
+        connectionSettings = new ConnectionSettings();
+        connectionSettings.setMaxAttempts(3);
+        connectionSettings.setInitialBackoff(1L);
+        restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Test
+    public void retryUnavailableServer() throws Exception {
+        respondWith(HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.OK);
+        useInterceptor(null);
+
+        assertThat(restTemplate.getForObject(DOCUMENT_URL, String.class), equalTo("{}"));
+        verify(requestFactory, times(3)).createRequest(any(URI.class), any(HttpMethod.class));
+    }
+
+    @Test
+    public void giveUpAfterMaxAttempts() throws Exception {
+        respondWith(HttpStatus.BAD_GATEWAY, HttpStatus.BAD_GATEWAY, HttpStatus.BAD_GATEWAY, HttpStatus.OK);
+        useInterceptor(null);
+
+        try {
+            restTemplate.getForObject(DOCUMENT_URL, String.class);
+            fail("HttpServerErrorException expected");
+        } catch (HttpServerErrorException e) {
+            assertThat(e.getStatusCode(), is(HttpStatus.BAD_GATEWAY));
+        }
+        verify(requestFactory, times(3)).createRequest(any(URI.class), any(HttpMethod.class));
+    }
+
+    @Test
+    public void doNotRetryPost() throws Exception {
+        respondWith(HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.OK);
+        useInterceptor(null);
+
+        try {
+            restTemplate.postForObject("http://127.0.0.1:5984/database/", "{}", String.class);
+            fail("HttpServerErrorException expected");
+        } catch (HttpServerErrorException e) {
+            assertThat(e.getStatusCode(), is(HttpStatus.SERVICE_UNAVAILABLE));
+        }
+        verify(requestFactory, times(1)).createRequest(any(URI.class), any(HttpMethod.class));
+    }
+
+    @Test
+    public void failFastWhileCircuitIsOpen() throws Exception {
+        respondWith(HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.SERVICE_UNAVAILABLE);
+        useInterceptor(new CircuitBreaker(3, 60000L));
+
+        try {
+            restTemplate.getForObject(DOCUMENT_URL, String.class);
+            fail("HttpServerErrorException expected");
+        } catch (HttpServerErrorException e) {
+            assertThat(e.getStatusCode(), is(HttpStatus.SERVICE_UNAVAILABLE));
+        }
+        try {
+            restTemplate.getForObject(DOCUMENT_URL, String.class);
+            fail("ResourceAccessException expected");
+        } catch (ResourceAccessException e) {
+            assertThat(e.getCause(), is(instanceOf(CircuitOpenException.class)));
+        }
+        verify(requestFactory, times(3)).createRequest(any(URI.class), any(HttpMethod.class));
+    }
+
+    @Test
+    public void probeServerAfterOpenInterval() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0L);
+        circuitBreaker.recordFailure();
+        assertThat(circuitBreaker.isOpen(), is(true));
+
+        circuitBreaker.acquire();
+        try {
+            circuitBreaker.acquire();
+            fail("CircuitOpenException expected while probing");
+        } catch (CircuitOpenException e) {
+            assertThat(e.getRetryAfter(), is(0L));
+        }
+        circuitBreaker.recordSuccess();
+        assertThat(circuitBreaker.isOpen(), is(false));
+        circuitBreaker.acquire();
+    }
+
+    @Test
+    public void releaseProbeAfterUnexpectedException() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0L);
+        circuitBreaker.recordFailure();
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, URI.create(DOCUMENT_URL));
+        request.setResponse(new MockClientHttpResponse("{}".getBytes("UTF-8"), HttpStatus.OK));
+        when(requestFactory.createRequest(any(URI.class), any(HttpMethod.class)))
+                .thenThrow(new IllegalStateException("unexpected")).thenReturn(request);
+        useInterceptor(circuitBreaker);
+
+        try {
+            restTemplate.getForObject(DOCUMENT_URL, String.class);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertThat(circuitBreaker.isOpen(), is(true));
+        }
+        assertThat(restTemplate.getForObject(DOCUMENT_URL, String.class), equalTo("{}"));
+        assertThat(circuitBreaker.isOpen(), is(false));
+    }
+
+    private void useInterceptor(CircuitBreaker circuitBreaker) {
+        restTemplate.setInterceptors(Collections.<ClientHttpRequestInterceptor>singletonList(
+                new RetryInterceptor(connectionSettings, circuitBreaker)));
+    }
+
+    private void respondWith(final HttpStatus... statuses) throws IOException {
+        when(requestFactory.createRequest(any(URI.class), any(HttpMethod.class))).thenAnswer(
+                new Answer<ClientHttpRequest>() {
+                    private int requests = 0;
+
+                    public ClientHttpRequest answer(InvocationOnMock invocation) throws Throwable {
+                        MockClientHttpRequest request = new MockClientHttpRequest(
+                                (HttpMethod) invocation.getArguments()[1], (URI) invocation.getArguments()[0]);
+                        request.setResponse(new MockClientHttpResponse("{}".getBytes("UTF-8"), statuses[requests++]));
+                        return request;
+                    }
+                });
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb;
+
+import java.net.URI;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/2026
+ */
+public class SessionAuthRequestFactoryTest {
+
+    private static final URI DOCUMENT_URI = URI.create("http://couchdb.example.com/database/a");
+
+    private CloseableHttpClient httpClient;
+
+    private SessionAuthRequestFactory requestFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        httpClient = mock(CloseableHttpClient.class);
+        CouchDbSession session = new CouchDbSession(new HttpHost("couchdb.example.com", 80, "http"),
+                "admin", "secret", ConnectionSettings.DEFAULT_SESSION_TIMEOUT);
+        requestFactory = new SessionAuthRequestFactory(httpClient, session);
+        CloseableHttpResponse firstLogin = createResponse(200, "AuthSession=YWRtaW46MQ; Version=1; Path=/; HttpOnly");
+        CloseableHttpResponse secondLogin = createResponse(200, "AuthSession=YWRtaW46Mg; Version=1; Path=/; HttpOnly");
+        when(httpClient.execute(any(HttpPost.class))).thenReturn(firstLogin, secondLogin);
+    }
+
+    @Test
+    public void logInOnceAndSendCookie() throws Exception {
+        respondWith(createResponse(200, null));
+
+        for (int i = 0; i < 2; i++) {
+            ClientHttpRequest request = requestFactory.createRequest(DOCUMENT_URI, HttpMethod.GET);
+            assertThat(request.getHeaders().getFirst(HttpHeaders.COOKIE), equalTo("AuthSession=YWRtaW46MQ"));
+            request.execute();
+        }
+        verify(httpClient, times(1)).execute(any(HttpPost.class));
+    }
+
+    @Test
+    public void takeOverRenewedCookie() throws Exception {
+        respondWith(createResponse(200, "AuthSession=YWRtaW46Mw; Version=1; Path=/; HttpOnly"));
+
+        requestFactory.createRequest(DOCUMENT_URI, HttpMethod.GET).execute();
+
+        ClientHttpRequest request = requestFactory.createRequest(DOCUMENT_URI, HttpMethod.GET);
+        assertThat(request.getHeaders().getFirst(HttpHeaders.COOKIE), equalTo("AuthSession=YWRtaW46Mw"));
+        verify(httpClient, times(1)).execute(any(HttpPost.class));
+    }
+
+    @Test
+    public void logInAgainAndRetryAfterRejectedCookie() throws Exception {
+        CloseableHttpResponse rejected = createResponse(401, null);
+        CloseableHttpResponse accepted = createResponse(200, null);
+        when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(rejected, accepted);
+
+        ClientHttpResponse response = requestFactory.createRequest(DOCUMENT_URI, HttpMethod.GET).execute();
+
+        assertThat(response.getRawStatusCode(), equalTo(200));
+        verify(rejected).close();
+        ArgumentCaptor<HttpUriRequest> requests = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient, times(2)).execute(requests.capture(), any(HttpContext.class));
+        assertThat(requests.getAllValues().get(1).getFirstHeader(HttpHeaders.COOKIE).getValue(),
+                equalTo("AuthSession=YWRtaW46Mg"));
+        verify(httpClient, times(2)).execute(any(HttpPost.class));
+    }
+
+    @Test
+    public void sendNoCookieToOtherHosts() throws Exception {
+        ClientHttpRequest request = requestFactory.createRequest(
+                URI.create("http://example.com/database/a"), HttpMethod.GET);
+        assertThat(request.getHeaders().getFirst(HttpHeaders.COOKIE), is(nullValue()));
+    }
+
+    private void respondWith(CloseableHttpResponse response) throws Exception {
+        when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(response);
+    }
+
+    private CloseableHttpResponse createResponse(int status, String setCookie) {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, status, null));
+        Header[] headers = setCookie != null ? new Header[] {new BasicHeader("Set-Cookie", setCookie)} : new Header[0];
+        when(response.getAllHeaders()).thenReturn(headers);
+        when(response.getHeaders("Set-Cookie")).thenReturn(headers);
+        return response;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/2026
+ */
+public class CachingCouchDbDocumentOperationsTest {
+
+    private CouchDbDocumentOperations delegate;
+
+    private CachingCouchDbDocumentOperations documentOperations;
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = mock(CouchDbDocumentOperations.class);
+        documentOperations = new CachingCouchDbDocumentOperations(delegate, 2);
+        when(delegate.readDocument("a", String.class)).thenReturn("document a");
+        when(delegate.readDocument("b", String.class)).thenReturn("document b");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        documentOperations.stop();
+    }
+
+    @Test
+    public void readCachedDocument() throws Exception {
+        assertThat(documentOperations.readDocument("a", String.class), equalTo("document a"));
+        assertThat(documentOperations.readDocument("a", String.class), equalTo("document a"));
+
+        verify(delegate).readDocument("a", String.class);
+        assertThat(documentOperations.getHitCount(), equalTo(1L));
+        assertThat(documentOperations.getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    public void evictWrittenDocument() throws Exception {
+        documentOperations.readDocument("a", String.class);
+        documentOperations.writeDocument("a", "updated");
+        documentOperations.readDocument("a", String.class);
+
+        verify(delegate, times(2)).readDocument("a", String.class);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedAndExpiredDocuments() throws Exception {
+        when(delegate.readDocument("c", String.class)).thenReturn("document c");
+        documentOperations.readDocument("a", String.class);
+        documentOperations.readDocument("b", String.class);
+        documentOperations.readDocument("a", String.class);
+        documentOperations.readDocument("c", String.class);
+        documentOperations.readDocument("b", String.class);
+        verify(delegate, times(2)).readDocument("b", String.class);
+
+        documentOperations.setTimeToLive(1);
+        documentOperations.clear();
+        documentOperations.readDocument("a", String.class);
+        Thread.sleep(5);
+        documentOperations.readDocument("a", String.class);
+        verify(delegate, times(3)).readDocument("a", String.class);
+    }
+
+    @Test
+    public void readOnlyMissingDocuments() throws Exception {
+        when(delegate.readDocuments(Arrays.asList("b", "c"), String.class))
+                .thenReturn(Arrays.asList("document b", (String) null));
+        documentOperations.readDocument("a", String.class);
+
+        List<String> documents = documentOperations.readDocuments(Arrays.asList("a", "b", "c"), String.class);
+
+        assertThat(documents.get(0), equalTo("document a"));
+        assertThat(documents.get(1), equalTo("document b"));
+        assertThat(documents.get(2), is(nullValue()));
+        assertThat(documentOperations.readDocuments(Collections.singletonList("b"), String.class).get(0),
+                equalTo("document b"));
+    }
+
+    @Test
+    public void evictChangedDocuments() throws Exception {
+        CountDownLatch changed = new CountDownLatch(1);
+        CouchDbChangesOperations changesOperations = createChangesOperations(new URI("http://test/database/a"), changed);
+        documentOperations.setChangesOperations(changesOperations);
+        documentOperations.readDocument("a", String.class);
+        documentOperations.readDocument("b", String.class);
+
+        documentOperations.start();
+        assertTrue(changed.await(5, TimeUnit.SECONDS));
+
+        assertThat(documentOperations.size(), equalTo(1));
+        documentOperations.readDocument("b", String.class);
+        verify(delegate).readDocument("b", String.class);
+
+        documentOperations.stop();
+        verify(changesOperations).stopFollowing(any(ChangesListener.class));
+    }
+
+    @Test
+    public void evictChangedDocumentReadByDatabaseUri() throws Exception {
+        URI databaseUri = new URI("http://test/database");
+        when(delegate.readDocuments(databaseUri, Collections.singletonList("a b"), String.class))
+                .thenReturn(Collections.singletonList("document a b"));
+        CountDownLatch changed = new CountDownLatch(1);
+        documentOperations.setChangesOperations(
+                createChangesOperations(new URI("http://test/database/a%20b"), changed));
+        documentOperations.readDocuments(databaseUri, Collections.singletonList("a b"), String.class);
+        assertThat(documentOperations.size(), equalTo(1));
+
+        documentOperations.start();
+        assertTrue(changed.await(5, TimeUnit.SECONDS));
+
+        assertThat(documentOperations.size(), equalTo(0));
+    }
+
+    @Test
+    public void skipDocumentEvictedWhileRead() throws Exception {
+        when(delegate.readDocument("c", String.class)).thenAnswer(new Answer<String>() {
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                documentOperations.evict("c");
+                return "stale document c";
+            }
+        });
+
+        documentOperations.readDocument("c", String.class);
+        documentOperations.readDocument("c", String.class);
+
+        verify(delegate, times(2)).readDocument("c", String.class);
+        assertThat(documentOperations.size(), equalTo(0));
+    }
+
+    private CouchDbChangesOperations createChangesOperations(final URI changedUri, final CountDownLatch changed) {
+        CouchDbChangesOperations changesOperations = mock(CouchDbChangesOperations.class);
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ChangesListener listener = (ChangesListener) invocation.getArguments()[0];
+                if (changed.getCount() > 0) {
+                    listener.onChange(new ChangedDocument(changedUri, ChangedDocument.Status.UPDATED, 1L));
+                    changed.countDown();
+                }
+                while (listener.isListening()) {
+                    Thread.sleep(10);
+                }
+                return null;
+            }
+        }).when(changesOperations).followChanges(any(ChangesListener.class));
+        return changesOperations;
+    }
+}
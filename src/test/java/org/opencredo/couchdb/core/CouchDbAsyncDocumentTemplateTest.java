@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.couchdb.ConnectionSettings;
+import org.opencredo.couchdb.DummyDocument;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.client.AsyncRestOperations;
+import org.springframework.web.client.HttpClientErrorException;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/2026
+ */
+public class CouchDbAsyncDocumentTemplateTest {
+
+    private AsyncRestOperations asyncRestOperations;
+
+    private CouchDbAsyncDocumentTemplate documentTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        asyncRestOperations = mock(AsyncRestOperations.class);
+        documentTemplate = new CouchDbAsyncDocumentTemplate("http://test");
+        documentTemplate.setAsyncRestOperations(asyncRestOperations);
+    }
+
+    @Test
+    public void readDocument() throws Exception {
+        SettableListenableFuture<ResponseEntity<DummyDocument>> response =
+                new SettableListenableFuture<ResponseEntity<DummyDocument>>();
+        when(asyncRestOperations.getForEntity("http://test/{id}", DummyDocument.class, "a")).thenReturn(response);
+
+        ListenableFuture<DummyDocument> document = documentTemplate.readDocument("a", DummyDocument.class);
+        assertThat(document.isDone(), is(false));
+
+        response.set(new ResponseEntity<DummyDocument>(new DummyDocument("test"), HttpStatus.OK));
+        assertThat(document.get(), equalTo(new DummyDocument("test")));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void writeDocumentFailure() throws Exception {
+        SettableListenableFuture<Object> response = new SettableListenableFuture<Object>();
+        when(asyncRestOperations.put(eq("http://test/{id}"), any(HttpEntity.class), anyMap()))
+                .thenReturn((ListenableFuture) response);
+
+        ListenableFuture<?> written = documentTemplate.writeDocument("a", new DummyDocument("test"),
+                new org.springframework.messaging.MessageHeaders(null));
+        response.setException(new HttpClientErrorException(HttpStatus.CONFLICT));
+
+        try {
+            written.get();
+            fail("expected the write to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(CouchDbOperationException.class));
+            assertThat(e.getCause().getCause(), instanceOf(HttpClientErrorException.class));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectRetries() throws Exception {
+        ConnectionSettings connectionSettings = new ConnectionSettings();
+        connectionSettings.setMaxAttempts(3);
+        new CouchDbAsyncDocumentTemplate("http://test", connectionSettings);
+    }
+}
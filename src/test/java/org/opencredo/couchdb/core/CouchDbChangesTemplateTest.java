@@ -16,26 +16,43 @@
 
 package org.opencredo.couchdb.core;
 
+import org.apache.http.conn.EofSensorInputStream;
+import org.apache.http.conn.EofSensorWatcher;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestOperations;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.opencredo.couchdb.core.CouchDbChangesTemplate.Change;
-import static org.opencredo.couchdb.core.CouchDbChangesTemplate.Changes;
-import static org.opencredo.couchdb.core.CouchDbChangesTemplate.Revision;
 
 
 /**
@@ -58,29 +75,233 @@ public class CouchDbChangesTemplateTest {
 
     @Test
     public void pollForChanges() throws Exception {
-        when(restOperations.getForObject(anyString(), eq(Changes.class), eq(Long.valueOf(0L)))).
-                thenReturn(createChanges(NUMBER_OF_CHANGES));
+        respondWith(createChanges(NUMBER_OF_CHANGES));
 
         Collection<ChangedDocument> documents = changesTemplate.pollForChanges();
         assertThat(documents, is(notNullValue()));
         assertThat(documents.size(), equalTo(NUMBER_OF_CHANGES));
     }
 
-    private Changes createChanges(int n) {
-        Changes changes = new Changes();
-        ArrayList<Change> results = new ArrayList<Change>();
-        changes.setResults(results);
-        changes.setLast_seq(Long.valueOf(n));
+    @Test
+    public void pollForChangesResumesAfterLastSequence() throws Exception {
+        respondWith(createChanges(NUMBER_OF_CHANGES));
+        changesTemplate.pollForChanges();
+
+        respondWith("{\"results\":[],\"last_seq\":" + NUMBER_OF_CHANGES + "}");
+        Collection<ChangedDocument> documents = changesTemplate.pollForChanges();
+        assertThat(documents.size(), equalTo(0));
+        verify(restOperations).execute(anyString(), eq(HttpMethod.GET), (RequestCallback) isNull(),
+                any(ResponseExtractor.class), eq(Long.valueOf(NUMBER_OF_CHANGES)));
+    }
+
+    @Test
+    public void pollForChangesStopsWhenListenerStops() throws Exception {
+        respondWith(createChanges(NUMBER_OF_CHANGES));
+
+        final List<ChangedDocument> documents = new ArrayList<ChangedDocument>();
+        changesTemplate.pollForChanges(new ChangesListener() {
+            public void onChange(ChangedDocument changedDocument) {
+                documents.add(changedDocument);
+            }
+
+            public boolean isListening() {
+                return documents.size() < 3;
+            }
+        });
+
+        assertThat(documents.size(), equalTo(3));
+        respondWith(createChanges(0));
+        changesTemplate.pollForChanges();
+        verify(restOperations).execute(anyString(), eq(HttpMethod.GET), (RequestCallback) isNull(),
+                any(ResponseExtractor.class), eq(Long.valueOf(2L)));
+    }
+
+    @Test
+    public void pollForChangesInPages() throws Exception {
+        changesTemplate.setPageSize(NUMBER_OF_CHANGES);
+        respondWith(createChanges(NUMBER_OF_CHANGES));
+
+        Collection<ChangedDocument> documents = changesTemplate.pollForChanges();
+        assertThat(documents.size(), equalTo(NUMBER_OF_CHANGES));
+        verify(restOperations).execute(eq("test/_changes?since={seq}&limit={limit}"), eq(HttpMethod.GET),
+                (RequestCallback) isNull(), any(ResponseExtractor.class), eq(Long.valueOf(0L)),
+                eq(Integer.valueOf(NUMBER_OF_CHANGES)));
+    }
+
+    @Test
+    public void pollForChangesWithDocuments() throws Exception {
+        changesTemplate.setIncludeDocs(true);
+        respondWith("{\"results\":[{\"seq\":1,\"id\":\"a\",\"changes\":[{\"rev\":\"1-a\"}]," +
+                "\"doc\":{\"_id\":\"a\",\"_rev\":\"1-a\",\"message\":\"test\"}}],\"last_seq\":1}");
+
+        List<ChangedDocument> documents = changesTemplate.pollForChanges();
+        assertThat(documents.get(0).getDocument().get("message").textValue(), equalTo("test"));
+        verify(restOperations).execute(eq("test/_changes?since={seq}&include_docs=true"), eq(HttpMethod.GET),
+                (RequestCallback) isNull(), any(ResponseExtractor.class), eq(Long.valueOf(0L)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void followChanges() throws Exception {
+        final String feed = "{\"seq\":1,\"id\":\"a\",\"changes\":[{\"rev\":\"1-a\"}]}\n" +
+                "\n" +
+                "{\"seq\":2,\"id\":\"b\",\"changes\":[{\"rev\":\"2-b\"}],\"deleted\":true}\n" +
+                "{\"last_seq\":2}\n";
+        when(restOperations.execute(anyString(), eq(HttpMethod.GET), (RequestCallback) isNull(),
+                any(ResponseExtractor.class), anyVararg())).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ResponseExtractor<?> extractor = (ResponseExtractor<?>) invocation.getArguments()[3];
+                return extractor.extractData(new MockClientHttpResponse(feed.getBytes("UTF-8"), HttpStatus.OK));
+            }
+        });
+
+        final List<ChangedDocument> documents = new ArrayList<ChangedDocument>();
+        changesTemplate.followChanges(new ChangesListener() {
+            public void onChange(ChangedDocument changedDocument) {
+                documents.add(changedDocument);
+            }
+
+            public boolean isListening() {
+                return true;
+            }
+        });
+
+        assertThat(documents.size(), equalTo(2));
+        assertThat(documents.get(0).getStatus(), equalTo(ChangedDocument.Status.CREATED));
+        assertThat(documents.get(1).getStatus(), equalTo(ChangedDocument.Status.DELETED));
+        assertThat(documents.get(1).getSequence(), equalTo(Long.valueOf(2L)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void abortFeedWhenListenerFails() throws Exception {
+        BlockingInputStream feed = new BlockingInputStream("{\"seq\":1,\"id\":\"a\",\"changes\":[{\"rev\":\"1-a\"}]}\n");
+        EofSensorWatcher watcher = mock(EofSensorWatcher.class);
+        respondWith(new EofSensorInputStream(feed, watcher));
+
+        try {
+            changesTemplate.followChanges(new ChangesListener() {
+                public void onChange(ChangedDocument changedDocument) {
+                    throw new IllegalStateException("poison change");
+                }
+
+                public boolean isListening() {
+                    return true;
+                }
+            });
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            verify(watcher).streamAbort(feed);
+        }
+        assertThat(changesTemplate.getCurrentSequence(), equalTo(0L));
+    }
+
+    @Test
+    public void stopFollowingAbortsFeed() throws Exception {
+        final BlockingInputStream feed = new BlockingInputStream("");
+        respondWith(new EofSensorInputStream(feed, null));
+        final AtomicBoolean listening = new AtomicBoolean(true);
+        final ChangesListener listener = new ChangesListener() {
+            public void onChange(ChangedDocument changedDocument) {
+            }
+
+            public boolean isListening() {
+                return listening.get();
+            }
+        };
+        Thread follower = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    changesTemplate.followChanges(listener);
+                } catch (Throwable e) {
+                    // the aborted connection fails the read
+                }
+            }
+        };
+        follower.setDaemon(true);
+        follower.start();
+        assertThat(feed.blocked.await(5, TimeUnit.SECONDS), is(true));
+
+        listening.set(false);
+        changesTemplate.stopFollowing(listener);
+        follower.join(5000);
+        assertThat(follower.isAlive(), is(false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respondWith(final InputStream body) {
+        when(restOperations.execute(anyString(), eq(HttpMethod.GET), (RequestCallback) isNull(),
+                any(ResponseExtractor.class), anyVararg())).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ResponseExtractor<?> extractor = (ResponseExtractor<?>) invocation.getArguments()[3];
+                return extractor.extractData(new MockClientHttpResponse(body, HttpStatus.OK));
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respondWith(final String body) {
+        when(restOperations.execute(anyString(), eq(HttpMethod.GET), (RequestCallback) isNull(),
+                any(ResponseExtractor.class), anyVararg())).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ResponseExtractor<?> extractor = (ResponseExtractor<?>) invocation.getArguments()[3];
+                return extractor.extractData(new MockClientHttpResponse(body.getBytes("UTF-8"), HttpStatus.OK));
+            }
+        });
+    }
+
+    /**
+     * A continuous feed which blocks once its content has been read, until it is closed.
+     */
+    private static class BlockingInputStream extends InputStream {
+
+        private final InputStream content;
+
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        BlockingInputStream(String content) throws IOException {
+            this.content = new ByteArrayInputStream(content.getBytes("UTF-8"));
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (content.available() > 0) {
+                return content.read(b, off, len);
+            }
+            blocked.countDown();
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("connection aborted");
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    private String createChanges(int n) {
+        StringBuilder changes = new StringBuilder("{\"results\":[");
         for (int i = 0; i < n; i++) {
-            Change change = new Change();
-            change.setSeq(Long.valueOf(i));
-            change.setDeleted(false);
-            change.setId(UUID.randomUUID().toString());
-            Revision revision = new Revision();
-            revision.setRev("1-" + UUID.randomUUID());
-            change.setChanges(Collections.singletonList(revision));
-            results.add(change);
+            if (i > 0) {
+                changes.append(',');
+            }
+            changes.append("{\"seq\":").append(i)
+                    .append(",\"id\":\"").append(UUID.randomUUID())
+                    .append("\",\"changes\":[{\"rev\":\"1-").append(UUID.randomUUID()).append("\"}]}");
         }
-        return changes;
+        return changes.append("],\"last_seq\":").append(n).append('}').toString();
     }
 }
@@ -22,17 +22,50 @@ import org.opencredo.couchdb.DummyDocument;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.web.client.RestOperations;
 
+import java.io.ByteArrayInputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.conn.EofSensorInputStream;
+import org.apache.http.conn.EofSensorWatcher;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.opencredo.couchdb.IsBodyEqual.bodyEqual;
@@ -82,6 +115,31 @@ public class CouchDbDocumentTemplateTest {
         verify(restOperations).put(eq(uri.toString()), argThat(bodyEqual(document)), eq(headers));
     }
 
+    @Test
+    public void writeDocumentsToDefaultDatabase() throws Exception {
+        Map<String, Object> documents = new LinkedHashMap<String, Object>();
+        documents.put("first", new DummyDocument("hello"));
+        documents.put("second", "{\"message\":\"world\"}");
+        BulkWriteResult[] response = {
+                new BulkWriteResult("first", "1-abc", null, null),
+                new BulkWriteResult("second", null, "conflict", "Document update conflict.")};
+        when(restOperations.postForObject(eq(DEFAULT_DATABASE_URL + "/_bulk_docs"), any(), eq(BulkWriteResult[].class))).
+                thenReturn(response);
+
+        List<BulkWriteResult> results = documentTemplate.writeDocuments(documents);
+
+        ArgumentCaptor<HttpEntity> request = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restOperations).postForObject(anyString(), request.capture(), eq(BulkWriteResult[].class));
+        ObjectNode body = (ObjectNode) request.getValue().getBody();
+        assertThat(body.get("docs").size(), equalTo(2));
+        assertThat(body.get("docs").get(0).get("_id").textValue(), equalTo("first"));
+        assertThat(body.get("docs").get(0).get("message").textValue(), equalTo("hello"));
+        assertThat(body.get("docs").get(1).get("_id").textValue(), equalTo("second"));
+        assertThat(body.get("docs").get(1).get("message").textValue(), equalTo("world"));
+        assertThat(results.get(0).isSuccess(), equalTo(true));
+        assertThat(results.get(1).isConflict(), equalTo(true));
+    }
+
     @Test
     public void readDocumentFromDefaultDatabase() throws Exception {
         String id = UUID.randomUUID().toString();
@@ -101,4 +159,181 @@ public class CouchDbDocumentTemplateTest {
         DummyDocument result = documentTemplate.readDocument(uri, DummyDocument.class);
         assertThat(result, equalTo(response));
     }
+
+    @Test
+    public void readDocumentsFromDefaultDatabase() throws Exception {
+        JsonNode response = new ObjectMapper().readTree("{\"rows\":[" +
+                "{\"id\":\"a\",\"doc\":{\"_id\":\"a\",\"_rev\":\"1-a\",\"message\":\"first\"}}," +
+                "{\"key\":\"b\",\"error\":\"not_found\"}," +
+                "{\"id\":\"c\",\"doc\":{\"_id\":\"c\",\"_rev\":\"1-c\",\"message\":\"third\"}}]}");
+        when(restOperations.postForObject(eq(new URI("http://test/_all_docs?include_docs=true")),
+                any(HttpEntity.class), eq(JsonNode.class))).thenReturn(response);
+
+        List<DummyDocument> documents = documentTemplate.readDocuments(Arrays.asList("a", "b", "c"),
+                DummyDocument.class);
+
+        assertThat(documents, equalTo(Arrays.asList(new DummyDocument("first"), null, new DummyDocument("third"))));
+        ArgumentCaptor<HttpEntity> request = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restOperations).postForObject(any(URI.class), request.capture(), eq(JsonNode.class));
+        assertThat(request.getValue().getBody().toString(), equalTo("{\"keys\":[\"a\",\"b\",\"c\"]}"));
+    }
+
+    @Test
+    public void overwriteConflictingDocument() throws Exception {
+        documentTemplate.setConflictResolver(new OverwriteConflictResolver());
+        doThrow(new HttpClientErrorException(HttpStatus.CONFLICT)).doNothing()
+                .when(restOperations).put(anyString(), any(), eq("a"));
+        when(restOperations.getForObject(anyString(), eq(JsonNode.class), eq("a"))).thenReturn(
+                new ObjectMapper().readTree("{\"_id\":\"a\",\"_rev\":\"2-b\",\"message\":\"current\"}"));
+
+        documentTemplate.writeDocument("a", new DummyDocument("hello"));
+
+        ArgumentCaptor<HttpEntity> request = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restOperations, times(2)).put(anyString(), request.capture(), eq("a"));
+        ObjectNode body = (ObjectNode) request.getValue().getBody();
+        assertThat(body.get("_rev").textValue(), equalTo("2-b"));
+        assertThat(body.get("message").textValue(), equalTo("hello"));
+    }
+
+    @Test
+    public void skipConflictingDocumentsOfBulkWrite() throws Exception {
+        documentTemplate.setConflictResolver(new SkipConflictResolver());
+        Map<String, Object> documents = new LinkedHashMap<String, Object>();
+        documents.put("a", new DummyDocument("first"));
+        documents.put("b", new DummyDocument("second"));
+        BulkWriteResult[] response = {
+                new BulkWriteResult("a", "1-a", null, null),
+                new BulkWriteResult("b", null, "conflict", "Document update conflict.")};
+        when(restOperations.postForObject(eq(DEFAULT_DATABASE_URL + "/_bulk_docs"), any(), eq(BulkWriteResult[].class))).
+                thenReturn(response);
+        when(restOperations.postForObject(eq(new URI("http://test/_all_docs?include_docs=true")),
+                any(HttpEntity.class), eq(JsonNode.class))).thenReturn(new ObjectMapper().readTree(
+                "{\"rows\":[{\"id\":\"b\",\"doc\":{\"_id\":\"b\",\"_rev\":\"3-b\",\"message\":\"current\"}}]}"));
+
+        List<BulkWriteResult> results = documentTemplate.writeDocuments(documents);
+
+        verify(restOperations).postForObject(anyString(), any(), eq(BulkWriteResult[].class));
+        assertThat(results.get(1).isSuccess(), equalTo(true));
+        assertThat(results.get(1).getRev(), equalTo("3-b"));
+    }
+
+    @Test
+    public void writeDocumentWithCachedRevision() throws Exception {
+        RevisionCache revisionCache = new RevisionCache();
+        revisionCache.putRevision("a", "1-a");
+        documentTemplate.setRevisionCache(revisionCache);
+        when(restOperations.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(JsonNode.class), eq("a")))
+                .thenReturn(new ResponseEntity<JsonNode>(new ObjectMapper().readTree(
+                        "{\"ok\":true,\"id\":\"a\",\"rev\":\"2-b\"}"), HttpStatus.CREATED));
+
+        documentTemplate.writeDocument("a", new DummyDocument("hello"));
+
+        ArgumentCaptor<HttpEntity> request = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restOperations).exchange(anyString(), eq(HttpMethod.PUT), request.capture(), eq(JsonNode.class), eq("a"));
+        assertThat(((ObjectNode) request.getValue().getBody()).get("_rev").textValue(), equalTo("1-a"));
+        assertThat(revisionCache.getRevision("a"), equalTo("2-b"));
+    }
+
+    @Test
+    public void readUnmodifiedDocumentWithETag() throws Exception {
+        documentTemplate.setETagCacheSize(10);
+        DummyDocument document = new DummyDocument("hello");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"1-a\"");
+        when(restOperations.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(DummyDocument.class),
+                eq("a")))
+                .thenReturn(new ResponseEntity<DummyDocument>(document, headers, HttpStatus.OK))
+                .thenReturn(new ResponseEntity<DummyDocument>(headers, HttpStatus.NOT_MODIFIED));
+
+        assertThat(documentTemplate.readDocument("a", DummyDocument.class), equalTo(document));
+        assertThat(documentTemplate.readDocument("a", DummyDocument.class), equalTo(document));
+
+        ArgumentCaptor<HttpEntity> request = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restOperations, times(2)).exchange(anyString(), eq(HttpMethod.GET), request.capture(),
+                eq(DummyDocument.class), eq("a"));
+        assertThat(request.getAllValues().get(0).getHeaders().getIfNoneMatch().isEmpty(), is(true));
+        assertThat(request.getAllValues().get(1).getHeaders().getIfNoneMatch(),
+                equalTo(Collections.singletonList("\"1-a\"")));
+    }
+
+    @Test
+    public void writeRawDocumentAsItIs() throws Exception {
+        byte[] json = "{\"message\":\"hello\"}".getBytes("UTF-8");
+        ByteBuffer buffer = ByteBuffer.wrap(json);
+
+        documentTemplate.writeDocument("a", new RawDocument(buffer));
+
+        ArgumentCaptor<RequestCallback> requestCallback = ArgumentCaptor.forClass(RequestCallback.class);
+        verify(restOperations).execute(anyString(), eq(HttpMethod.PUT), requestCallback.capture(),
+                (ResponseExtractor<Object>) isNull(), eq("a"));
+        MockClientHttpRequest request = new MockClientHttpRequest();
+        requestCallback.getValue().doWithRequest(request);
+        assertThat(request.getBodyAsBytes(), equalTo(json));
+        assertThat(request.getHeaders().getContentLength(), equalTo((long) json.length));
+        assertThat(buffer.remaining(), equalTo(json.length));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void readRowsUntilListenerStops() throws Exception {
+        final String body = "{\"total_rows\":3,\"offset\":0,\"rows\":[" +
+                "{\"id\":\"a\",\"key\":\"a\",\"value\":{\"rev\":\"1-a\"}}," +
+                "{\"id\":\"b\",\"key\":\"b\",\"value\":{\"rev\":\"1-b\"}}," +
+                "{\"id\":\"c\",\"key\":\"c\",\"value\":{\"rev\":\"1-c\"}}]}";
+        URI viewUri = new URI("http://test/_all_docs");
+        when(restOperations.execute(eq(viewUri), eq(HttpMethod.GET), (RequestCallback) isNull(),
+                any(ResponseExtractor.class))).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ResponseExtractor<?> extractor = (ResponseExtractor<?>) invocation.getArguments()[3];
+                return extractor.extractData(new MockClientHttpResponse(body.getBytes("UTF-8"), HttpStatus.OK));
+            }
+        });
+
+        final List<String> ids = new ArrayList<String>();
+        documentTemplate.readRows(viewUri, new RowListener() {
+            public void onRow(JsonNode row) {
+                ids.add(row.get("id").textValue());
+            }
+
+            public boolean isListening() {
+                return ids.size() < 2;
+            }
+        });
+
+        assertThat(ids, equalTo(Arrays.asList("a", "b")));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void abortRowsWhenListenerFails() throws Exception {
+        String body = "{\"total_rows\":2,\"offset\":0,\"rows\":[" +
+                "{\"id\":\"a\",\"key\":\"a\",\"value\":{\"rev\":\"1-a\"}}," +
+                "{\"id\":\"b\",\"key\":\"b\",\"value\":{\"rev\":\"1-b\"}}]}";
+        final ByteArrayInputStream rows = new ByteArrayInputStream(body.getBytes("UTF-8"));
+        EofSensorWatcher watcher = mock(EofSensorWatcher.class);
+        final EofSensorInputStream response = new EofSensorInputStream(rows, watcher);
+        URI viewUri = new URI("http://test/_all_docs");
+        when(restOperations.execute(eq(viewUri), eq(HttpMethod.GET), (RequestCallback) isNull(),
+                any(ResponseExtractor.class))).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ResponseExtractor<?> extractor = (ResponseExtractor<?>) invocation.getArguments()[3];
+                return extractor.extractData(new MockClientHttpResponse(response, HttpStatus.OK));
+            }
+        });
+
+        try {
+            documentTemplate.readRows(viewUri, new RowListener() {
+                public void onRow(JsonNode row) {
+                    throw new IllegalStateException("failed row");
+                }
+
+                public boolean isListening() {
+                    return true;
+                }
+            });
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            verify(watcher).streamAbort(rows);
+        }
+    }
 }
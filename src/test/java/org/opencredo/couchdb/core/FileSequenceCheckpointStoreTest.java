@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @since 18/10/2026
+ */
+public class FileSequenceCheckpointStoreTest {
+
+    private File directory;
+
+    private FileSequenceCheckpointStore checkpointStore;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("checkpoint", "");
+        directory.delete();
+        checkpointStore = new FileSequenceCheckpointStore(new File(directory, "changes.seq"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void readMissingCheckpoint() throws Exception {
+        assertThat(checkpointStore.readSequence(), is(nullValue()));
+    }
+
+    @Test
+    public void overwriteCheckpoint() throws Exception {
+        checkpointStore.writeSequence(42L);
+        checkpointStore.writeSequence(43L);
+
+        assertThat(checkpointStore.readSequence(), equalTo(Long.valueOf(43L)));
+        assertThat(new FileSequenceCheckpointStore(new File(directory, "changes.seq")).readSequence(),
+                equalTo(Long.valueOf(43L)));
+        assertThat(directory.list().length, equalTo(1));
+    }
+
+    @Test
+    public void recoverCheckpointLeftInTemporaryFile() throws Exception {
+        // as left by a crash between deleting the checkpoint file and renaming the temporary file
+        checkpointStore.writeSequence(42L);
+        File file = new File(directory, "changes.seq");
+        assertThat(file.renameTo(new File(directory, "changes.seq.tmp")), is(true));
+
+        assertThat(checkpointStore.readSequence(), equalTo(Long.valueOf(42L)));
+        checkpointStore.writeSequence(43L);
+        assertThat(checkpointStore.readSequence(), equalTo(Long.valueOf(43L)));
+        assertThat(directory.list().length, equalTo(1));
+    }
+}
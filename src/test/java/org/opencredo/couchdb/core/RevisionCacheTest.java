@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @since 18/10/2026
+ */
+public class RevisionCacheTest {
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        RevisionCache revisionCache = new RevisionCache(2);
+        revisionCache.putRevision("a", "1-a");
+        revisionCache.putRevision("b", "1-b");
+        revisionCache.getRevision("a");
+        revisionCache.putRevision("c", "1-c");
+
+        assertThat(revisionCache.getRevision("a"), equalTo("1-a"));
+        assertThat(revisionCache.getRevision("b"), is(nullValue()));
+        assertThat(revisionCache.getRevision("c"), equalTo("1-c"));
+    }
+
+    @Test
+    public void keepLaterRevision() throws Exception {
+        RevisionCache revisionCache = new RevisionCache();
+        revisionCache.putRevision("a", "10-b");
+        revisionCache.putRevision("a", "9-a");
+        assertThat(revisionCache.getRevision("a"), equalTo("10-b"));
+
+        revisionCache.evict("a");
+        revisionCache.putRevision("a", "9-a");
+        assertThat(revisionCache.getRevision("a"), equalTo("9-a"));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.inbound;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opencredo.couchdb.CouchDbHeaders;
+import org.opencredo.couchdb.core.CouchDbOperationException;
+import org.opencredo.couchdb.core.CouchDbViewOperations;
+import org.opencredo.couchdb.core.RowListener;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/2026
+ */
+public class CouchDbAllDocumentsMessageDrivenChannelAdapterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private CouchDbViewOperations viewOperations;
+
+    private CouchDbAllDocumentsMessageDrivenChannelAdapter channelAdapter;
+
+    private QueueChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        viewOperations = mock(CouchDbViewOperations.class);
+        channel = new QueueChannel();
+        channelAdapter = new CouchDbAllDocumentsMessageDrivenChannelAdapter(viewOperations,
+                "http://test/database/_all_docs");
+        channelAdapter.setOutputChannel(channel);
+        channelAdapter.setRecoveryInterval(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        channelAdapter.stop();
+    }
+
+    @Test
+    public void exportAllRowsAndResumeAfterFailure() throws Exception {
+        final List<URI> requests = new ArrayList<URI>();
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                URI uri = (URI) invocation.getArguments()[0];
+                RowListener listener = (RowListener) invocation.getArguments()[1];
+                requests.add(uri);
+                if (requests.size() == 1) {
+                    listener.onRow(objectMapper.readTree("{\"id\":\"a\",\"key\":\"a\",\"value\":{}}"));
+                    throw new CouchDbOperationException("connection reset");
+                }
+                listener.onRow(objectMapper.readTree("{\"id\":\"b c\",\"key\":\"b c\",\"value\":{}}"));
+                return null;
+            }
+        }).when(viewOperations).readRows(any(URI.class), any(RowListener.class));
+
+        channelAdapter.start();
+
+        Message<?> first = channel.receive(5000);
+        assertThat(first, is(notNullValue()));
+        assertThat((URI) first.getPayload(), equalTo(new URI("http://test/database/a")));
+        Message<?> second = channel.receive(5000);
+        assertThat(second, is(notNullValue()));
+        assertThat((URI) second.getPayload(), equalTo(new URI("http://test/database/b%20c")));
+        assertThat((String) second.getHeaders().get(CouchDbHeaders.SKIP), equalTo("2"));
+        assertThat(channel.receive(100), is(nullValue()));
+
+        assertThat(requests.get(0), equalTo(new URI("http://test/database/_all_docs")));
+        assertThat(requests.get(1), equalTo(new URI(
+                "http://test/database/_all_docs?startkey=%22a%22&startkey_docid=a&skip=1")));
+    }
+
+    @Test
+    public void resendRowAfterFailedSend() throws Exception {
+        final List<URI> requests = new ArrayList<URI>();
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                requests.add((URI) invocation.getArguments()[0]);
+                RowListener listener = (RowListener) invocation.getArguments()[1];
+                listener.onRow(objectMapper.readTree("{\"id\":\"a\",\"key\":\"a\",\"value\":{}}"));
+                return null;
+            }
+        }).when(viewOperations).readRows(any(URI.class), any(RowListener.class));
+        channelAdapter.setOutputChannel(new QueueChannel() {
+            private boolean failed;
+
+            @Override
+            protected boolean doSend(Message<?> message, long timeout) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("channel unavailable");
+                }
+                return channel.send(message);
+            }
+        });
+
+        channelAdapter.start();
+
+        Message<?> message = channel.receive(5000);
+        assertThat(message, is(notNullValue()));
+        assertThat((URI) message.getPayload(), equalTo(new URI("http://test/database/a")));
+        assertThat(requests.get(1), equalTo(new URI("http://test/database/_all_docs")));
+    }
+
+    @Test
+    public void exportSampledRangesConcurrently() throws Exception {
+        when(viewOperations.countRows(new URI("http://test/database/_all_docs"))).thenReturn(4L);
+        final Map<String, String[]> rowsByQuery = new HashMap<String, String[]>();
+        rowsByQuery.put("limit=1&skip=2", new String[] {"c"});
+        rowsByQuery.put("endkey=%22c%22&inclusive_end=false", new String[] {"a", "b"});
+        rowsByQuery.put("startkey=%22c%22", new String[] {"c", "d"});
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                URI uri = (URI) invocation.getArguments()[0];
+                RowListener listener = (RowListener) invocation.getArguments()[1];
+                for (String id : rowsByQuery.get(uri.getRawQuery())) {
+                    if (listener.isListening()) {
+                        listener.onRow(objectMapper.readTree(
+                                "{\"id\":\"" + id + "\",\"key\":\"" + id + "\",\"value\":{}}"));
+                    }
+                }
+                return null;
+            }
+        }).when(viewOperations).readRows(any(URI.class), any(RowListener.class));
+        channelAdapter.setPartitions(2);
+
+        channelAdapter.start();
+
+        Set<URI> exported = new HashSet<URI>();
+        for (int i = 0; i < 4; i++) {
+            Message<?> message = channel.receive(5000);
+            assertThat(message, is(notNullValue()));
+            exported.add((URI) message.getPayload());
+        }
+        assertThat(exported, equalTo((Set<URI>) new HashSet<URI>(Arrays.asList(new URI("http://test/database/a"),
+                new URI("http://test/database/b"), new URI("http://test/database/c"),
+                new URI("http://test/database/d")))));
+        assertThat(channel.receive(100), is(nullValue()));
+    }
+}
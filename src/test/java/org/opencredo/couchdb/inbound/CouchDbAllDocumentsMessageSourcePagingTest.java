@@ -0,0 +1,156 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.inbound;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opencredo.couchdb.CouchDbHeaders;
+import org.opencredo.couchdb.core.CouchDbDocumentOperations;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.messaging.Message;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/2026
+ */
+public class CouchDbAllDocumentsMessageSourcePagingTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private CouchDbDocumentOperations documentOperations;
+
+    private CouchDbAllDocumentsMessageSource messageSource;
+
+    @Before
+    public void setUp() throws Exception {
+        documentOperations = mock(CouchDbDocumentOperations.class);
+        messageSource = new CouchDbAllDocumentsMessageSource(documentOperations,
+                "http://test/database/_design/test/_view/byName", 2);
+    }
+
+    @Test
+    public void pageFromLastKeyAndDocumentId() throws Exception {
+        when(documentOperations.readDocument(any(URI.class), eq(ObjectNode.class))).thenReturn(
+                createRows("{\"id\":\"a\",\"key\":\"x\"},{\"id\":\"b\",\"key\":[\"y & z\",1]}"),
+                createRows("{\"id\":\"c\",\"key\":\"z\"}"));
+
+        for (int i = 0; i < 3; i++) {
+            Message<URI> message = messageSource.receive();
+            assertThat(message, is(notNullValue()));
+        }
+
+        ArgumentCaptor<URI> uris = ArgumentCaptor.forClass(URI.class);
+        verify(documentOperations, times(2)).readDocument(uris.capture(), eq(ObjectNode.class));
+        List<URI> requested = uris.getAllValues();
+        assertThat(requested.get(0).toString(), equalTo("http://test/database/_design/test/_view/byName?limit=2"));
+        assertThat(requested.get(1).toString(), equalTo("http://test/database/_design/test/_view/byName?limit=2" +
+                "&startkey=%5B%22y%20%26%20z%22%2C1%5D&startkey_docid=b&skip=1"));
+    }
+
+    @Test
+    public void prefetchNextPageBelowThreshold() throws Exception {
+        messageSource.setPrefetchThreshold(1);
+        messageSource.setTaskExecutor(new SyncTaskExecutor());
+        when(documentOperations.readDocument(any(URI.class), eq(ObjectNode.class))).thenReturn(
+                createRows("{\"id\":\"a\",\"key\":\"x\"},{\"id\":\"b\",\"key\":\"y\"}"),
+                createRows("{\"id\":\"c\",\"key\":\"z\"}"),
+                createRows(""));
+
+        assertThat(messageSource.receive().getPayload().toString(), equalTo("http://test/database/a"));
+        verify(documentOperations, times(1)).readDocument(any(URI.class), eq(ObjectNode.class));
+        assertThat(messageSource.receive().getPayload().toString(), equalTo("http://test/database/b"));
+        verify(documentOperations, times(2)).readDocument(any(URI.class), eq(ObjectNode.class));
+        assertThat(messageSource.receive().getPayload().toString(), equalTo("http://test/database/c"));
+    }
+
+    @Test
+    public void receiveConcurrentlyWithoutRepeatingOrSkippingRows() throws Exception {
+        final int documents = 101;
+        when(documentOperations.readDocument(any(URI.class), eq(ObjectNode.class))).thenAnswer(new Answer<ObjectNode>() {
+            public ObjectNode answer(InvocationOnMock invocation) throws Throwable {
+                String query = ((URI) invocation.getArguments()[0]).getQuery();
+                int first = query.contains("startkey") ?
+                        Integer.parseInt(query.substring(query.indexOf("startkey_docid=") + 15,
+                                query.indexOf("&skip"))) + 1 : 0;
+                StringBuilder rows = new StringBuilder();
+                for (int i = first; i < Math.min(first + 2, documents); i++) {
+                    rows.append(rows.length() == 0 ? "" : ",").append("{\"id\":\"").append(i)
+                            .append("\",\"key\":").append(i).append("}");
+                }
+                return createRows(rows.toString());
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<Message<URI>>>> futures = new ArrayList<Future<List<Message<URI>>>>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(new Callable<List<Message<URI>>>() {
+                public List<Message<URI>> call() {
+                    List<Message<URI>> received = new ArrayList<Message<URI>>();
+                    Message<URI> message;
+                    while ((message = messageSource.receive()) != null) {
+                        received.add(message);
+                    }
+                    return received;
+                }
+            }));
+        }
+        Set<URI> uris = Collections.synchronizedSet(new HashSet<URI>());
+        int received = 0;
+        for (Future<List<Message<URI>>> future : futures) {
+            for (Message<URI> message : future.get()) {
+                uris.add(message.getPayload());
+                assertThat(message.getHeaders().get(CouchDbHeaders.LIMIT), equalTo((Object) "2"));
+                received++;
+            }
+        }
+        executor.shutdown();
+
+        assertThat(received, is(documents));
+        assertThat(uris.size(), is(documents));
+    }
+
+    private ObjectNode createRows(String rows) throws Exception {
+        return (ObjectNode) objectMapper.readTree("{\"rows\":[" + rows + "]}");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.inbound;
+
+import java.net.URI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencredo.couchdb.CouchDbIntegrationTest;
+import org.opencredo.couchdb.DummyDocument;
+import org.opencredo.couchdb.core.CouchDbDocumentTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.integration.endpoint.AbstractEndpoint;
+import org.springframework.messaging.Message;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Reads a view in pages which are prefetched before the previous one is used up.
+ *
+ * @since 18/10/2026
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class CouchDbAllDocumentsMessageSourcePrefetchTest extends CouchDbIntegrationTest {
+
+   private static final int TEST_MESSAGES_NUMBER = 20;
+
+   @Autowired
+   @Qualifier("inboundChannelAdapter")
+   private AbstractEndpoint inboundChannelAdapter;
+
+   @Autowired
+   private MessagingTemplate messagingTemplate;
+
+   private CouchDbDocumentTemplate documentTemplate;
+
+   @Before
+   public void setUp() throws Exception {
+      for (int i = 0; i < TEST_MESSAGES_NUMBER; i++) {
+         putDocument(new DummyDocument("test message " + i));
+      }
+      documentTemplate = new CouchDbDocumentTemplate(databaseUrl());
+   }
+
+   @Test
+   public void receiveAllDocumentsInOrder() throws Exception {
+      inboundChannelAdapter.start();
+      assertEquals("test message 0", receiveJson().get("message").textValue());
+      for (int i = 1; i < TEST_MESSAGES_NUMBER - 1; i++) {
+         assertNotNull(receiveJson());
+      }
+      // the alphabetically last message is 9
+      assertEquals("test message 9", receiveJson().get("message").textValue());
+   }
+
+   @SuppressWarnings("unchecked")
+   private JsonNode receiveJson() {
+      Message<URI> message = (Message<URI>) messagingTemplate.receive();
+      assertNotNull(message);
+      return documentTemplate.readDocument(message.getPayload(), JsonNode.class);
+   }
+}
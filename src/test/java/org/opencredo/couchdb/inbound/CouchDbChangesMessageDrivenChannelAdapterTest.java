@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.inbound;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opencredo.couchdb.core.ChangedDocument;
+import org.opencredo.couchdb.core.ChangesListener;
+import org.opencredo.couchdb.core.CouchDbChangesOperations;
+import org.opencredo.couchdb.core.CouchDbOperationException;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @since 18/10/2026
+ */
+public class CouchDbChangesMessageDrivenChannelAdapterTest {
+
+    private CouchDbChangesOperations couchDbChangesOperations;
+
+    private CouchDbChangesMessageDrivenChannelAdapter channelAdapter;
+
+    private QueueChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        couchDbChangesOperations = mock(CouchDbChangesOperations.class);
+        channel = new QueueChannel();
+        channelAdapter = new CouchDbChangesMessageDrivenChannelAdapter(couchDbChangesOperations);
+        channelAdapter.setOutputChannel(channel);
+        channelAdapter.setRecoveryInterval(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        channelAdapter.stop();
+    }
+
+    @Test
+    public void sendChangesAndReconnectAfterFailure() throws Exception {
+        final AtomicInteger connections = new AtomicInteger();
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ChangesListener listener = (ChangesListener) invocation.getArguments()[0];
+                int connection = connections.incrementAndGet();
+                if (connection == 1) {
+                    listener.onChange(createChangedDocument(1));
+                    throw new CouchDbOperationException("connection reset");
+                } else if (connection == 2) {
+                    listener.onChange(createChangedDocument(2));
+                }
+                while (listener.isListening()) {
+                    Thread.sleep(10);
+                }
+                return null;
+            }
+        }).when(couchDbChangesOperations).followChanges(any(ChangesListener.class));
+
+        channelAdapter.start();
+
+        Message<?> first = channel.receive(5000);
+        assertThat(first, is(notNullValue()));
+        assertThat((URI) first.getPayload(), equalTo(new URI("http://test/database/1")));
+        Message<?> second = channel.receive(5000);
+        assertThat(second, is(notNullValue()));
+        assertThat((URI) second.getPayload(), equalTo(new URI("http://test/database/2")));
+    }
+
+    @Test
+    public void abortFeedOnStop() throws Exception {
+        final CountDownLatch following = new CountDownLatch(1);
+        final CountDownLatch aborted = new CountDownLatch(1);
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                following.countDown();
+                // blocks like a feed without changes or heartbeats
+                aborted.await(5, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(couchDbChangesOperations).followChanges(any(ChangesListener.class));
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                aborted.countDown();
+                return null;
+            }
+        }).when(couchDbChangesOperations).stopFollowing(any(ChangesListener.class));
+
+        channelAdapter.start();
+        assertThat(following.await(5, TimeUnit.SECONDS), is(true));
+        channelAdapter.stop();
+
+        assertThat(aborted.getCount(), equalTo(0L));
+    }
+
+    private ChangedDocument createChangedDocument(long sequence) throws Exception {
+        return new ChangedDocument(new URI("http://test/database/" + sequence), ChangedDocument.Status.CREATED,
+                sequence);
+    }
+}
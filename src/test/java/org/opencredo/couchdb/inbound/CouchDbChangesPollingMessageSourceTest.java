@@ -18,8 +18,17 @@ package org.opencredo.couchdb.inbound;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opencredo.couchdb.CouchDbHeaders;
+import org.opencredo.couchdb.DummyDocument;
 import org.opencredo.couchdb.core.ChangedDocument;
+import org.opencredo.couchdb.core.ChangesListener;
 import org.opencredo.couchdb.core.CouchDbChangesOperations;
+import org.opencredo.couchdb.core.SequenceCheckpointStore;
+import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.messaging.Message;
 
 import java.net.URI;
@@ -29,11 +38,17 @@ import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -56,21 +71,87 @@ public class CouchDbChangesPollingMessageSourceTest {
 
     @Test
     public void receiveOnNonEmptyPoll() throws Exception {
-        when(couchDbChangesOperations.pollForChanges()).thenReturn(createChangedDocuments(NUMBER_OF_CHANGES));
+        pollReturns(createChangedDocuments(NUMBER_OF_CHANGES));
         for (int i = 0; i < NUMBER_OF_CHANGES; i++) {
-            Message<URI> message = messageSource.receive();
+            Message<?> message = messageSource.receive();
             assertThat(message, is(notNullValue()));
         }
     }
 
     @Test
     public void receiveOnEmptyPoll() throws Exception {
-        when(couchDbChangesOperations.pollForChanges()).thenReturn(Collections.<ChangedDocument>emptyList());
-        Message<URI> message = messageSource.receive();
+        pollReturns(Collections.<ChangedDocument>emptyList());
+        Message<?> message = messageSource.receive();
         assertThat(message, is(nullValue()));
     }
 
 
+    @Test
+    public void checkpointProcessedMessages() throws Exception {
+        SequenceCheckpointStore checkpointStore = mock(SequenceCheckpointStore.class);
+        when(checkpointStore.readSequence()).thenReturn(Long.valueOf(100L));
+        messageSource.setCheckpointStore(checkpointStore);
+        messageSource.setCheckpointInterval(2);
+        messageSource.afterPropertiesSet();
+        verify(couchDbChangesOperations).setCurrentSequence(100L);
+
+        pollReturns(createChangedDocuments(NUMBER_OF_CHANGES));
+        for (int i = 0; i < 4; i++) {
+            messageSource.receive();
+        }
+        // the fourth message has not been processed yet
+        verify(checkpointStore).writeSequence(1L);
+        verify(checkpointStore, never()).writeSequence(3L);
+
+        messageSource.receive();
+        verify(checkpointStore).writeSequence(3L);
+    }
+
+    @Test
+    public void prefetchChangesBelowThreshold() throws Exception {
+        messageSource.setPrefetchThreshold(3);
+        messageSource.setTaskExecutor(new SyncTaskExecutor());
+        pollReturns(createChangedDocuments(NUMBER_OF_CHANGES / 2));
+
+        messageSource.receive();
+        messageSource.receive();
+        verify(couchDbChangesOperations).pollForChanges(any(ChangesListener.class));
+
+        // only two changes are left after the third one
+        messageSource.receive();
+        verify(couchDbChangesOperations, times(2)).pollForChanges(any(ChangesListener.class));
+        for (int i = 0; i < NUMBER_OF_CHANGES - 3; i++) {
+            assertThat(messageSource.receive(), is(notNullValue()));
+        }
+    }
+
+    @Test
+    public void receiveIncludedDocuments() throws Exception {
+        JsonNode document = new ObjectMapper().readTree("{\"_id\":\"a\",\"_rev\":\"2-a\",\"message\":\"test\"}");
+        URI uri = new URI("http://test/database/a");
+        pollReturns(Collections.singletonList(
+                new ChangedDocument(uri, ChangedDocument.Status.UPDATED, 7L, document)));
+        messageSource.setDocumentType(DummyDocument.class);
+
+        Message<?> message = messageSource.receive();
+        assertThat(message.getPayload(), equalTo((Object) new DummyDocument("test")));
+        assertThat(message.getHeaders().get(CouchDbHeaders.URI, String.class), equalTo(uri.toString()));
+        assertThat(message.getHeaders().get(CouchDbHeaders.SEQUENCE, Long.class), equalTo(Long.valueOf(7L)));
+        assertThat(message.getHeaders().get(CouchDbHeaders.STATUS, String.class), equalTo("UPDATED"));
+    }
+
+    private void pollReturns(final List<ChangedDocument> changedDocuments) {
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ChangesListener listener = (ChangesListener) invocation.getArguments()[0];
+                for (ChangedDocument changedDocument : changedDocuments) {
+                    listener.onChange(changedDocument);
+                }
+                return null;
+            }
+        }).when(couchDbChangesOperations).pollForChanges(any(ChangesListener.class));
+    }
+
     private List<ChangedDocument> createChangedDocuments(int n) throws URISyntaxException {
         List<ChangedDocument> documents = new ArrayList<ChangedDocument>();
         String uri = "http://test/database/";
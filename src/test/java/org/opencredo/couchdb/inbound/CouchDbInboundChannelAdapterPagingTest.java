@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.inbound;
+
+import java.net.URI;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencredo.couchdb.CouchDbIntegrationTest;
+import org.opencredo.couchdb.DummyDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.integration.endpoint.AbstractEndpoint;
+import org.springframework.messaging.Message;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Polls for changes in pages smaller than the number of changes.
+ *
+ * @since 18/10/2026
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class CouchDbInboundChannelAdapterPagingTest extends CouchDbIntegrationTest {
+
+    private static final int TEST_MESSAGES_NUMBER = 5;
+
+    @Autowired
+    @Qualifier("inboundChannelAdapter")
+    private AbstractEndpoint inboundChannelAdapter;
+
+    @Autowired
+    private MessagingTemplate messagingTemplate;
+
+    @Test
+    public void receiveChangesInPages() throws Exception {
+        for (int i = 0; i < TEST_MESSAGES_NUMBER; i++) {
+            putDocument(new DummyDocument("test message " + i));
+        }
+
+        inboundChannelAdapter.start();
+
+        for (int i = 0; i < TEST_MESSAGES_NUMBER; i++) {
+            Message<?> message = messagingTemplate.receive();
+            assertThat(message, notNullValue());
+            assertThat(message.getPayload(), instanceOf(URI.class));
+        }
+    }
+}
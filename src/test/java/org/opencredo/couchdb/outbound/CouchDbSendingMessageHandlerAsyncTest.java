@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.outbound;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.couchdb.DummyDocument;
+import org.opencredo.couchdb.core.CouchDbAsyncDocumentOperations;
+import org.opencredo.couchdb.core.CouchDbDocumentOperations;
+import org.opencredo.couchdb.core.CouchDbOperationException;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/2026
+ */
+public class CouchDbSendingMessageHandlerAsyncTest {
+
+    private CouchDbDocumentOperations documentOperations;
+
+    private CouchDbAsyncDocumentOperations asyncDocumentOperations;
+
+    private CouchDbSendingMessageHandler messageHandler;
+
+    private QueueChannel failureChannel;
+
+    @Before
+    public void setUp() throws Exception {
+        documentOperations = mock(CouchDbDocumentOperations.class);
+        asyncDocumentOperations = mock(CouchDbAsyncDocumentOperations.class);
+        failureChannel = new QueueChannel();
+        messageHandler = new CouchDbSendingMessageHandler(documentOperations);
+        messageHandler.setAsyncDocumentOperations(asyncDocumentOperations);
+        messageHandler.setFailureChannel(failureChannel);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void reportFailedWriteAfterHandling() throws Exception {
+        SettableListenableFuture<Object> written = new SettableListenableFuture<Object>();
+        when(asyncDocumentOperations.writeDocument(anyString(), any(), any(MessageHeaders.class)))
+                .thenReturn((ListenableFuture) written);
+
+        Message<DummyDocument> message = MessageBuilder.withPayload(new DummyDocument("test")).build();
+        messageHandler.handleMessage(message);
+        assertThat(failureChannel.receive(0), is(nullValue()));
+
+        written.setException(new CouchDbOperationException("conflict"));
+        Message<?> failure = failureChannel.receive(0);
+        assertThat(failure, is(notNullValue()));
+        MessageHandlingException exception = (MessageHandlingException) failure.getPayload();
+        assertThat(exception.getFailedMessage().getHeaders().getId(), equalTo(message.getHeaders().getId()));
+        verifyZeroInteractions(documentOperations);
+    }
+}
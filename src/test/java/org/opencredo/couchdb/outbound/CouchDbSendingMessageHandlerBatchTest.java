@@ -0,0 +1,188 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.couchdb.outbound;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opencredo.couchdb.DummyDocument;
+import org.opencredo.couchdb.core.BulkWriteResult;
+import org.opencredo.couchdb.core.CouchDbDocumentOperations;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandlingException;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @since 18/10/2026
+ */
+public class CouchDbSendingMessageHandlerBatchTest {
+
+    private CouchDbDocumentOperations documentOperations;
+
+    private CouchDbSendingMessageHandler messageHandler;
+
+    private QueueChannel failureChannel;
+
+    @Before
+    public void setUp() throws Exception {
+        documentOperations = mock(CouchDbDocumentOperations.class);
+        failureChannel = new QueueChannel();
+        messageHandler = new CouchDbSendingMessageHandler(documentOperations);
+        messageHandler.setDocumentIdExpression("headers['docId']");
+        messageHandler.setBatchSize(2);
+        messageHandler.setBatchTimeout(0);
+        messageHandler.setFailureChannel(failureChannel);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void recordOutcomes() throws Exception {
+        when(documentOperations.writeDocuments(any(Map.class))).thenReturn(Arrays.asList(
+                new BulkWriteResult("a", "1-a", null, null), new BulkWriteResult("b", null, "conflict", "Document update conflict.")));
+
+        messageHandler.handleMessage(createMessage("a"));
+        messageHandler.handleMessage(createMessage("b"));
+
+        CouchDbWriteMetrics writeMetrics = messageHandler.getWriteMetrics();
+        assertThat(writeMetrics.getSuccessCount(), equalTo(1L));
+        assertThat(writeMetrics.getConflictCount(), equalTo(1L));
+        assertThat(writeMetrics.getRequestCount(), equalTo(1L));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void writeFullBatch() throws Exception {
+        when(documentOperations.writeDocuments(any(Map.class))).thenReturn(Arrays.asList(
+                new BulkWriteResult("a", "1-a", null, null), new BulkWriteResult("b", "1-b", null, null)));
+
+        messageHandler.handleMessage(createMessage("a"));
+        verify(documentOperations, never()).writeDocuments(any(Map.class));
+        messageHandler.handleMessage(createMessage("b"));
+
+        ArgumentCaptor<Map> documents = ArgumentCaptor.forClass(Map.class);
+        verify(documentOperations).writeDocuments(documents.capture());
+        assertThat(documents.getValue().size(), equalTo(2));
+        assertThat(failureChannel.receive(0), is(nullValue()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void reportConflictToOriginatingMessage() throws Exception {
+        when(documentOperations.writeDocuments(any(Map.class))).thenReturn(Arrays.asList(
+                new BulkWriteResult("a", "1-a", null, null),
+                new BulkWriteResult("b", null, "conflict", "Document update conflict.")));
+
+        messageHandler.handleMessage(createMessage("a"));
+        Message<DummyDocument> conflicting = createMessage("b");
+        messageHandler.handleMessage(conflicting);
+
+        Message<?> failure = failureChannel.receive(0);
+        assertThat(failure, is(notNullValue()));
+        MessageHandlingException exception = (MessageHandlingException) failure.getPayload();
+        assertThat(exception.getFailedMessage().getHeaders().getId(), equalTo(conflicting.getHeaders().getId()));
+        assertThat(failureChannel.receive(0), is(nullValue()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void flushIncompleteBatch() throws Exception {
+        when(documentOperations.writeDocuments(any(Map.class))).thenReturn(Arrays.asList(
+                new BulkWriteResult("a", "1-a", null, null)));
+
+        messageHandler.handleMessage(createMessage("a"));
+        messageHandler.flush();
+
+        verify(documentOperations).writeDocuments(any(Map.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void reportDocumentWithoutResult() throws Exception {
+        when(documentOperations.writeDocuments(any(Map.class))).thenReturn(Arrays.asList(
+                new BulkWriteResult("a", "1-a", null, null), new BulkWriteResult("c", "1-c", null, null)));
+
+        messageHandler.handleMessage(createMessage("a"));
+        Message<DummyDocument> unanswered = createMessage("b");
+        messageHandler.handleMessage(unanswered);
+
+        Message<?> failure = failureChannel.receive(0);
+        assertThat(failure, is(notNullValue()));
+        MessageHandlingException exception = (MessageHandlingException) failure.getPayload();
+        assertThat(exception.getFailedMessage().getHeaders().getId(), equalTo(unanswered.getHeaders().getId()));
+        assertThat(failureChannel.receive(0), is(nullValue()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requireFailureChannelForBatches() throws Exception {
+        CouchDbSendingMessageHandler handler = new CouchDbSendingMessageHandler(documentOperations);
+        handler.setBatchSize(2);
+        handler.setBatchTimeout(0);
+        handler.afterPropertiesSet();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void reportMalformedDocumentAndWriteTheRest() throws Exception {
+        when(documentOperations.writeDocuments(any(Map.class))).thenReturn(Arrays.asList(
+                new BulkWriteResult("a", "1-a", null, null)));
+
+        messageHandler.handleMessage(createMessage("a"));
+        Message<String> malformed = MessageBuilder.withPayload("[1, 2]").setHeader("docId", "b").build();
+        messageHandler.handleMessage(malformed);
+
+        ArgumentCaptor<Map> documents = ArgumentCaptor.forClass(Map.class);
+        verify(documentOperations).writeDocuments(documents.capture());
+        assertThat(documents.getValue().keySet(), equalTo((Object) Collections.singleton("a")));
+        Message<?> failure = failureChannel.receive(0);
+        assertThat(failure, is(notNullValue()));
+        MessageHandlingException exception = (MessageHandlingException) failure.getPayload();
+        assertThat(exception.getFailedMessage().getHeaders().getId(), equalTo(malformed.getHeaders().getId()));
+        assertThat(exception.getCause(), instanceOf(IllegalArgumentException.class));
+        assertThat(failureChannel.receive(0), is(nullValue()));
+        assertThat(messageHandler.getWriteMetrics().getSuccessCount(), equalTo(1L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectBatchesForTemplatedDatabaseUrl() throws Exception {
+        CouchDbSendingMessageHandler handler = new CouchDbSendingMessageHandler("http://localhost:5984/{db}");
+        handler.setBatchSize(2);
+        handler.setBatchTimeout(0);
+        handler.setFailureChannel(failureChannel);
+        handler.afterPropertiesSet();
+    }
+
+    private Message<DummyDocument> createMessage(String id) {
+        return MessageBuilder.withPayload(new DummyDocument(id)).setHeader("docId", id).build();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.couchdb.outbound;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.couchdb.core.CouchDbOperationException;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @since 18/10/2026
+ */
+public class CouchDbWriteMetricsTest {
+
+    private CouchDbWriteMetrics writeMetrics;
+
+    @Before
+    public void setUp() throws Exception {
+        writeMetrics = new CouchDbWriteMetrics();
+    }
+
+    @Test
+    public void classifyFailures() throws Exception {
+        writeMetrics.recordFailure(failure(new HttpClientErrorException(HttpStatus.CONFLICT)));
+        writeMetrics.recordFailure(failure(new HttpClientErrorException(HttpStatus.FORBIDDEN)));
+        writeMetrics.recordFailure(failure(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE)));
+        writeMetrics.recordFailure(failure(new ResourceAccessException("connection refused", new IOException())));
+        writeMetrics.recordFailure(new CouchDbOperationException("Unable to map document to JSON"));
+
+        assertThat(writeMetrics.getConflictCount(), equalTo(1L));
+        assertThat(writeMetrics.getClientErrorCount(), equalTo(1L));
+        assertThat(writeMetrics.getServerErrorCount(), equalTo(1L));
+        assertThat(writeMetrics.getIoFailureCount(), equalTo(1L));
+        assertThat(writeMetrics.getOtherFailureCount(), equalTo(1L));
+    }
+
+    @Test
+    public void recordLatency() throws Exception {
+        writeMetrics.recordLatency(TimeUnit.MILLISECONDS.toNanos(3));
+        writeMetrics.recordLatency(TimeUnit.MILLISECONDS.toNanos(40));
+        writeMetrics.recordLatency(TimeUnit.SECONDS.toNanos(20));
+
+        assertThat(writeMetrics.getRequestCount(), equalTo(3L));
+        assertThat(writeMetrics.getMaxLatency(), equalTo(20000L));
+        assertThat(writeMetrics.getLatencyHistogram().get("<=5"), equalTo(1L));
+        assertThat(writeMetrics.getLatencyHistogram().get("<=50"), equalTo(1L));
+        assertThat(writeMetrics.getLatencyHistogram().get(">10000"), equalTo(1L));
+    }
+
+    @Test
+    public void recordPayload() throws Exception {
+        writeMetrics.recordPayload(new byte[10]);
+        writeMetrics.recordPayload("caf\u00e9");
+        writeMetrics.recordPayload(new Object());
+
+        assertThat(writeMetrics.getPayloadBytes(), equalTo(15L));
+    }
+
+    @Test
+    public void exportAdapterMetrics() throws Exception {
+        ClassPathXmlApplicationContext context =
+                new ClassPathXmlApplicationContext("CouchDbWriteMetricsTest-context.xml", getClass());
+        try {
+            try {
+                context.getBean("input", MessageChannel.class).send(MessageBuilder.withPayload("test").build());
+                fail("the write should have failed");
+            } catch (MessagingException e) {
+                // nothing listens on the port
+            }
+            ObjectName name = new ObjectName(
+                    "org.opencredo.couchdb.outbound:name=metricsAdapter.writeMetrics,type=CouchDbWriteMetrics");
+            assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "IoFailureCount"),
+                    equalTo((Object) 1L));
+        } finally {
+            context.close();
+        }
+    }
+
+    private CouchDbOperationException failure(Exception cause) {
+        return new CouchDbOperationException("Unable to communicate with CouchDB", cause);
+    }
+}
@@ -24,6 +24,8 @@ import org.springframework.messaging.Message;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.transformer.MessageTransformationException;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 import static org.hamcrest.Matchers.equalTo;
@@ -73,6 +75,27 @@ public class CouchDbIdToDocumentTransformerTest {
         assertThat(transformedMessage.getPayload(), equalTo(document));
     }
 
+    @Test
+    public void transformIdCollectionMessage() throws Exception {
+        DummyDocument first = new DummyDocument("first");
+        DummyDocument second = new DummyDocument("second");
+        when(documentOperations.readDocuments(eq(Arrays.asList("a", "b")), eq(DummyDocument.class)))
+                .thenReturn(Arrays.asList(first, second));
+
+        Message<?> transformedMessage = transformer.transform(
+                MessageBuilder.withPayload(Arrays.asList("a", "b")).build());
+
+        assertThat((List<Object>) transformedMessage.getPayload(), equalTo(Arrays.<Object>asList(first, second)));
+    }
+
+    @Test(expected = MessageTransformationException.class)
+    public void failOnMissingDocumentInCollection() throws Exception {
+        when(documentOperations.readDocuments(eq(Arrays.asList("a", "b")), eq(DummyDocument.class)))
+                .thenReturn(Arrays.asList(new DummyDocument("first"), null));
+
+        transformer.transform(MessageBuilder.withPayload(Arrays.asList("a", "b")).build());
+    }
+
     @Test(expected = MessageTransformationException.class)
     public void transformUnkownIdType() throws Exception {
         transformer.transform(MessageBuilder.withPayload('a').build());
@@ -25,6 +25,8 @@ import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.transformer.MessageTransformationException;
 
 import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -74,6 +76,36 @@ public class CouchDbUrlToDocumentTransformerTest {
         assertThat(transformedMessage.getPayload(), equalTo(document));
     }
 
+    @Test
+    public void transformUriCollectionMessage() throws Exception {
+        DummyDocument first = new DummyDocument("first");
+        DummyDocument second = new DummyDocument("second");
+        DummyDocument third = new DummyDocument("third");
+        DummyDocument fourth = new DummyDocument("fourth");
+        when(documentOperations.readDocuments(eq(new URI("http://test/one")), eq(Arrays.asList("a", "c d", "e+f")),
+                eq(DummyDocument.class))).thenReturn(Arrays.asList(first, third, fourth));
+        when(documentOperations.readDocuments(eq(new URI("http://test/two")), eq(Arrays.asList("b")),
+                eq(DummyDocument.class))).thenReturn(Arrays.asList(second));
+
+        Message<List<URI>> message = MessageBuilder.withPayload(Arrays.asList(new URI("http://test/one/a"),
+                new URI("http://test/two/b"), new URI("http://test/one/c%20d"),
+                new URI("http://test/one/e+f"))).build();
+        Message<?> transformedMessage = transformer.transform(message);
+
+        assertThat((List<Object>) transformedMessage.getPayload(),
+                equalTo(Arrays.<Object>asList(first, second, third, fourth)));
+    }
+
+    @Test(expected = MessageTransformationException.class)
+    public void failOnMissingDocumentInCollection() throws Exception {
+        DummyDocument first = new DummyDocument("first");
+        when(documentOperations.readDocuments(eq(new URI("http://test/one")), eq(Arrays.asList("a", "b")),
+                eq(DummyDocument.class))).thenReturn(Arrays.asList(first, null));
+
+        transformer.transform(MessageBuilder.withPayload(Arrays.asList(new URI("http://test/one/a"),
+                new URI("http://test/one/b"))).build());
+    }
+
     @Test(expected = MessageTransformationException.class)
     public void transformUnkownIdType() throws Exception {
         transformer.transform(MessageBuilder.withPayload('a').build());